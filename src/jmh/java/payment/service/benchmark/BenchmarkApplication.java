@@ -0,0 +1,42 @@
+package payment.service.benchmark;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import payment.service.ServiceApplication;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Starts the real application for benchmarks: private in-memory H2, no Eureka, Kafka listeners and outbox relay
+// idle, and INVENTORY-SERVICE resolved through the simple discovery client so tests can stub the HTTP layer.
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    // Overrides are "key=value" pairs replacing or adding to the defaults below
+    static ConfigurableApplicationContext start(String... overrides) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.datasource.url", "jdbc:h2:mem:benchmark-" + UUID.randomUUID());
+        properties.put("spring.jpa.show-sql", "false");
+        properties.put("eureka.client.enabled", "false");
+        properties.put("spring.cloud.discovery.client.simple.instances.INVENTORY-SERVICE[0].uri", "http://localhost:8081");
+        properties.put("payment.status-listener.mode", "none");
+        properties.put("payment.outbox.relay-enabled", "false");
+        properties.put("payment.cache.broadcast.enabled", "false");
+        properties.put("payment.journal.directory", "target/payment-journal-" + UUID.randomUUID());
+        properties.put("payment.journal.key", "benchmark-journal-key");
+        properties.put("logging.level.root", "WARN");
+        for (String override : overrides) {
+            int separator = override.indexOf('=');
+            properties.put(override.substring(0, separator), override.substring(separator + 1));
+        }
+
+        // Passed as command-line arguments so they take precedence over application.yml
+        return new SpringApplicationBuilder(ServiceApplication.class).run(properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new));
+    }
+}
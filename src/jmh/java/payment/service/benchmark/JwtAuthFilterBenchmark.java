@@ -0,0 +1,137 @@
+package payment.service.benchmark;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import payment.service.config.JwtAuthFilter;
+import payment.service.config.JwtPrincipalCache;
+import payment.service.config.JwtUtil;
+
+import java.io.IOException;
+import java.security.Key;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Compares the original three-parse filter with the parse-once filter, with and without the verified-token cache
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtAuthFilterBenchmark {
+
+    static final String SECRET = "mySecretKey1234567890123456";
+
+    private OncePerRequestFilter legacyFilter;
+    private OncePerRequestFilter parseOnceFilter;
+    private OncePerRequestFilter cachedFilter;
+    private String bearer;
+
+    @Setup
+    public void setUp() {
+        JwtUtil jwtUtil = jwtUtil();
+        legacyFilter = new LegacyJwtAuthFilter(signingKey());
+        parseOnceFilter = new JwtAuthFilter(new JwtPrincipalCache(jwtUtil, new SimpleMeterRegistry(), false, 0, Duration.ofMinutes(15)), new SimpleMeterRegistry());
+        cachedFilter = new JwtAuthFilter(new JwtPrincipalCache(jwtUtil, new SimpleMeterRegistry(), true, 10_000, Duration.ofMinutes(15)), new SimpleMeterRegistry());
+        bearer = "Bearer " + token("benchmark-user", List.of("ADMIN"), Duration.ofHours(1));
+    }
+
+    @Benchmark
+    public Object legacyThreeParses() throws Exception {
+        return filter(legacyFilter);
+    }
+
+    @Benchmark
+    public Object parseOnce() throws Exception {
+        return filter(parseOnceFilter);
+    }
+
+    @Benchmark
+    public Object parseOnceCached() throws Exception {
+        return filter(cachedFilter);
+    }
+
+    private Object filter(OncePerRequestFilter filter) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/payment");
+        request.addHeader("Authorization", bearer);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+
+    static JwtUtil jwtUtil() {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    static Key signingKey() {
+        return Keys.hmacShaKeyFor(Base64.getEncoder().encode(SECRET.getBytes()));
+    }
+
+    static String token(String subject, List<String> roles, Duration ttl) {
+        return Jwts.builder()
+                .setSubject(subject)
+                .claim("roles", roles)
+                .setExpiration(new Date(System.currentTimeMillis() + ttl.toMillis()))
+                .signWith(signingKey())
+                .compact();
+    }
+
+    // The filter as it was before parse-once: validate, extract username and extract roles each rebuild a parser
+    static final class LegacyJwtAuthFilter extends OncePerRequestFilter {
+
+        private final Key signingKey;
+
+        LegacyJwtAuthFilter(Key signingKey) {
+            this.signingKey = signingKey;
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+            String header = request.getHeader("Authorization");
+            String token = header != null && header.startsWith("Bearer ") ? header.substring(7) : null;
+            if (token != null && validateToken(token)) {
+                String username = claims(token).getSubject();
+                List<?> roles = claims(token).get("roles", List.class);
+                SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(username, null,
+                        roles.stream().map(role -> new SimpleGrantedAuthority(role.toString())).collect(Collectors.toList())));
+            }
+            filterChain.doFilter(request, response);
+        }
+
+        private boolean validateToken(String token) {
+            try {
+                claims(token);
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        private Claims claims(String token) {
+            return Jwts.parserBuilder().setSigningKey(signingKey).build().parseClaimsJws(token).getBody();
+        }
+    }
+}
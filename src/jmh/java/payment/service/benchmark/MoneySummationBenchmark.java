@@ -0,0 +1,67 @@
+package payment.service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import payment.service.domain.Money;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Summing payment amounts, as reconciliation and aggregates do: BigDecimal as Payment stored them before, Money,
+// and the bare minor units. Run with -prof gc for allocations.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoneySummationBenchmark {
+
+    @Param({"1000000"})
+    private int size;
+
+    private BigDecimal[] decimals;
+    private Money[] amounts;
+    private long[] minorUnits;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        decimals = new BigDecimal[size];
+        amounts = new Money[size];
+        minorUnits = new long[size];
+        for (int i = 0; i < size; i++) {
+            long minor = 1 + random.nextInt(1_000_000);
+            minorUnits[i] = minor;
+            amounts[i] = Money.ofMinor(minor, Money.DEFAULT_CURRENCY);
+            decimals[i] = BigDecimal.valueOf(minor, 2);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal sumBigDecimal() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal amount : decimals) {
+            total = total.add(amount);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public Money sumMoney() {
+        Money total = Money.ofMinor(0, Money.DEFAULT_CURRENCY);
+        for (Money amount : amounts) {
+            total = total.plus(amount);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long sumMinorUnits() {
+        long total = 0;
+        for (long amount : minorUnits) {
+            total = Math.addExact(total, amount);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,174 @@
+package payment.service.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import payment.service.service.AdaptiveConcurrencyLimiter;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Closed-loop overload test of POST /payment with and without the adaptive concurrency limiters. The inventory
+// stub serves a few validations at a time and queues the rest, so offered load far above its capacity turns into
+// queueing everywhere unless excess requests are shed. Clients whose request was shed wait for Retry-After.
+// Goodput counts payments answered 200 within the latency objective.
+//
+//   mvn -Pbenchmark test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+//   java -cp target/test-classes:target/classes:$(cat target/cp.txt) payment.service.benchmark.OverloadLoadTest \
+//        <limited|unlimited> [concurrency=400] [seconds=30] [inventoryCapacity=4] [inventoryLatencyMs=25] [sloMs=500]
+public final class OverloadLoadTest {
+
+    private OverloadLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", "4");
+        boolean limited = args.length == 0 || args[0].equals("limited");
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        Duration duration = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 30);
+        int inventoryCapacity = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        long inventoryLatencyMs = args.length > 4 ? Long.parseLong(args[4]) : 25;
+        long sloNanos = TimeUnit.MILLISECONDS.toNanos(args.length > 5 ? Long.parseLong(args[5]) : 500);
+
+        ExecutorService inventoryExecutor = Executors.newCachedThreadPool();
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        HttpServer inventory = startInventoryStub(inventoryCapacity, inventoryLatencyMs, inventoryExecutor);
+        ConfigurableApplicationContext context = BenchmarkApplication.start(
+                "spring.cloud.discovery.client.simple.instances.INVENTORY-SERVICE[0].uri=http://localhost:" + inventory.getAddress().getPort(),
+                "inventory.service.read-timeout=PT30S",
+                "payment.velocity.enabled=false",
+                "payment.limiter.enabled=" + limited,
+                "inventory.limiter.enabled=" + limited);
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            String bearer = "Bearer " + JwtAuthFilterBenchmark.token("load-test-admin", List.of("ADMIN"), Duration.ofHours(1));
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(clientExecutor)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+
+            // Warm-up below capacity
+            run(client, retryScheduler, port, bearer, inventoryCapacity, Duration.ofSeconds(5));
+            Result result = run(client, retryScheduler, port, bearer, concurrency, duration);
+
+            long[] latencies = result.latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            long withinSlo = result.latencies.stream().filter(latency -> latency <= sloNanos).count();
+            double seconds = duration.toNanos() / 1e9;
+            System.out.printf("mode=%s concurrency=%d inventory=%d x %dms (capacity %.0f/s) slo=%dms%n",
+                    limited ? "limited" : "unlimited", concurrency, inventoryCapacity, inventoryLatencyMs,
+                    inventoryCapacity * 1000.0 / inventoryLatencyMs, TimeUnit.NANOSECONDS.toMillis(sloNanos));
+            System.out.printf("  ok=%d (%.0f/s) goodput=%.0f/s shed=%d errors=%d%n",
+                    latencies.length, latencies.length / seconds, withinSlo / seconds, result.shed.get(), result.errors.get());
+            System.out.printf("  ok latency p50=%.1fms p99=%.1fms max=%.1fms%n",
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6, percentile(latencies, 1.0) / 1e6);
+            for (String limiter : List.of("paymentConcurrencyLimiter", "inventoryConcurrencyLimiter")) {
+                System.out.printf("  %s limit=%.1f%n", limiter, context.getBean(limiter, AdaptiveConcurrencyLimiter.class).getLimit());
+            }
+        } finally {
+            context.close();
+            inventory.stop(0);
+            inventoryExecutor.shutdownNow();
+            clientExecutor.shutdownNow();
+            retryScheduler.shutdownNow();
+        }
+    }
+
+    private static Result run(HttpClient client, ScheduledExecutorService retryScheduler, int port, String bearer,
+                              int concurrency, Duration duration) throws InterruptedException {
+        Result result = new Result();
+        Semaphore slots = new Semaphore(concurrency);
+        long deadline = System.nanoTime() + duration.toNanos();
+
+        while (System.nanoTime() < deadline) {
+            if (!slots.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+            long start = System.nanoTime();
+            client.sendAsync(paymentRequest(port, bearer), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (error == null && response.statusCode() == 200) {
+                            result.latencies.add(System.nanoTime() - start);
+                            slots.release();
+                        } else if (error == null && response.statusCode() == 503) {
+                            result.shed.incrementAndGet();
+                            long retryAfter = response.headers().firstValueAsLong("Retry-After").orElse(1);
+                            retryScheduler.schedule(() -> slots.release(), retryAfter, TimeUnit.SECONDS);
+                        } else {
+                            result.errors.incrementAndGet();
+                            slots.release();
+                        }
+                    });
+        }
+        slots.acquire(concurrency);
+        return result;
+    }
+
+    private static HttpRequest paymentRequest(int port, String bearer) {
+        String query = "orderId=" + UUID.randomUUID()
+                + "&productId=" + UUID.randomUUID()
+                + "&customerId=" + UUID.randomUUID()
+                + "&quantity=1&totalAmount=200.00&paymentMode=CREDIT_CARD";
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/payment?" + query))
+                .header("Authorization", bearer)
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    // Serves capacity validations at once, each taking latencyMs; the others wait their turn
+    private static HttpServer startInventoryStub(int capacity, long latencyMs, ExecutorService executor) throws Exception {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        Semaphore servers = new Semaphore(capacity, true);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 1000);
+        server.setExecutor(executor);
+        server.createContext("/inventory/validate", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                servers.acquire();
+                try {
+                    Thread.sleep(latencyMs);
+                } finally {
+                    servers.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "true".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static final class Result {
+
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger shed = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+    }
+}
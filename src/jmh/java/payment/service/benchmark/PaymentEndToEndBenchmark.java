@@ -0,0 +1,77 @@
+package payment.service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+// Whole POST /payment path through MockMvc: security filters and JWT, controller, stock validation against a
+// stubbed inventory response, H2 persistence and the outbox write. Kafka is never contacted.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentEndToEndBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+    private String bearer;
+    private String productId;
+
+    @Setup
+    public void setUp() throws Exception {
+        context = BenchmarkApplication.start();
+        // Answer every inventory call with "true" without a network round-trip
+        context.getBean(RestTemplate.class).setRequestFactory((uri, httpMethod) -> {
+            MockClientHttpRequest request = new MockClientHttpRequest(httpMethod, uri);
+            MockClientHttpResponse response = new MockClientHttpResponse("true".getBytes(StandardCharsets.UTF_8), HttpStatus.OK);
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            request.setResponse(response);
+            return request;
+        });
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).apply(springSecurity()).build();
+        bearer = "Bearer " + JwtAuthFilterBenchmark.token("benchmark-admin", List.of("ADMIN"), Duration.ofHours(1));
+        productId = UUID.randomUUID().toString();
+
+        int status = processPayment().getResponse().getStatus();
+        if (status != 200) {
+            throw new IllegalStateException("POST /payment answered " + status);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult processPayment() throws Exception {
+        return mockMvc.perform(post("/payment")
+                        .header("Authorization", bearer)
+                        .param("orderId", UUID.randomUUID().toString())
+                        .param("productId", productId)
+                        .param("customerId", UUID.randomUUID().toString())
+                        .param("quantity", "1")
+                        .param("totalAmount", "200.00")
+                        .param("paymentMode", "CREDIT_CARD"))
+                .andReturn();
+    }
+}
@@ -0,0 +1,91 @@
+package payment.service.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.*;
+import payment.service.config.PaymentEventDeserializer;
+import payment.service.config.PaymentEventSerializer;
+import payment.service.domain.PaymentEvent;
+import payment.service.domain.PaymentStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Kafka payload of a payment event: the original String.format JSON and per-message ObjectMapper parsing, against
+// PaymentEventSerializer/PaymentEventDeserializer in JSON and binary format. Run with -prof gc for allocations;
+// the payload sizes are printed at setup.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentEventCodecBenchmark {
+
+    private static final String TOPIC = "payment-status";
+
+    private PaymentEvent event;
+    private PaymentEventSerializer jsonSerializer;
+    private PaymentEventSerializer binarySerializer;
+    private PaymentEventDeserializer deserializer;
+    private String json;
+    private byte[] jsonBytes;
+    private byte[] binaryBytes;
+    private RecordHeaders jsonHeaders;
+    private RecordHeaders binaryHeaders;
+
+    @Setup
+    public void setUp() {
+        event = new PaymentEvent(UUID.randomUUID(), 5, UUID.randomUUID());
+        event.setPaymentStatus(PaymentStatus.SUCCESS);
+        jsonSerializer = new PaymentEventSerializer(PaymentEventSerializer.Format.JSON);
+        binarySerializer = new PaymentEventSerializer(PaymentEventSerializer.Format.BINARY);
+        deserializer = new PaymentEventDeserializer();
+
+        json = legacyJson(event);
+        jsonHeaders = new RecordHeaders();
+        jsonBytes = jsonSerializer.serialize(TOPIC, jsonHeaders, event);
+        binaryHeaders = new RecordHeaders();
+        binaryBytes = binarySerializer.serialize(TOPIC, binaryHeaders, event);
+        System.out.printf("%npayload bytes: legacy json=%d, json=%d, binary=%d%n",
+                json.getBytes(StandardCharsets.UTF_8).length, jsonBytes.length, binaryBytes.length);
+    }
+
+    // As PaymentEventRelay built the payment-success payload before the serializer
+    @Benchmark
+    public byte[] serializeLegacyJson() {
+        return legacyJson(event).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() {
+        return jsonSerializer.serialize(TOPIC, new RecordHeaders(), event);
+    }
+
+    @Benchmark
+    public byte[] serializeBinary() {
+        return binarySerializer.serialize(TOPIC, new RecordHeaders(), event);
+    }
+
+    // As the payment-status listener parsed messages originally
+    @Benchmark
+    public PaymentEvent deserializeLegacyJson() throws Exception {
+        return new ObjectMapper().readValue(json, PaymentEvent.class);
+    }
+
+    @Benchmark
+    public PaymentEvent deserializeJson() {
+        return deserializer.deserialize(TOPIC, jsonHeaders, jsonBytes);
+    }
+
+    @Benchmark
+    public PaymentEvent deserializeBinary() {
+        return deserializer.deserialize(TOPIC, binaryHeaders, binaryBytes);
+    }
+
+    private static String legacyJson(PaymentEvent event) {
+        return String.format("{\"productId\":\"%s\",\"quantity\":%d,\"transactionId\":\"%s\",\"paymentStatus\":\"%s\"}",
+                event.getProductId(), event.getQuantity(), event.getTransactionId(), event.getPaymentStatus());
+    }
+}
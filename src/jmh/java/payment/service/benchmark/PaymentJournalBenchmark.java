@@ -0,0 +1,69 @@
+package payment.service.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.unit.DataSize;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+import payment.service.repository.PaymentJournal;
+import payment.service.repository.PaymentJournal.EntryType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Cost of a journal append on the payment path, with the default segment size and the sync thread forcing appends
+// to disk every 10 ms in the background, so segment rolls and syncs are part of the measurement. created is the full
+// entry of acceptPayment, statusUpdated the narrow one of a payment-status event, from 1 and 4 threads.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentJournalBenchmark {
+
+    private Path directory;
+    private PaymentJournal journal;
+    private Payment payment;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory(Path.of("target"), "payment-journal-benchmark");
+        journal = new PaymentJournal(new SimpleMeterRegistry(), true, directory, "benchmark-journal-key", DataSize.ofMegabytes(64), Duration.ofMillis(10));
+        payment = new Payment(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinor(20000, Money.DEFAULT_CURRENCY), PaymentStatus.PENDING);
+        payment.setTransactionId(UUID.randomUUID());
+        payment.setPaymentMode(PaymentMode.CREDIT_CARD);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException, IOException {
+        journal.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long created() {
+        return journal.append(EntryType.CREATED, payment);
+    }
+
+    @Benchmark
+    public long statusUpdated() {
+        return journal.append(EntryType.STATUS_UPDATED, payment.getTransactionId(), PaymentStatus.SUCCESS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long createdContended() {
+        return journal.append(EntryType.CREATED, payment);
+    }
+}
@@ -0,0 +1,42 @@
+package payment.service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentStatus;
+import payment.service.repository.PaymentRepository;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Payment inserts through PaymentRepository (Hibernate) on in-memory H2
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentPersistenceBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private PaymentRepository paymentRepository;
+    private BigDecimal totalAmount;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        paymentRepository = context.getBean(PaymentRepository.class);
+        totalAmount = new BigDecimal("200.00");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Payment save() {
+        return paymentRepository.save(new Payment(UUID.randomUUID(), UUID.randomUUID(), totalAmount, PaymentStatus.PENDING));
+    }
+}
@@ -0,0 +1,139 @@
+package payment.service.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+import payment.service.repository.PaymentRepository;
+import payment.service.service.PaymentService;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Closed-loop load test of order tracking traffic: clients poll GET /payment/{transactionId} for a working set of
+// payments while statuses keep changing in the background. Reports request rate and the findById rate reaching
+// the database, with and without PaymentDetailsCache.
+//
+//   mvn -Pbenchmark test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+//   java -cp target/test-classes:target/classes:$(cat target/cp.txt) payment.service.benchmark.PaymentPollingLoadTest \
+//        <cached|uncached> [concurrency=50] [seconds=20] [payments=1000] [statusChangesPerSecond=100]
+public final class PaymentPollingLoadTest {
+
+    private PaymentPollingLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", "4");
+        boolean cached = args.length == 0 || args[0].equals("cached");
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        Duration duration = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 20);
+        int paymentCount = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int statusChangesPerSecond = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        ConfigurableApplicationContext context = BenchmarkApplication.start("payment.cache.enabled=" + cached);
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            String bearer = "Bearer " + JwtAuthFilterBenchmark.token("load-test-admin", List.of("ADMIN"), Duration.ofHours(1));
+            HttpClient client = HttpClient.newBuilder().executor(clientExecutor).build();
+
+            List<UUID> transactionIds = new ArrayList<>(paymentCount);
+            List<Payment> payments = new ArrayList<>(paymentCount);
+            for (int i = 0; i < paymentCount; i++) {
+                Payment payment = new Payment(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("200.00"), PaymentStatus.PENDING);
+                payment.setPaymentMode(PaymentMode.CREDIT_CARD);
+                payments.add(payment);
+            }
+            context.getBean(PaymentRepository.class).saveAll(payments).forEach(payment -> transactionIds.add(payment.getTransactionId()));
+
+            // Settles random payments at a steady rate, as the payment-status listener would
+            PaymentService paymentService = context.getBean(PaymentService.class);
+            Thread statusChanges = new Thread(() -> {
+                long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, statusChangesPerSecond);
+                while (!Thread.currentThread().isInterrupted() && statusChangesPerSecond > 0) {
+                    UUID transactionId = transactionIds.get(ThreadLocalRandom.current().nextInt(transactionIds.size()));
+                    paymentService.updatePaymentStatuses(Map.of(transactionId, PaymentStatus.SUCCESS));
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(intervalNanos);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "status-changes");
+
+            run(client, port, bearer, transactionIds, concurrency, Duration.ofSeconds(5));
+            statusChanges.start();
+            Timer findById = findByIdTimer(context.getBean(MeterRegistry.class));
+            long dbReadsBefore = findById == null ? 0 : findById.count();
+            long requests = run(client, port, bearer, transactionIds, concurrency, duration);
+            long dbReads = (findById == null ? 0 : findById.count()) - dbReadsBefore;
+            statusChanges.interrupt();
+            statusChanges.join();
+
+            double seconds = duration.toNanos() / 1e9;
+            System.out.printf("mode=%s concurrency=%d payments=%d statusChanges=%d/s%n",
+                    cached ? "cached" : "uncached", concurrency, paymentCount, statusChangesPerSecond);
+            System.out.printf("  requests=%.0f/s dbReads(findById)=%.0f/s readsPerRequest=%.3f%n",
+                    requests / seconds, dbReads / seconds, requests == 0 ? 0 : (double) dbReads / requests);
+        } finally {
+            context.close();
+            clientExecutor.shutdownNow();
+        }
+    }
+
+    private static long run(HttpClient client, int port, String bearer, List<UUID> transactionIds, int concurrency, Duration duration)
+            throws InterruptedException {
+        AtomicLong completed = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        Semaphore slots = new Semaphore(concurrency);
+        long deadline = System.nanoTime() + duration.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!slots.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+            UUID transactionId = transactionIds.get(ThreadLocalRandom.current().nextInt(transactionIds.size()));
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/payment/" + transactionId))
+                    .header("Authorization", bearer)
+                    .GET()
+                    .build();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                if (error == null && response.statusCode() == 200) {
+                    completed.incrementAndGet();
+                } else {
+                    errors.incrementAndGet();
+                }
+                slots.release();
+            });
+        }
+        slots.acquire(concurrency);
+        if (errors.get() > 0) {
+            System.out.printf("  errors=%d%n", errors.get());
+        }
+        return completed.get();
+    }
+
+    // Spring Data repository metrics, recorded for every call into PaymentRepository
+    private static Timer findByIdTimer(MeterRegistry meterRegistry) {
+        return meterRegistry.find("spring.data.repository.invocations")
+                .tag("repository", "PaymentRepository")
+                .tag("method", "findById")
+                .timer();
+    }
+}
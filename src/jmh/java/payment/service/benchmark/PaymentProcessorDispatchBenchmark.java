@@ -0,0 +1,63 @@
+package payment.service.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.env.MockEnvironment;
+import payment.service.config.ExecutionMode;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+import payment.service.service.PaymentProcessor.CreditCardPaymentProcessor;
+import payment.service.service.PaymentProcessor.PayPalPaymentProcessor;
+import payment.service.service.PaymentProcessor.PaymentProcessorRegistry;
+import payment.service.service.PaymentProcessor.WalletPaymentProcessor;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Processor lookup in the PaymentProcessorRegistry plus the processor call through its mode's bulkhead (hand-off
+// to the mode's executor and back), cycling through all modes
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PaymentProcessorDispatchBenchmark {
+
+    private static final PaymentMode[] MODES = PaymentMode.values();
+
+    private PaymentProcessorRegistry paymentProcessorRegistry;
+    private Payment payment;
+    private UUID orderId;
+    private UUID productId;
+    private UUID customerId;
+    private Money totalAmount;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        paymentProcessorRegistry = new PaymentProcessorRegistry(
+                List.of(new CreditCardPaymentProcessor(), new WalletPaymentProcessor(), new PayPalPaymentProcessor()),
+                ExecutionMode.platform(), new SimpleMeterRegistry(), new MockEnvironment());
+
+        orderId = UUID.randomUUID();
+        productId = UUID.randomUUID();
+        customerId = UUID.randomUUID();
+        totalAmount = Money.ofMinor(20000, Money.DEFAULT_CURRENCY);
+        payment = new Payment(orderId, customerId, totalAmount, PaymentStatus.PENDING);
+    }
+
+    @TearDown
+    public void tearDown() {
+        paymentProcessorRegistry.shutdown();
+    }
+
+    @Benchmark
+    public Payment dispatch() {
+        PaymentMode mode = MODES[next++ % MODES.length];
+        return paymentProcessorRegistry.get(mode).processPayment(payment, orderId, productId, customerId, totalAmount).join();
+    }
+}
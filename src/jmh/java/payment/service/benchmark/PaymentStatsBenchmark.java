@@ -0,0 +1,108 @@
+package payment.service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatsBucket;
+import payment.service.domain.PaymentStatus;
+import payment.service.service.PaymentStatsAggregator;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The last 24 hours of totals per hour, mode and status over a payment table of the given size: stats from the
+// rollup of PaymentStatsAggregator, groupBy the query dashboards ran before. record is the cost the aggregator adds
+// to a payment, its creation and one status change, from 1 and 4 threads. The end of the range moves by a
+// microsecond per call, as H2 would otherwise return the previous result of a query repeated on unchanged tables.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class PaymentStatsBenchmark {
+
+    private static final String GROUP_BY_SQL = "SELECT DATE_TRUNC('HOUR', timestamp), payment_mode, payment_status, currency, COUNT(*), SUM(total_amount_minor) "
+            + "FROM payment WHERE timestamp >= ? AND timestamp < ? GROUP BY DATE_TRUNC('HOUR', timestamp), payment_mode, payment_status, currency";
+
+    @Param({"100000", "1000000"})
+    private int payments;
+
+    private ConfigurableApplicationContext context;
+    private PaymentStatsAggregator aggregator;
+    private JdbcTemplate jdbcTemplate;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private Payment payment;
+    private long calls;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        aggregator = context.getBean(PaymentStatsAggregator.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        to = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).plusHours(1);
+        from = to.minusHours(24);
+
+        PaymentMode[] modes = PaymentMode.values();
+        PaymentStatus[] statuses = PaymentStatus.values();
+        List<Object[]> rows = new ArrayList<>(10_000);
+        for (int i = 0; i < payments; i++) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            rows.add(new Object[]{UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), random.nextLong(100, 100_000), "USD",
+                    statuses[random.nextInt(statuses.length)].name(), modes[random.nextInt(modes.length)].name(),
+                    Timestamp.valueOf(from.plusSeconds(random.nextLong(24 * 3600)))});
+            if (rows.size() == 10_000 || i == payments - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO payment (transaction_id, order_id, customer_id, total_amount_minor, currency, payment_status, payment_mode, timestamp) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+        aggregator.rebuild();
+
+        payment = new Payment(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinor(20000, Money.DEFAULT_CURRENCY), PaymentStatus.PENDING);
+        payment.setPaymentMode(PaymentMode.CREDIT_CARD);
+        payment.setTimestamp(LocalDateTime.now());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<PaymentStatsBucket> stats() {
+        return aggregator.findStats(from, end());
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> groupBy() {
+        return jdbcTemplate.queryForList(GROUP_BY_SQL, Timestamp.valueOf(from), Timestamp.valueOf(end()));
+    }
+
+    @Benchmark
+    public void record() {
+        aggregator.created(payment);
+        aggregator.statusChanged(payment, PaymentStatus.PENDING, PaymentStatus.SUCCESS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        record();
+    }
+
+    private LocalDateTime end() {
+        return to.plusNanos(1000 * (++calls & 1023));
+    }
+}
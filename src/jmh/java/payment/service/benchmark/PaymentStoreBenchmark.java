@@ -0,0 +1,66 @@
+package payment.service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+import payment.service.repository.PaymentStore;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Payment writes per second through either PaymentStore engine on in-memory H2, from 8 threads so the jdbc
+// engine has concurrent inserts to group. insert is the PENDING insert alone, flow the insert followed by the
+// status update in a transaction, as a synchronous payment does. Run with -prof gc for the allocation per
+// payment; it includes the committer thread's.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class PaymentStoreBenchmark {
+
+    @Param({"jpa", "jdbc"})
+    private String engine;
+
+    private ConfigurableApplicationContext context;
+    private PaymentStore paymentStore;
+    private TransactionTemplate transactionTemplate;
+    private Money amount;
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkApplication.start("payment.store.engine=" + engine);
+        paymentStore = context.getBean(PaymentStore.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        amount = Money.ofMinor(20000, Money.DEFAULT_CURRENCY);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Payment insert() {
+        return paymentStore.insert(payment());
+    }
+
+    @Benchmark
+    public Payment flow() {
+        Payment payment = paymentStore.insert(payment());
+        payment.setPaymentStatus(PaymentStatus.SUCCESS);
+        return transactionTemplate.execute(status -> paymentStore.updateStatus(payment));
+    }
+
+    private Payment payment() {
+        Payment payment = new Payment(UUID.randomUUID(), UUID.randomUUID(), amount, PaymentStatus.PENDING);
+        payment.setPaymentMode(PaymentMode.CREDIT_CARD);
+        return payment;
+    }
+}
@@ -0,0 +1,89 @@
+package payment.service.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import payment.service.domain.Money;
+import payment.service.service.PaymentVelocityEngine;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Velocity check of a random customer among millions of tracked ones, single-threaded and with 4 threads on the
+// striped tables. The limits are high enough for every check to pass and be recorded, and max-customers leaves
+// headroom for uneven stripes so nobody is dropped. The heap taken by the populated engine is printed at setup.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class PaymentVelocityEngineBenchmark {
+
+    private static final int LOOKUPS = 1 << 20;
+
+    @Param({"100000", "2000000"})
+    private int customers;
+
+    private PaymentVelocityEngine engine;
+    private Map<UUID, long[]> map;
+    private UUID[] lookups;
+    private Money amount;
+
+    @Setup
+    public void setUp() {
+        System.gc();
+        long before = usedHeap();
+        engine = new PaymentVelocityEngine(new SimpleMeterRegistry(), true, Money.DEFAULT_CURRENCY, Integer.MAX_VALUE,
+                "0", Integer.MAX_VALUE, "0", customers + customers / 4);
+        amount = Money.ofMinor(20000, Money.DEFAULT_CURRENCY);
+        UUID[] ids = new UUID[customers];
+        for (int i = 0; i < customers; i++) {
+            ids[i] = UUID.randomUUID();
+            engine.tryRecord(ids[i], amount);
+        }
+        Random random = new Random(42);
+        lookups = new UUID[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = ids[random.nextInt(customers)];
+        }
+        System.gc();
+        System.out.printf("%nengine heap for %d customers: %d MB (lookup keys included)%n",
+                engine.size(), (usedHeap() - before) >> 20);
+
+        // Minute and hour buckets
+        map = new ConcurrentHashMap<>();
+        for (UUID id : ids) {
+            map.put(id, new long[12]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = new Random().nextInt(LOOKUPS);
+    }
+
+    @Benchmark
+    public PaymentVelocityEngine.Limit tryRecord(Cursor cursor) {
+        return engine.tryRecord(lookups[cursor.next++ & (LOOKUPS - 1)], amount);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public PaymentVelocityEngine.Limit tryRecordContended(Cursor cursor) {
+        return engine.tryRecord(lookups[cursor.next++ & (LOOKUPS - 1)], amount);
+    }
+
+    // Reference point: finding a per-customer bucket array in a ConcurrentHashMap, without any window logic
+    @Benchmark
+    public long[] mapLookup(Cursor cursor) {
+        return map.get(lookups[cursor.next++ & (LOOKUPS - 1)]);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
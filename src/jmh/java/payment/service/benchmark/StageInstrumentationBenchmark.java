@@ -0,0 +1,118 @@
+package payment.service.benchmark;
+
+import brave.Tracing;
+import brave.propagation.ThreadLocalCurrentTraceContext;
+import brave.sampler.Sampler;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.transport.SenderContext;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import io.micrometer.tracing.brave.bridge.BraveBaggageManager;
+import io.micrometer.tracing.brave.bridge.BraveCurrentTraceContext;
+import io.micrometer.tracing.brave.bridge.BravePropagator;
+import io.micrometer.tracing.brave.bridge.BraveTracer;
+import io.micrometer.tracing.brave.bridge.CompositeSpanHandler;
+import io.micrometer.tracing.handler.DefaultTracingObservationHandler;
+import io.micrometer.tracing.handler.PropagatingSenderTracingObservationHandler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the instrumentation a single payment goes through, on the Prometheus registry the service exposes:
+// stageTimers records the five payment.stage.duration / payment.processor.duration histograms of one payment,
+// clock reads included, and tracedClientCall is the observation around one outbound inventory call or Kafka send,
+// i.e. a timer, a span when sampled, and the trace context injected into the request headers.
+// Budget: 2 us for the stage timers and 5 us per traced call at the default 0.1 sampling probability, both far
+// below 0.1% of the ~20 ms of CPU a payment takes.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StageInstrumentationBenchmark {
+
+    @Param({"0.0", "0.1", "1.0"})
+    private float sampling;
+
+    private Timer[] stageTimers;
+    private Tracing tracing;
+    private ObservationRegistry observationRegistry;
+
+    @Setup
+    public void setUp() {
+        PrometheusMeterRegistry meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        stageTimers = new Timer[5];
+        String[] stages = {"jwt-filter", "validate-stock", "create-payment", "send-payment-event"};
+        for (int i = 0; i < stages.length; i++) {
+            stageTimers[i] = Timer.builder("payment.stage.duration")
+                    .tag("stage", stages[i])
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(100))
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(meterRegistry);
+        }
+        stageTimers[4] = Timer.builder("payment.processor.duration")
+                .tag("mode", "CREDIT_CARD")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        // What Boot's tracing auto-configuration sets up with the brave bridge and no exporter: sampled spans are
+        // finished and then dropped
+        tracing = Tracing.newBuilder()
+                .currentTraceContext(ThreadLocalCurrentTraceContext.create())
+                .sampler(Sampler.create(sampling))
+                .addSpanHandler(new CompositeSpanHandler(List.of(), List.of(), List.of()))
+                .build();
+        BraveTracer tracer = new BraveTracer(tracing.tracer(), new BraveCurrentTraceContext(tracing.currentTraceContext()),
+                new BraveBaggageManager());
+        observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig()
+                .observationHandler(new DefaultMeterObservationHandler(meterRegistry))
+                .observationHandler(new ObservationHandler.FirstMatchingCompositeObservationHandler(
+                        new PropagatingSenderTracingObservationHandler<>(tracer, new BravePropagator(tracing)),
+                        new DefaultTracingObservationHandler(tracer)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        tracing.close();
+    }
+
+    @Benchmark
+    public long stageTimers() {
+        long elapsed = 0;
+        for (Timer timer : stageTimers) {
+            long start = System.nanoTime();
+            elapsed = System.nanoTime() - start;
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+        }
+        return elapsed;
+    }
+
+    @Benchmark
+    public HttpHeaders tracedClientCall() {
+        SenderContext<HttpHeaders> context = new SenderContext<>((carrier, key, value) -> carrier.set(key, value));
+        context.setCarrier(new HttpHeaders());
+        Observation observation = Observation.createNotStarted("http.client.requests", () -> context, observationRegistry)
+                .lowCardinalityKeyValue("uri", "/inventory/validate")
+                .start();
+        try (Observation.Scope scope = observation.openScope()) {
+            return context.getCarrier();
+        } finally {
+            observation.stop();
+        }
+    }
+
+    @Benchmark
+    public HttpHeaders uninstrumentedClientCall() {
+        return new HttpHeaders();
+    }
+}
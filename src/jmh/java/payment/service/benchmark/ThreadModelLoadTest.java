@@ -0,0 +1,178 @@
+package payment.service.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Closed-loop load test of POST /payment over real HTTP, to compare platform and virtual request threads.
+// The inventory service is a local stub that answers after a fixed delay, so requests spend most of their
+// time blocked on I/O. Reports throughput, latency, peak threads and heap per in-flight request.
+//
+//   mvn -Pbenchmark test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+//   java -cp target/test-classes:target/classes:$(cat target/cp.txt) payment.service.benchmark.ThreadModelLoadTest \
+//        <platform|virtual> [concurrency=1000] [seconds=30] [inventoryLatencyMs=50]
+//
+// "virtual" needs a Java 21 build (mvn -Pjava21 ...). Client and server share the JVM, so the figures include the
+// client's own per-request state; compare the two modes rather than reading them in absolute terms.
+public final class ThreadModelLoadTest {
+
+    private ThreadModelLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        // HttpClient completes its futures on the common pool, which starts a thread per task below two CPUs
+        System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism", "4");
+        boolean virtual = args.length > 0 && args[0].equals("virtual");
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        Duration duration = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 30);
+        long inventoryLatencyMs = args.length > 3 ? Long.parseLong(args[3]) : 50;
+
+        ExecutorService inventoryExecutor = Executors.newCachedThreadPool();
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        HttpServer inventory = startInventoryStub(inventoryLatencyMs, inventoryExecutor);
+        ConfigurableApplicationContext context = BenchmarkApplication.start(
+                "spring.threads.virtual.enabled=" + virtual,
+                "spring.cloud.discovery.client.simple.instances.INVENTORY-SERVICE[0].uri=http://localhost:" + inventory.getAddress().getPort(),
+                "inventory.service.read-timeout=PT30S");
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            String bearer = "Bearer " + JwtAuthFilterBenchmark.token("load-test-admin", List.of("ADMIN"), Duration.ofHours(1));
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(clientExecutor)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .build();
+
+            // Short warm-up at low concurrency so JIT and connection pools do not skew the comparison
+            run(client, port, bearer, Math.min(concurrency, 50), Duration.ofSeconds(5), null);
+            System.gc();
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            long baselineHeap = memory.getHeapMemoryUsage().getUsed();
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+
+            Result result = run(client, port, bearer, concurrency, duration, memory);
+
+            long[] latencies = result.latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            double seconds = duration.toNanos() / 1e9;
+            double throughput = latencies.length / seconds;
+            double meanLatencyMs = Arrays.stream(latencies).average().orElse(0) / 1e6;
+            // Little's law: requests actually in flight on the server side
+            double inFlight = throughput * meanLatencyMs / 1000;
+            long heapPerRequest = (long) ((result.meanHeap - baselineHeap) / Math.max(1, inFlight));
+
+            System.out.printf("mode=%s concurrency=%d inventoryLatency=%dms%n", virtual ? "virtual" : "platform", concurrency, inventoryLatencyMs);
+            System.out.printf("  completed=%d errors=%d throughput=%.0f req/s%n", latencies.length, result.errors.get(), throughput);
+            System.out.printf("  latency p50=%.1fms p99=%.1fms max=%.1fms%n",
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6, percentile(latencies, 1.0) / 1e6);
+            System.out.printf("  in-flight=%.0f peakThreads=%d heapPerInFlightRequest=%d KiB%n",
+                    inFlight, threads.getPeakThreadCount(), heapPerRequest / 1024);
+        } finally {
+            context.close();
+            inventory.stop(0);
+            inventoryExecutor.shutdownNow();
+            clientExecutor.shutdownNow();
+        }
+    }
+
+    private static Result run(HttpClient client, int port, String bearer, int concurrency, Duration duration, MemoryMXBean memory)
+            throws InterruptedException {
+        Result result = new Result();
+        Semaphore slots = new Semaphore(concurrency);
+        long deadline = System.nanoTime() + duration.toNanos();
+        long samples = 0;
+        long heapTotal = 0;
+        long nextSample = System.nanoTime();
+
+        while (System.nanoTime() < deadline) {
+            if (!slots.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+            if (memory != null && System.nanoTime() >= nextSample) {
+                heapTotal += memory.getHeapMemoryUsage().getUsed();
+                samples++;
+                nextSample = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+            }
+            long start = System.nanoTime();
+            client.sendAsync(paymentRequest(port, bearer), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (error == null && response.statusCode() == 200) {
+                            result.latencies.add(System.nanoTime() - start);
+                        } else {
+                            result.errors.incrementAndGet();
+                        }
+                        slots.release();
+                    });
+        }
+        slots.acquire(concurrency);
+        result.meanHeap = samples == 0 ? 0 : heapTotal / samples;
+        return result;
+    }
+
+    private static HttpRequest paymentRequest(int port, String bearer) {
+        String query = "orderId=" + UUID.randomUUID()
+                + "&productId=" + UUID.randomUUID()
+                + "&customerId=" + UUID.randomUUID()
+                + "&quantity=1&totalAmount=200.00&paymentMode=CREDIT_CARD";
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/payment?" + query))
+                .header("Authorization", bearer)
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    private static HttpServer startInventoryStub(long latencyMs, ExecutorService executor) throws Exception {
+        // Otherwise Nagle's algorithm adds delayed-ACK stalls to every stubbed response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 1000);
+        server.setExecutor(executor);
+        server.createContext("/inventory/validate", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "true".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static final class Result {
+
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger errors = new AtomicInteger();
+        private long meanHeap;
+    }
+}
@@ -0,0 +1,104 @@
+package payment.service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import payment.service.domain.TimeOrderedUuidGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Inserts millions of payment rows keyed by random (v4) vs time-ordered (v7) UUIDs, into in-memory and
+// file-backed H2, to show the cost of scattered primary key inserts as the table grows.
+// Each iteration starts from an empty table; score is seconds per `rows` inserts.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class TransactionIdInsertBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"random", "time-ordered"})
+    public String keys;
+
+    @Param({"mem", "file"})
+    public String storage;
+
+    @Param({"1000000"})
+    public int rows;
+
+    private Path directory;
+    private Connection connection;
+    private Supplier<UUID> idGenerator;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        idGenerator = "random".equals(keys) ? UUID::randomUUID : TimeOrderedUuidGenerator::next;
+        String url;
+        if ("file".equals(storage)) {
+            directory = Files.createTempDirectory("payment-id-bench");
+            url = "jdbc:h2:file:" + directory.resolve("payments").toAbsolutePath();
+        } else {
+            url = "jdbc:h2:mem:payment-id-bench-" + UUID.randomUUID();
+        }
+        connection = DriverManager.getConnection(url, "sa", "");
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE payment (transaction_id UUID PRIMARY KEY, order_id UUID NOT NULL, "
+                    + "customer_id UUID NOT NULL, total_amount_minor BIGINT NOT NULL, currency VARCHAR(3) NOT NULL, payment_status VARCHAR(16), "
+                    + "payment_mode VARCHAR(16), timestamp TIMESTAMP(6))");
+        }
+        connection.commit();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws SQLException, IOException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        } catch (SQLException ignored) {
+            // The connection is closed by the shutdown itself
+        }
+        connection.close();
+        if (directory != null) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+            directory = null;
+        }
+    }
+
+    @Benchmark
+    public int insert() throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO payment (transaction_id, order_id, customer_id, total_amount_minor, currency, payment_status, payment_mode, timestamp) "
+                        + "VALUES (?, ?, ?, 20000, 'USD', 'SUCCESS', 'CREDIT_CARD', ?)")) {
+            for (int i = 1; i <= rows; i++) {
+                insert.setObject(1, idGenerator.get());
+                insert.setObject(2, UUID.randomUUID());
+                insert.setObject(3, UUID.randomUUID());
+                insert.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+                insert.addBatch();
+                if (i % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+            insert.executeBatch();
+            connection.commit();
+        }
+        return rows;
+    }
+}
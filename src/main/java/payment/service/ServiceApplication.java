@@ -1,12 +1,24 @@
 package payment.service;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.http.client.ClientHttpRequestFactoryBuilder;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import io.micrometer.observation.ObservationRegistry;
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
 
 @SpringBootApplication
+@EnableScheduling
 public class ServiceApplication {
 
 	public static void main(String[] args) {
@@ -15,8 +27,34 @@ public class ServiceApplication {
 
 	@Bean
 	@LoadBalanced
-	public RestTemplate restTemplate() {
-		return new RestTemplate();
+	public RestTemplate restTemplate(RestTemplateBuilder builder,
+									 @Value("${inventory.service.connect-timeout:PT1S}") Duration connectTimeout,
+									 @Value("${inventory.service.read-timeout:PT2S}") Duration readTimeout,
+									 @Value("${inventory.service.max-connections:200}") int maxConnections) {
+		// Bounded timeouts so a slow inventory service cannot hold request threads indefinitely
+		return builder
+				// HttpClient's default of 5 connections per route would cap concurrent inventory calls, whatever the thread model
+				.requestFactoryBuilder(ClientHttpRequestFactoryBuilder.httpComponents()
+						.withConnectionManagerCustomizer(connectionManager -> connectionManager
+								.setMaxConnTotal(maxConnections)
+								.setMaxConnPerRoute(maxConnections)))
+				.connectTimeout(connectTimeout)
+				.readTimeout(readTimeout)
+				.build();
+	}
+
+	// Non-blocking counterpart of the RestTemplate, used by the reactive payment endpoint. Built by hand, so unlike
+	// the RestTemplate it does not get Boot's observation customizer and the registry is set here, for the
+	// http.client.requests metrics and the trace context sent to the inventory service.
+	@Bean
+	@LoadBalanced
+	public WebClient.Builder loadBalancedWebClientBuilder(@Value("${inventory.service.connect-timeout:PT1S}") Duration connectTimeout,
+														  ObservationRegistry observationRegistry) {
+		HttpClient httpClient = HttpClient.create()
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis());
+		return WebClient.builder()
+				.clientConnector(new ReactorClientHttpConnector(httpClient))
+				.observationRegistry(observationRegistry);
 	}
 
 }
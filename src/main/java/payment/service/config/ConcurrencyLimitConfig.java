@@ -0,0 +1,43 @@
+package payment.service.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import payment.service.service.AdaptiveConcurrencyLimiter;
+
+import java.time.Duration;
+
+@Configuration
+public class ConcurrencyLimitConfig {
+
+    // POST /payment, applied by PaymentConcurrencyLimitFilter
+    @Bean
+    public AdaptiveConcurrencyLimiter paymentConcurrencyLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${payment.limiter.enabled:true}") boolean enabled,
+            @Value("${payment.limiter.initial-limit:20}") int initialLimit,
+            @Value("${payment.limiter.min-limit:4}") int minLimit,
+            @Value("${payment.limiter.max-limit:200}") int maxLimit,
+            @Value("${payment.limiter.latency-target:PT1S}") Duration latencyTarget,
+            @Value("${payment.limiter.priority-reserve:0.2}") double priorityReserve,
+            @Value("${payment.limiter.retry-after:PT1S}") Duration retryAfter) {
+        return new AdaptiveConcurrencyLimiter("payment", meterRegistry, enabled, initialLimit, minLimit, maxLimit,
+                latencyTarget, priorityReserve, retryAfter);
+    }
+
+    // Stock validations sent to the inventory service one by one (not those of StockValidationBatcher)
+    @Bean
+    public AdaptiveConcurrencyLimiter inventoryConcurrencyLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${inventory.limiter.enabled:true}") boolean enabled,
+            @Value("${inventory.limiter.initial-limit:20}") int initialLimit,
+            @Value("${inventory.limiter.min-limit:4}") int minLimit,
+            @Value("${inventory.limiter.max-limit:200}") int maxLimit,
+            @Value("${inventory.limiter.latency-target:PT0.25S}") Duration latencyTarget,
+            @Value("${inventory.limiter.priority-reserve:0.2}") double priorityReserve,
+            @Value("${inventory.limiter.retry-after:PT1S}") Duration retryAfter) {
+        return new AdaptiveConcurrencyLimiter("inventory", meterRegistry, enabled, initialLimit, minLimit, maxLimit,
+                latencyTarget, priorityReserve, retryAfter);
+    }
+}
@@ -0,0 +1,47 @@
+package payment.service.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Platform or virtual threads for the service's own executors. Follows spring.threads.virtual.enabled the same way
+// Spring Boot does for Tomcat, @Scheduled and the Kafka listener containers, so virtual threads need Java 21+.
+@Component
+public class ExecutionMode {
+
+    private final boolean virtual;
+
+    @Autowired
+    public ExecutionMode(Environment environment) {
+        this(Threading.VIRTUAL.isActive(environment));
+    }
+
+    private ExecutionMode(boolean virtual) {
+        this.virtual = virtual;
+    }
+
+    public static ExecutionMode platform() {
+        return new ExecutionMode(false);
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public ThreadFactory threadFactory(String name) {
+        if (virtual) {
+            return new VirtualThreadTaskExecutor(name + "-").getVirtualThreadFactory();
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
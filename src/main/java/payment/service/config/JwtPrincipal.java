@@ -0,0 +1,39 @@
+package payment.service.config;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Verified result of parsing a JWT once: subject, granted authorities and expiry
+public final class JwtPrincipal {
+
+    private final String username;
+    private final List<GrantedAuthority> authorities;
+    private final Instant expiresAt;
+
+    public JwtPrincipal(String username, List<String> roles, Instant expiresAt) {
+        this.username = username;
+        this.authorities = roles == null ? Collections.emptyList()
+                : Collections.unmodifiableList(roles.stream()
+                        .map(SimpleGrantedAuthority::new)
+                        .collect(Collectors.toList()));
+        this.expiresAt = expiresAt;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public List<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    // Null when the token carries no "exp" claim
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
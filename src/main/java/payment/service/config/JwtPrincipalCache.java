@@ -0,0 +1,113 @@
+package payment.service.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+// Bounded cache of already verified tokens, keyed by SHA-256 of the raw token
+// and evicted at the token's "exp", so repeat requests skip HMAC verification and claims parsing.
+@Component
+public class JwtPrincipalCache {
+
+    private final JwtUtil jwtUtil;
+    private final Cache<String, JwtPrincipal> verifiedTokens;
+    private final Counter hits;
+    private final Counter misses;
+    private final boolean enabled;
+
+    public JwtPrincipalCache(JwtUtil jwtUtil,
+                             MeterRegistry meterRegistry,
+                             @Value("${jwt.cache.enabled:true}") boolean enabled,
+                             @Value("${jwt.cache.max-size:10000}") long maxSize,
+                             @Value("${jwt.cache.max-ttl:PT15M}") Duration maxTtl) {
+        this.jwtUtil = jwtUtil;
+        this.enabled = enabled;
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry(maxTtl))
+                .build();
+        this.hits = Counter.builder("jwt.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("jwt.cache.requests").tag("result", "miss").register(meterRegistry);
+        meterRegistry.gauge("jwt.cache.size", verifiedTokens, Cache::estimatedSize);
+    }
+
+    // Returns the verified principal, or null if the token is invalid or expired
+    public JwtPrincipal authenticate(String token) {
+        if (!enabled) {
+            return parse(token);
+        }
+
+        String key = digest(token);
+        JwtPrincipal principal = verifiedTokens.getIfPresent(key);
+        if (principal != null) {
+            hits.increment();
+            return principal;
+        }
+
+        misses.increment();
+        principal = parse(token);
+        if (principal != null) {
+            verifiedTokens.put(key, principal);
+        }
+        return principal;
+    }
+
+    private JwtPrincipal parse(String token) {
+        try {
+            return jwtUtil.parsePrincipal(token);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            byte[] hash = sha256.digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Each entry lives until its token expires, capped by max-ttl (also used for tokens without "exp")
+    private static final class TokenExpiry implements Expiry<String, JwtPrincipal> {
+
+        private final long maxTtlNanos;
+
+        private TokenExpiry(Duration maxTtl) {
+            this.maxTtlNanos = maxTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(String key, JwtPrincipal principal, long currentTime) {
+            Instant expiresAt = principal.getExpiresAt();
+            if (expiresAt == null) {
+                return maxTtlNanos;
+            }
+            long untilExpiry = Duration.between(Instant.now(), expiresAt).toNanos();
+            return Math.max(0, Math.min(untilExpiry, maxTtlNanos));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, JwtPrincipal principal, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, principal, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, JwtPrincipal principal, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
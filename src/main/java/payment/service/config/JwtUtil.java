@@ -1,6 +1,7 @@
 package payment.service.config;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 
 import io.jsonwebtoken.security.Keys;
@@ -11,6 +12,7 @@ import org.springframework.stereotype.Component;
 
 import java.security.Key;
 import java.util.Base64;
+import java.util.Date;
 import java.util.List;
 import java.util.function.Function;
 
@@ -22,15 +24,27 @@ public class JwtUtil {
 
     private Key signingKey;
 
+    // JwtParser is immutable and thread-safe, so it is built once and shared
+    private JwtParser jwtParser;
+
     @PostConstruct
     public void init() {
         byte[] keyBytes = Base64.getEncoder().encode(secret.getBytes());
         signingKey = Keys.hmacShaKeyFor(keyBytes);
+        jwtParser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+    }
+
+    // Verifies the signature and expiry once and returns everything the filter needs
+    public JwtPrincipal parsePrincipal(String token) {
+        Claims claims = jwtParser.parseClaimsJws(token).getBody();
+        Date expiration = claims.getExpiration();
+        return new JwtPrincipal(claims.getSubject(), extractRoles(claims),
+                expiration != null ? expiration.toInstant() : null);
     }
 
     public boolean validateToken(String token) {
         try {
-            Jwts.parserBuilder().setSigningKey(signingKey).build().parseClaimsJws(token);
+            jwtParser.parseClaimsJws(token);
             return true;
         } catch (Exception e) {
             return false;
@@ -42,12 +56,16 @@ public class JwtUtil {
     }
 
     public List<String> extractRoles(String token) {
-        Claims claims = Jwts.parserBuilder().setSigningKey(signingKey).build().parseClaimsJws(token).getBody();
+        return extractClaim(token, this::extractRoles);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> extractRoles(Claims claims) {
         return claims.get("roles", List.class);
     }
 
     private <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = Jwts.parserBuilder().setSigningKey(signingKey).build().parseClaimsJws(token).getBody();
+        final Claims claims = jwtParser.parseClaimsJws(token).getBody();
         return claimsResolver.apply(claims);
     }
 }
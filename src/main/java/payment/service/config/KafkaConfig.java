@@ -0,0 +1,78 @@
+package payment.service.config;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import payment.service.domain.PaymentEvent;
+
+@Configuration
+public class KafkaConfig {
+
+    // Template for the payment topics. Other messages keep going through Boot's String template, which is
+    // declared here as well because Boot backs off from its own once any KafkaTemplate bean exists. For the same
+    // reason spring.kafka.template.observation-enabled, which puts the trace context into record headers, is
+    // applied here by hand.
+    @Bean
+    public KafkaTemplate<String, PaymentEvent> paymentEventKafkaTemplate(
+            ProducerFactory<String, String> producerFactory,
+            @Value("${payment.events.format:json}") PaymentEventSerializer.Format format,
+            @Value("${spring.kafka.template.observation-enabled:false}") boolean observationEnabled) {
+        KafkaTemplate<String, PaymentEvent> template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(
+                producerFactory.getConfigurationProperties(), new StringSerializer(), new PaymentEventSerializer(format)));
+        template.setObservationEnabled(observationEnabled);
+        return template;
+    }
+
+    @Bean
+    public KafkaTemplate<String, String> kafkaTemplate(ProducerFactory<String, String> producerFactory,
+                                                       @Value("${spring.kafka.template.observation-enabled:false}") boolean observationEnabled) {
+        KafkaTemplate<String, String> template = new KafkaTemplate<>(producerFactory);
+        template.setObservationEnabled(observationEnabled);
+        return template;
+    }
+
+    // Record-at-a-time listener factory for the payment topics. Records that cannot be read reach the error
+    // handler, which logs and skips them, instead of stopping the container.
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> paymentEventKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, paymentEventConsumerFactory(consumerFactory));
+        return factory;
+    }
+
+    // Listener factory delivering a whole poll to the listener; offsets are committed once per batch.
+    // Records that cannot be read are delivered as null.
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            @Value("${payment.status-listener.concurrency:1}") int concurrency) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, paymentEventConsumerFactory(consumerFactory));
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        return factory;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ConsumerFactory<Object, Object> paymentEventConsumerFactory(ConsumerFactory<Object, Object> consumerFactory) {
+        Deserializer keyDeserializer = new StringDeserializer();
+        Deserializer valueDeserializer = new ErrorHandlingDeserializer<>(new PaymentEventDeserializer());
+        return new DefaultKafkaConsumerFactory<Object, Object>(consumerFactory.getConfigurationProperties(), keyDeserializer, valueDeserializer);
+    }
+}
@@ -0,0 +1,61 @@
+package payment.service.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import payment.service.service.AdaptiveConcurrencyLimiter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Sheds POST /payment requests beyond the adaptive concurrency limit with 503 and Retry-After, before they take
+// a database connection or an inventory call. Runs after the security filters, so the caller's authorities
+// decide the priority; the time of each admitted request feeds the limit back.
+@Component
+public class PaymentConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final byte[] shedBody;
+
+    public PaymentConcurrencyLimitFilter(@Qualifier("paymentConcurrencyLimiter") AdaptiveConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+        this.shedBody = ("{\"status\":503,\"error\":\"Service Unavailable\",\"message\":\"Concurrency limit of "
+                + limiter.getName() + " reached\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod())
+                || !"/payment".equals(request.getRequestURI().substring(request.getContextPath().length()));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        if (!limiter.tryAcquire(AdaptiveConcurrencyLimiter.currentPriority())) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, limiter.getRetryAfter().toSeconds())));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getOutputStream().write(shedBody);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean dropped = false;
+        try {
+            filterChain.doFilter(request, response);
+            // 503 from a full bulkhead or shed inventory call and 504 after a processor timeout are the overload
+            // signals; other failures, such as insufficient stock, only count with their latency
+            int status = response.getStatus();
+            dropped = status == HttpStatus.SERVICE_UNAVAILABLE.value() || status == HttpStatus.GATEWAY_TIMEOUT.value();
+        } finally {
+            limiter.release(start, dropped);
+        }
+    }
+}
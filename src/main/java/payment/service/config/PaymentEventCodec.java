@@ -0,0 +1,162 @@
+package payment.service.config;
+
+import payment.service.domain.Money;
+import payment.service.domain.PaymentEvent;
+import payment.service.domain.PaymentStatus;
+
+import java.util.Currency;
+import java.util.UUID;
+
+// Binary wire format of PaymentEvent, at most 50 bytes against ~170 for the JSON form:
+//
+//   byte    version (1)
+//   byte    presence flags, bit 0 productId, 1 quantity, 2 transactionId, 3 paymentStatus, 4 amount
+//   long[2] productId          most then least significant bits, big-endian
+//   int     quantity
+//   long[2] transactionId
+//   byte    paymentStatus      enum ordinal
+//   long    amount             minor units
+//   byte[3] amount currency    ISO 4217 code, ASCII
+//
+// Only present fields are written, in flag order. To evolve it, new fields get the next flag bit and are written
+// after the existing ones, so older readers stop before them; the version only changes for incompatible layouts.
+// PaymentStatus constants may only be appended, unknown ordinals are read as null.
+public final class PaymentEventCodec {
+
+    public static final String CONTENT_TYPE_HEADER = "contentType";
+    public static final String JSON_CONTENT_TYPE = "application/json";
+    public static final String BINARY_CONTENT_TYPE = "application/vnd.payment-event+binary";
+
+    static final byte VERSION = 1;
+
+    private static final int PRODUCT_ID = 1;
+    private static final int QUANTITY = 1 << 1;
+    private static final int TRANSACTION_ID = 1 << 2;
+    private static final int PAYMENT_STATUS = 1 << 3;
+    private static final int AMOUNT = 1 << 4;
+
+    private static final PaymentStatus[] STATUSES = PaymentStatus.values();
+
+    private PaymentEventCodec() {
+    }
+
+    public static byte[] encode(PaymentEvent event) {
+        int flags = 0;
+        int size = 2;
+        if (event.getProductId() != null) {
+            flags |= PRODUCT_ID;
+            size += 16;
+        }
+        if (event.getQuantity() != null) {
+            flags |= QUANTITY;
+            size += 4;
+        }
+        if (event.getTransactionId() != null) {
+            flags |= TRANSACTION_ID;
+            size += 16;
+        }
+        if (event.getPaymentStatus() != null) {
+            flags |= PAYMENT_STATUS;
+            size += 1;
+        }
+        if (event.getAmount() != null) {
+            flags |= AMOUNT;
+            size += 11;
+        }
+
+        byte[] bytes = new byte[size];
+        bytes[0] = VERSION;
+        bytes[1] = (byte) flags;
+        int offset = 2;
+        if ((flags & PRODUCT_ID) != 0) {
+            offset = writeUuid(bytes, offset, event.getProductId());
+        }
+        if ((flags & QUANTITY) != 0) {
+            offset = writeInt(bytes, offset, event.getQuantity());
+        }
+        if ((flags & TRANSACTION_ID) != 0) {
+            offset = writeUuid(bytes, offset, event.getTransactionId());
+        }
+        if ((flags & PAYMENT_STATUS) != 0) {
+            bytes[offset++] = (byte) event.getPaymentStatus().ordinal();
+        }
+        if ((flags & AMOUNT) != 0) {
+            writeLong(bytes, offset, event.getAmount().minorUnits());
+            String currency = event.getAmount().currency().getCurrencyCode();
+            for (int i = 0; i < 3; i++) {
+                bytes[offset + 8 + i] = (byte) currency.charAt(i);
+            }
+        }
+        return bytes;
+    }
+
+    public static PaymentEvent decode(byte[] bytes) {
+        if (bytes.length < 2 || bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported payment event format version " + (bytes.length == 0 ? "none" : bytes[0]));
+        }
+        int flags = bytes[1];
+        int offset = 2;
+        PaymentEvent event = new PaymentEvent();
+        try {
+            if ((flags & PRODUCT_ID) != 0) {
+                event.setProductId(new UUID(readLong(bytes, offset), readLong(bytes, offset + 8)));
+                offset += 16;
+            }
+            if ((flags & QUANTITY) != 0) {
+                event.setQuantity(readInt(bytes, offset));
+                offset += 4;
+            }
+            if ((flags & TRANSACTION_ID) != 0) {
+                event.setTransactionId(new UUID(readLong(bytes, offset), readLong(bytes, offset + 8)));
+                offset += 16;
+            }
+            if ((flags & PAYMENT_STATUS) != 0) {
+                int ordinal = bytes[offset] & 0xFF;
+                event.setPaymentStatus(ordinal < STATUSES.length ? STATUSES[ordinal] : null);
+                offset++;
+            }
+            if ((flags & AMOUNT) != 0) {
+                long minorUnits = readLong(bytes, offset);
+                char[] currency = {(char) bytes[offset + 8], (char) bytes[offset + 9], (char) bytes[offset + 10]};
+                event.setAmount(Money.ofMinor(minorUnits, Currency.getInstance(new String(currency))));
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated payment event of " + bytes.length + " bytes");
+        }
+        return event;
+    }
+
+    private static int writeUuid(byte[] bytes, int offset, UUID uuid) {
+        writeLong(bytes, offset, uuid.getMostSignificantBits());
+        writeLong(bytes, offset + 8, uuid.getLeastSignificantBits());
+        return offset + 16;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static int writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+}
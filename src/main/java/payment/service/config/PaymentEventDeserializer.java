@@ -0,0 +1,54 @@
+package payment.service.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import payment.service.domain.PaymentEvent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Reads PaymentEvent in either format, chosen by the record's contentType header; records without it are JSON,
+// as everything produced before the header was introduced
+public class PaymentEventDeserializer implements Deserializer<PaymentEvent> {
+
+    // Fields added by newer producers are ignored, as the binary format ignores unknown flags
+    private static final ObjectReader JSON_READER = new ObjectMapper()
+            .readerFor(PaymentEvent.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private static final byte[] BINARY_CONTENT_TYPE = PaymentEventCodec.BINARY_CONTENT_TYPE.getBytes(StandardCharsets.US_ASCII);
+
+    @Override
+    public PaymentEvent deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        Header contentType = headers.lastHeader(PaymentEventCodec.CONTENT_TYPE_HEADER);
+        if (contentType != null && Arrays.equals(contentType.value(), BINARY_CONTENT_TYPE)) {
+            try {
+                return PaymentEventCodec.decode(data);
+            } catch (IllegalArgumentException e) {
+                throw new SerializationException(e.getMessage(), e);
+            }
+        }
+        return deserialize(topic, data);
+    }
+
+    @Override
+    public PaymentEvent deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return JSON_READER.readValue(data);
+        } catch (IOException e) {
+            throw new SerializationException("Error deserializing PaymentEvent JSON", e);
+        }
+    }
+}
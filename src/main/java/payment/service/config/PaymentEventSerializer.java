@@ -0,0 +1,65 @@
+package payment.service.config;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import payment.service.domain.PaymentEvent;
+
+import java.nio.charset.StandardCharsets;
+
+// Writes PaymentEvent as JSON or in the binary PaymentEventCodec format, and marks each record with its format
+// in the contentType header so consumers of either kind can read the topic while it is being migrated
+public class PaymentEventSerializer implements Serializer<PaymentEvent> {
+
+    public enum Format { JSON, BINARY }
+
+    // JSON events keep the shape consumers read before amounts were added, some of which reject unknown fields;
+    // the amount is only sent in the binary format, whose readers skip fields they do not know
+    @JsonIgnoreProperties("amount")
+    private interface JsonShape {
+    }
+
+    private static final ObjectWriter JSON_WRITER = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .addMixIn(PaymentEvent.class, JsonShape.class)
+            .writerFor(PaymentEvent.class);
+
+    private static final byte[] JSON_CONTENT_TYPE = PaymentEventCodec.JSON_CONTENT_TYPE.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BINARY_CONTENT_TYPE = PaymentEventCodec.BINARY_CONTENT_TYPE.getBytes(StandardCharsets.US_ASCII);
+
+    private final Format format;
+
+    public PaymentEventSerializer(Format format) {
+        this.format = format;
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, PaymentEvent event) {
+        if (event == null) {
+            return null;
+        }
+        headers.remove(PaymentEventCodec.CONTENT_TYPE_HEADER);
+        headers.add(PaymentEventCodec.CONTENT_TYPE_HEADER, format == Format.BINARY ? BINARY_CONTENT_TYPE : JSON_CONTENT_TYPE);
+        return serialize(topic, event);
+    }
+
+    @Override
+    public byte[] serialize(String topic, PaymentEvent event) {
+        if (event == null) {
+            return null;
+        }
+        if (format == Format.BINARY) {
+            return PaymentEventCodec.encode(event);
+        }
+        try {
+            return JSON_WRITER.writeValueAsBytes(event);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Error serializing PaymentEvent", e);
+        }
+    }
+}
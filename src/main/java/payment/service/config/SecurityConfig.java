@@ -1,5 +1,6 @@
 package payment.service.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -26,6 +27,8 @@ public class SecurityConfig {
         return http
                 .csrf(AbstractHttpConfigurer::disable)  // Disable CSRF for JWT
                 .authorizeHttpRequests(auth -> auth
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()  // Long-poll results, the request itself was already authorized
+                        .dispatcherTypeMatchers(DispatcherType.ERROR).permitAll()  // Error bodies of 429/503 answers, e.g. with Retry-After
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()  // Allow Swagger
                         .requestMatchers("/payment/**").hasAuthority("ADMIN")  // Restrict Payment API
                         .requestMatchers("/inventory/**").hasAuthority("ADMIN")  // Restrict Inventory API
@@ -2,25 +2,83 @@ package payment.service.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import payment.service.domain.Money;
 import payment.service.domain.Payment;
 import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentPage;
+import payment.service.domain.PaymentQuery;
+import payment.service.domain.PaymentStatsBucket;
+import payment.service.domain.PaymentStatus;
+import payment.service.service.AsyncPaymentService;
+import payment.service.service.BatchPaymentService;
+import payment.service.service.IdempotencyService;
+import payment.service.service.PaymentDetailsCache;
+import payment.service.service.PaymentHistoryService;
 import payment.service.service.PaymentService;
+import payment.service.service.PaymentStatsAggregator;
+import payment.service.service.ReactivePaymentService;
+import reactor.core.publisher.Mono;
 
-import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Currency;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/payment")
 @Tag(name = "Payment Service", description = "Handles Payment Processing")
 public class PaymentController {
 
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+    static final String PREFER_HEADER = "Prefer";
+    static final String PREFERENCE_APPLIED_HEADER = "Preference-Applied";
+    static final String RESPOND_ASYNC = "respond-async";
+
     @Autowired
     private PaymentService paymentService;
 
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private AsyncPaymentService asyncPaymentService;
+
+    @Autowired
+    private ReactivePaymentService reactivePaymentService;
+
+    @Autowired
+    private BatchPaymentService batchPaymentService;
+
+    @Autowired
+    private PaymentHistoryService paymentHistoryService;
+
+    @Autowired
+    private PaymentDetailsCache paymentDetailsCache;
+
+    @Autowired
+    private PaymentStatsAggregator paymentStatsAggregator;
+
+    @Value("${payment.async.max-wait:PT30S}")
+    private Duration maxWait;
+
     @PostMapping
     @Operation(summary = "Process Payment and Deduct Stock")
     @PreAuthorize("hasAnyAuthority('USER', 'ADMIN')")
@@ -28,19 +86,176 @@ public class PaymentController {
                                                   @RequestParam UUID productId,
                                                   @RequestParam UUID customerId,
                                                   @RequestParam int quantity,
-                                                  @RequestParam BigDecimal totalAmount,
-                                                  @RequestParam PaymentMode paymentMode) {
+                                                  @RequestParam String totalAmount,
+                                                  @RequestParam(required = false) Currency currency,
+                                                  @RequestParam PaymentMode paymentMode,
+                                                  @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                                  @RequestHeader(value = PREFER_HEADER, required = false) String prefer) {
+
+        checkQuantity(quantity);
+        Money amount = parseAmount(totalAmount, currency);
+
+        // "Prefer: respond-async" stores the payment as PENDING and answers 202 before it is processed
+        boolean async = prefer != null && prefer.contains(RESPOND_ASYNC);
+        IdempotencyService.Attempt payment = async
+                ? accepted -> asyncPaymentService.accept(orderId, productId, customerId, quantity, amount, paymentMode, accepted)
+                : accepted -> paymentService.processPayment(orderId, productId, customerId, quantity, amount, paymentMode, accepted);
 
-        Payment payment = paymentService.processPayment(orderId, productId, customerId, quantity, totalAmount, paymentMode);
-        return ResponseEntity.ok(payment);
+        if (idempotencyKey == null) {
+            Payment result = payment.run(accepted -> {});
+            return respond(result, async).body(result);
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > 255) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Retries with the same key replay the original payment instead of paying again
+        String fingerprint = String.join("|", orderId.toString(), productId.toString(), customerId.toString(),
+                String.valueOf(quantity), amount.toString(), paymentMode.name());
+        IdempotencyService.Result result = idempotencyService.execute(idempotencyKey, fingerprint, payment);
+        return respond(result.getPayment(), async)
+                .header(IDEMPOTENT_REPLAYED_HEADER, String.valueOf(result.isReplayed()))
+                .body(result.getPayment());
+    }
+
+    // Same payment as POST /payment without holding a request thread while waiting on the inventory service.
+    // If the client goes away the subscription is cancelled, see ReactivePaymentService for what happens to the payment.
+    @PostMapping("/reactive")
+    @Operation(summary = "Process Payment and Deduct Stock without blocking")
+    @PreAuthorize("hasAnyAuthority('USER', 'ADMIN')")
+    public Mono<ResponseEntity<Payment>> processPaymentReactive(@RequestParam UUID orderId,
+                                                               @RequestParam UUID productId,
+                                                               @RequestParam UUID customerId,
+                                                               @RequestParam int quantity,
+                                                               @RequestParam String totalAmount,
+                                                               @RequestParam(required = false) Currency currency,
+                                                               @RequestParam PaymentMode paymentMode,
+                                                               @RequestHeader(HttpHeaders.AUTHORIZATION) String authorization) {
+        checkQuantity(quantity);
+        return reactivePaymentService.processPayment(orderId, productId, customerId, quantity, parseAmount(totalAmount, currency), paymentMode, authorization)
+                .map(ResponseEntity::ok);
+    }
+
+    // Many payments in one request, sent as a JSON array or NDJSON. The body is read while it arrives and one
+    // NDJSON result per payment (with its index in the request) is streamed back as each chunk is done.
+    @PostMapping(value = "/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Process a batch of Payments")
+    @PreAuthorize("hasAnyAuthority('USER', 'ADMIN')")
+    public ResponseEntity<StreamingResponseBody> processPayments(HttpServletRequest request,
+                                                                 @RequestHeader(HttpHeaders.AUTHORIZATION) String authorization) {
+        StreamingResponseBody body = out -> batchPaymentService.process(request.getInputStream(), out, authorization);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    // Read straight into minor units; more decimals than the currency has are rejected rather than rounded
+    private static void checkQuantity(int quantity) {
+        if (quantity <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "quantity must be positive");
+        }
+    }
+
+    private static Money parseAmount(String totalAmount, Currency currency) {
+        try {
+            return Money.parse(totalAmount, currency == null ? Money.DEFAULT_CURRENCY : currency);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid totalAmount: " + e.getMessage());
+        }
+    }
+
+    private ResponseEntity.BodyBuilder respond(Payment payment, boolean async) {
+        if (!async) {
+            return ResponseEntity.ok();
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/payment/" + payment.getTransactionId()))
+                .header(PREFERENCE_APPLIED_HEADER, RESPOND_ASYNC);
     }
 
     @Operation(summary = "Retrieve Payment Details by Transaction ID")
     @PreAuthorize("hasAnyAuthority('USER', 'ADMIN')")
     @GetMapping("/{transactionId}")
     public ResponseEntity<?> getPaymentDetails(@PathVariable UUID transactionId) {
-        return paymentService.getPaymentDetails(transactionId)
+        return paymentDetailsCache.get(transactionId, paymentService::getPaymentDetails)
                 .map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
+
+    // Newest first. Pass nextCursor from the response as cursor to get the following page.
+    @Operation(summary = "Search Payment History")
+    @PreAuthorize("hasAnyAuthority('USER', 'ADMIN')")
+    @GetMapping
+    public ResponseEntity<PaymentPage> findPayments(@RequestParam(required = false) UUID customerId,
+                                                    @RequestParam(required = false) UUID orderId,
+                                                    @RequestParam(required = false) PaymentStatus paymentStatus,
+                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                    @RequestParam(required = false) String cursor,
+                                                    @RequestParam(defaultValue = "100") int limit) {
+        PaymentQuery query = new PaymentQuery(customerId, orderId, paymentStatus, from, to);
+        return ResponseEntity.ok(paymentHistoryService.findPayments(query, cursor, limit));
+    }
+
+    // Every matching payment, oldest first, written while it is read from the database
+    @Operation(summary = "Export Payment History as CSV or NDJSON")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportPayments(@RequestParam(required = false) UUID customerId,
+                                                                @RequestParam(required = false) UUID orderId,
+                                                                @RequestParam(required = false) PaymentStatus paymentStatus,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                @RequestParam(defaultValue = "CSV") PaymentHistoryService.ExportFormat format) {
+        PaymentQuery query = new PaymentQuery(customerId, orderId, paymentStatus, from, to);
+        MediaType contentType = format == PaymentHistoryService.ExportFormat.CSV ? MediaType.parseMediaType("text/csv") : MediaType.APPLICATION_NDJSON;
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=payments." + format.name().toLowerCase())
+                .body(out -> paymentHistoryService.export(query, format, out));
+    }
+
+    // Totals per hour of creation, mode, status and currency for the hours from from up to to, by default the last 24
+    @Operation(summary = "Payment Totals per Hour, Mode and Status")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @GetMapping("/stats")
+    public ResponseEntity<List<PaymentStatsBucket>> getPaymentStats(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusHours(24);
+        return ResponseEntity.ok(paymentStatsAggregator.findStats(start, end));
+    }
+
+    // Recomputes the stats rollup from the payment table after a crash lost changes not yet checkpointed. Changes
+    // other running nodes have not checkpointed yet are counted twice, so they should be stopped first.
+    @Operation(summary = "Rebuild the Payment Totals")
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @PostMapping("/stats/rebuild")
+    public ResponseEntity<Void> rebuildPaymentStats() {
+        paymentStatsAggregator.rebuild();
+        return ResponseEntity.noContent().build();
+    }
+
+    // Long-polling variant: a PENDING payment being processed on this node is answered once it completes,
+    // or with its current state after the given number of seconds
+    @Operation(summary = "Wait for a Payment to leave PENDING")
+    @PreAuthorize("hasAnyAuthority('USER', 'ADMIN')")
+    @GetMapping(value = "/{transactionId}", params = "wait")
+    public DeferredResult<ResponseEntity<?>> awaitPaymentDetails(@PathVariable UUID transactionId, @RequestParam("wait") long waitSeconds) {
+        Duration wait = Duration.ofSeconds(Math.max(0, Math.min(waitSeconds, maxWait.toSeconds())));
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(wait.toMillis());
+
+        Optional<Payment> payment = paymentDetailsCache.get(transactionId, paymentService::getPaymentDetails);
+        Optional<CompletableFuture<Payment>> completion = asyncPaymentService.getCompletion(transactionId);
+        if (payment.isEmpty() || payment.get().getPaymentStatus() != PaymentStatus.PENDING || completion.isEmpty() || wait.isZero()) {
+            result.setResult(payment.<ResponseEntity<?>>map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build()));
+            return result;
+        }
+
+        // A failed completion answers with the payment as it is now rather than after the whole wait
+        completion.get().whenComplete((completed, failure) -> result.setResult(ResponseEntity.ok(
+                failure == null ? completed : paymentService.getPaymentDetails(transactionId).orElse(payment.get()))));
+        result.onTimeout(() -> result.setResult(ResponseEntity.ok(payment.get())));
+        return result;
+    }
 }
@@ -0,0 +1,169 @@
+package payment.service.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+
+// Amount of money as a count of the currency's minor units (cents for USD, yen for JPY, fils for BHD), so sums,
+// comparisons and fee calculations are long arithmetic instead of BigDecimal allocations. Every operation
+// is exact: results that do not fit in a long throw ArithmeticException, and results needing rounding
+// either take an explicit RoundingMode or throw.
+@Embeddable
+public record Money(@Column(nullable = false) long minorUnits,
+                    @Column(nullable = false, length = 3) Currency currency) implements Comparable<Money> {
+
+    // Currency of amounts given without one, which covers every payment stored before currencies were recorded
+    public static final Currency DEFAULT_CURRENCY = Currency.getInstance("USD");
+
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000};
+
+    public Money {
+        if (currency == null) {
+            throw new IllegalArgumentException("Currency is required");
+        }
+        if (currency.getDefaultFractionDigits() < 0 || currency.getDefaultFractionDigits() >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Unsupported currency " + currency);
+        }
+    }
+
+    public static Money ofMinor(long minorUnits, Currency currency) {
+        return new Money(minorUnits, currency);
+    }
+
+    // Exact: an amount with more decimals than the currency has throws
+    public static Money of(BigDecimal amount, Currency currency) {
+        return of(amount, currency, RoundingMode.UNNECESSARY);
+    }
+
+    public static Money of(BigDecimal amount, Currency currency, RoundingMode rounding) {
+        BigDecimal minor = amount.setScale(currency.getDefaultFractionDigits(), rounding);
+        try {
+            return new Money(minor.unscaledValue().longValueExact(), currency);
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Amount out of range: " + amount);
+        }
+    }
+
+    // Parses a plain decimal such as "200", "200.5" or "-0.25" straight into minor units; more decimals than
+    // the currency has, exponents and grouping separators are rejected
+    public static Money parse(String amount, Currency currency) {
+        int scale = currency.getDefaultFractionDigits();
+        int length = amount.length();
+        int index = 0;
+        boolean negative = false;
+        if (length > 0 && (amount.charAt(0) == '-' || amount.charAt(0) == '+')) {
+            negative = amount.charAt(0) == '-';
+            index++;
+        }
+
+        long minor = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; index < length; index++) {
+            char c = amount.charAt(index);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid amount: " + amount);
+            }
+            if (decimals >= 0 && ++decimals > scale) {
+                throw new ArithmeticException(currency + " amounts have at most " + scale + " decimals: " + amount);
+            }
+            // Accumulated negatively so Long.MIN_VALUE minor units still parse
+            minor = Math.subtractExact(Math.multiplyExact(minor, 10), c - '0');
+            digits++;
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Invalid amount: " + amount);
+        }
+        minor = Math.multiplyExact(minor, POWERS_OF_TEN[scale - Math.max(decimals, 0)]);
+        return new Money(negative ? minor : Math.negateExact(minor), currency);
+    }
+
+    public Money plus(Money other) {
+        checkCurrency(other);
+        return new Money(Math.addExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public Money minus(Money other) {
+        checkCurrency(other);
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public Money times(long factor) {
+        return new Money(Math.multiplyExact(minorUnits, factor), currency);
+    }
+
+    // Share given in basis points (1/100 of a percent), e.g. a 2.9% fee is 290
+    public Money percentage(long basisPoints, RoundingMode rounding) {
+        return new Money(divide(Math.multiplyExact(minorUnits, basisPoints), 10_000, rounding), currency);
+    }
+
+    public Money negate() {
+        return new Money(Math.negateExact(minorUnits), currency);
+    }
+
+    @JsonIgnore
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    @JsonIgnore
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    public boolean isGreaterThan(Money other) {
+        return compareTo(other) > 0;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        checkCurrency(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, currency.getDefaultFractionDigits());
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString() + " " + currency.getCurrencyCode();
+    }
+
+    private void checkCurrency(Money other) {
+        if (!currency.equals(other.currency)) {
+            throw new IllegalArgumentException("Currency mismatch: " + currency + " and " + other.currency);
+        }
+    }
+
+    // dividend / divisor for a positive divisor, rounded like BigDecimal.divide with the given mode
+    static long divide(long dividend, long divisor, RoundingMode rounding) {
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (remainder == 0) {
+            return quotient;
+        }
+        int sign = dividend < 0 ? -1 : 1;
+        // Compares |remainder| with half the divisor without overflowing
+        int half = Long.compare(Math.abs(remainder), divisor - Math.abs(remainder));
+        boolean awayFromZero = switch (rounding) {
+            case UP -> true;
+            case DOWN -> false;
+            case CEILING -> sign > 0;
+            case FLOOR -> sign < 0;
+            case HALF_UP -> half >= 0;
+            case HALF_DOWN -> half > 0;
+            case HALF_EVEN -> half > 0 || (half == 0 && (quotient & 1) != 0);
+            case UNNECESSARY -> throw new ArithmeticException("Rounding necessary");
+        };
+        return awayFromZero ? quotient + sign : quotient;
+    }
+}
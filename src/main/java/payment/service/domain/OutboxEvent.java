@@ -0,0 +1,147 @@
+package payment.service.domain;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// Payment event recorded in the same transaction as the Payment and published to Kafka later by PaymentEventRelay
+@Entity
+@Table(name = "payment_outbox")
+public class OutboxEvent {
+
+    public static final String TRACEPARENT = "traceparent";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payment_outbox_seq")
+    @SequenceGenerator(name = "payment_outbox_seq", sequenceName = "payment_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private String topic;
+
+    @Column(nullable = false)
+    private UUID transactionId;
+
+    @Column(nullable = false)
+    private UUID productId;
+
+    private int quantity;
+
+    // Null for events recorded before amounts were published
+    @Embedded
+    @AttributeOverride(name = "minorUnits", column = @Column(name = "amount_minor"))
+    @AttributeOverride(name = "currency", column = @Column(name = "currency", length = 3))
+    private Money amount;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    // W3C traceparent of the request that recorded the event, so the relay publishes it within that trace
+    @Column(length = 55)
+    private String traceparent;
+
+    // Set while a relay has the row claimed for publishing
+    private String claimedBy;
+
+    private Instant claimedAt;
+
+    public OutboxEvent(String topic, UUID transactionId, UUID productId, int quantity) {
+        this.topic = topic;
+        this.transactionId = transactionId;
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public OutboxEvent(String topic, UUID transactionId, UUID productId, int quantity, Money amount) {
+        this(topic, transactionId, productId, quantity);
+        this.amount = amount;
+    }
+
+    public OutboxEvent() {}
+
+    @PrePersist
+    public void prePersist() {
+        this.createdAt = Instant.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public UUID getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(UUID transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public Money getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Money amount) {
+        this.amount = amount;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getTraceparent() {
+        return traceparent;
+    }
+
+    public void setTraceparent(String traceparent) {
+        this.traceparent = traceparent;
+    }
+
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+
+    public Instant getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(Instant claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+}
@@ -1,17 +1,28 @@
 package payment.service.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.hibernate.annotations.UuidGenerator;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Currency;
 import java.util.UUID;
 
 @Entity
-@Table(name = "payment")
+// History queries filter on one column and seek on (timestamp, transaction_id), see PaymentRepositoryCustomImpl
+@Table(name = "payment", indexes = {
+        @Index(name = "idx_payment_customer_time", columnList = "customer_id, timestamp, transaction_id"),
+        @Index(name = "idx_payment_order_time", columnList = "order_id, timestamp, transaction_id"),
+        @Index(name = "idx_payment_status_time", columnList = "payment_status, timestamp, transaction_id"),
+        @Index(name = "idx_payment_time", columnList = "timestamp, transaction_id")
+})
 public class Payment {
 
+    // Time-ordered (UUIDv7) keys keep inserts append-only in the primary key index
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @GeneratedValue
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
     private UUID transactionId;
 
     @Column(nullable = false)
@@ -20,8 +31,11 @@ public class Payment {
     @Column(nullable = false)
     private UUID customerId;
 
-    @Column(nullable = false)
-    private BigDecimal totalAmount;
+    // Minor units and currency code; exposed in JSON as the decimal totalAmount plus currency
+    @Embedded
+    @AttributeOverride(name = "minorUnits", column = @Column(name = "total_amount_minor", nullable = false))
+    @AttributeOverride(name = "currency", column = @Column(name = "currency", nullable = false, length = 3))
+    private Money totalAmount;
 
     @Enumerated(EnumType.STRING)
     private PaymentStatus paymentStatus;
@@ -36,13 +50,18 @@ public class Payment {
         this.timestamp = LocalDateTime.now();
     }
 
-    public Payment(UUID orderId, UUID customerId, BigDecimal totalAmount, PaymentStatus paymentStatus) {
+    public Payment(UUID orderId, UUID customerId, Money totalAmount, PaymentStatus paymentStatus) {
         this.orderId = orderId;
         this.customerId = customerId;
         this.totalAmount = totalAmount;
         this.paymentStatus = paymentStatus;
     }
 
+    // In Money.DEFAULT_CURRENCY
+    public Payment(UUID orderId, UUID customerId, BigDecimal totalAmount, PaymentStatus paymentStatus) {
+        this(orderId, customerId, Money.of(totalAmount, Money.DEFAULT_CURRENCY), paymentStatus);
+    }
+
     public  Payment (){}
 
     public UUID getTransactionId() {
@@ -69,12 +88,31 @@ public class Payment {
         this.customerId = customerId;
     }
 
-    public BigDecimal getTotalAmount() {
+    @JsonIgnore
+    public Money getAmount() {
         return totalAmount;
     }
 
+    public void setAmount(Money amount) {
+        this.totalAmount = amount;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount == null ? null : totalAmount.toBigDecimal();
+    }
+
+    // Keeps the currency already set, Money.DEFAULT_CURRENCY otherwise
     public void setTotalAmount(BigDecimal totalAmount) {
-        this.totalAmount = totalAmount;
+        this.totalAmount = Money.of(totalAmount, this.totalAmount == null ? Money.DEFAULT_CURRENCY : this.totalAmount.currency());
+    }
+
+    public String getCurrency() {
+        return totalAmount == null ? null : totalAmount.currency().getCurrencyCode();
+    }
+
+    public void setCurrency(String currency) {
+        Currency code = Currency.getInstance(currency);
+        this.totalAmount = totalAmount == null ? Money.ofMinor(0, code) : Money.of(totalAmount.toBigDecimal(), code);
     }
 
     public PaymentStatus getPaymentStatus() {
@@ -0,0 +1,45 @@
+package payment.service.domain;
+
+import java.util.List;
+import java.util.UUID;
+
+// Message on the payment cache invalidation topic: payments whose cached details are out of date on other nodes
+public class PaymentCacheInvalidation {
+
+    private String origin;          // Node that changed the payments, which has already invalidated them itself
+    private long changedAt;         // Epoch millis of the oldest change in the message
+    private List<UUID> transactionIds;
+
+    public PaymentCacheInvalidation() {
+    }
+
+    public PaymentCacheInvalidation(String origin, long changedAt, List<UUID> transactionIds) {
+        this.origin = origin;
+        this.changedAt = changedAt;
+        this.transactionIds = transactionIds;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        this.origin = origin;
+    }
+
+    public long getChangedAt() {
+        return changedAt;
+    }
+
+    public void setChangedAt(long changedAt) {
+        this.changedAt = changedAt;
+    }
+
+    public List<UUID> getTransactionIds() {
+        return transactionIds;
+    }
+
+    public void setTransactionIds(List<UUID> transactionIds) {
+        this.transactionIds = transactionIds;
+    }
+}
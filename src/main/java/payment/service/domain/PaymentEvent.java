@@ -11,6 +11,7 @@ public class PaymentEvent implements Serializable {
     private Integer quantity;  // Quantity of the product purchased
     private UUID transactionId;
     private PaymentStatus paymentStatus;
+    private Money amount;      // Total of the payment, absent in events from older producers
 
     // Default constructor
     public PaymentEvent() {
@@ -56,6 +57,14 @@ public class PaymentEvent implements Serializable {
         this.paymentStatus = paymentStatus;
     }
 
+    public Money getAmount() {
+        return amount;
+    }
+
+    public void setAmount(Money amount) {
+        this.amount = amount;
+    }
+
     @Override
     public String toString() {
         return "PaymentEvent{" +
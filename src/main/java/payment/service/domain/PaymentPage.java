@@ -0,0 +1,38 @@
+package payment.service.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+// One page of payment history, newest first. nextCursor is passed back to get the following page and is
+// absent on the last one.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PaymentPage {
+
+    private List<Payment> payments;
+    private String nextCursor;
+
+    public PaymentPage() {
+    }
+
+    public PaymentPage(List<Payment> payments, String nextCursor) {
+        this.payments = payments;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Payment> getPayments() {
+        return payments;
+    }
+
+    public void setPayments(List<Payment> payments) {
+        this.payments = payments;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,66 @@
+package payment.service.domain;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Filter for payment history queries and exports; null fields are not filtered on.
+// from is inclusive and to exclusive.
+public class PaymentQuery {
+
+    private UUID customerId;
+    private UUID orderId;
+    private PaymentStatus paymentStatus;
+    private LocalDateTime from;
+    private LocalDateTime to;
+
+    public PaymentQuery() {
+    }
+
+    public PaymentQuery(UUID customerId, UUID orderId, PaymentStatus paymentStatus, LocalDateTime from, LocalDateTime to) {
+        this.customerId = customerId;
+        this.orderId = orderId;
+        this.paymentStatus = paymentStatus;
+        this.from = from;
+        this.to = to;
+    }
+
+    public UUID getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(UUID customerId) {
+        this.customerId = customerId;
+    }
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(UUID orderId) {
+        this.orderId = orderId;
+    }
+
+    public PaymentStatus getPaymentStatus() {
+        return paymentStatus;
+    }
+
+    public void setPaymentStatus(PaymentStatus paymentStatus) {
+        this.paymentStatus = paymentStatus;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDateTime from) {
+        this.from = from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDateTime to) {
+        this.to = to;
+    }
+}
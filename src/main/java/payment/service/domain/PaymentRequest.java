@@ -0,0 +1,85 @@
+package payment.service.domain;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.UUID;
+
+// One payment of a POST /payment/batch body, with the same fields as the POST /payment parameters
+public class PaymentRequest {
+
+    private UUID orderId;
+    private UUID productId;
+    private UUID customerId;
+    private int quantity;
+    private BigDecimal totalAmount;
+    private Currency currency;      // Money.DEFAULT_CURRENCY if absent
+    private PaymentMode paymentMode;
+
+    public PaymentRequest() {
+    }
+
+    public PaymentRequest(UUID orderId, UUID productId, UUID customerId, int quantity, BigDecimal totalAmount, PaymentMode paymentMode) {
+        this.orderId = orderId;
+        this.productId = productId;
+        this.customerId = customerId;
+        this.quantity = quantity;
+        this.totalAmount = totalAmount;
+        this.paymentMode = paymentMode;
+    }
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(UUID orderId) {
+        this.orderId = orderId;
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public UUID getCustomerId() {
+        return customerId;
+    }
+
+    public void setCustomerId(UUID customerId) {
+        this.customerId = customerId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(BigDecimal totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(Currency currency) {
+        this.currency = currency;
+    }
+
+    public PaymentMode getPaymentMode() {
+        return paymentMode;
+    }
+
+    public void setPaymentMode(PaymentMode paymentMode) {
+        this.paymentMode = paymentMode;
+    }
+}
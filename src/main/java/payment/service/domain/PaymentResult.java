@@ -0,0 +1,67 @@
+package payment.service.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.UUID;
+
+// Outcome of one item of a POST /payment/batch body, streamed back as a line of NDJSON
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PaymentResult {
+
+    private int index;
+    private UUID orderId;
+    private UUID transactionId;
+    private PaymentStatus paymentStatus;
+    private String error;
+
+    public PaymentResult() {
+    }
+
+    public PaymentResult(int index, UUID orderId, UUID transactionId, PaymentStatus paymentStatus, String error) {
+        this.index = index;
+        this.orderId = orderId;
+        this.transactionId = transactionId;
+        this.paymentStatus = paymentStatus;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public UUID getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(UUID orderId) {
+        this.orderId = orderId;
+    }
+
+    public UUID getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(UUID transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    public PaymentStatus getPaymentStatus() {
+        return paymentStatus;
+    }
+
+    public void setPaymentStatus(PaymentStatus paymentStatus) {
+        this.paymentStatus = paymentStatus;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
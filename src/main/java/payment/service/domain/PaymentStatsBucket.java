@@ -0,0 +1,130 @@
+package payment.service.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Currency;
+import java.util.Objects;
+
+// Payments created in one hour with one mode, status and currency, as kept in the payment_stats rollup and returned
+// by GET /payment/stats. The rows are written by PaymentStatsAggregator through JDBC.
+@Entity
+@Table(name = "payment_stats")
+@IdClass(PaymentStatsBucket.Key.class)
+public class PaymentStatsBucket {
+
+    // Start of the hour of Payment.timestamp
+    @Id
+    @Column(name = "bucket_hour")
+    private LocalDateTime hour;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    private PaymentMode paymentMode;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    private PaymentStatus paymentStatus;
+
+    @Id
+    @Column(length = 3)
+    private String currency;
+
+    @Column(nullable = false)
+    private long paymentCount;
+
+    // Exposed in JSON as the decimal totalAmount
+    @Column(nullable = false)
+    private long totalAmountMinor;
+
+    public PaymentStatsBucket() {}
+
+    public PaymentStatsBucket(LocalDateTime hour, PaymentMode paymentMode, PaymentStatus paymentStatus, String currency,
+                              long paymentCount, long totalAmountMinor) {
+        this.hour = hour;
+        this.paymentMode = paymentMode;
+        this.paymentStatus = paymentStatus;
+        this.currency = currency;
+        this.paymentCount = paymentCount;
+        this.totalAmountMinor = totalAmountMinor;
+    }
+
+    public LocalDateTime getHour() {
+        return hour;
+    }
+
+    public void setHour(LocalDateTime hour) {
+        this.hour = hour;
+    }
+
+    public PaymentMode getPaymentMode() {
+        return paymentMode;
+    }
+
+    public void setPaymentMode(PaymentMode paymentMode) {
+        this.paymentMode = paymentMode;
+    }
+
+    public PaymentStatus getPaymentStatus() {
+        return paymentStatus;
+    }
+
+    public void setPaymentStatus(PaymentStatus paymentStatus) {
+        this.paymentStatus = paymentStatus;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public long getPaymentCount() {
+        return paymentCount;
+    }
+
+    public void setPaymentCount(long paymentCount) {
+        this.paymentCount = paymentCount;
+    }
+
+    @JsonIgnore
+    public long getTotalAmountMinor() {
+        return totalAmountMinor;
+    }
+
+    public void setTotalAmountMinor(long totalAmountMinor) {
+        this.totalAmountMinor = totalAmountMinor;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return Money.ofMinor(totalAmountMinor, Currency.getInstance(currency)).toBigDecimal();
+    }
+
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private LocalDateTime hour;
+        private PaymentMode paymentMode;
+        private PaymentStatus paymentStatus;
+        private String currency;
+
+        public Key() {}
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && Objects.equals(hour, key.hour) && paymentMode == key.paymentMode
+                    && paymentStatus == key.paymentStatus && Objects.equals(currency, key.currency);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(hour, paymentMode, paymentStatus, currency);
+        }
+    }
+}
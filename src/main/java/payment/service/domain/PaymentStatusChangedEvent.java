@@ -0,0 +1,25 @@
+package payment.service.domain;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.UUID;
+
+// Published by PaymentService whenever stored payment statuses change; delivered after the change commits
+public class PaymentStatusChangedEvent {
+
+    private final Collection<UUID> transactionIds;
+    private final Instant changedAt;
+
+    public PaymentStatusChangedEvent(Collection<UUID> transactionIds) {
+        this.transactionIds = transactionIds;
+        this.changedAt = Instant.now();
+    }
+
+    public Collection<UUID> getTransactionIds() {
+        return transactionIds;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+}
@@ -0,0 +1,55 @@
+package payment.service.domain;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// Stock granted by the inventory service for a reservation; quantity may be lower than requested
+public class StockLease {
+
+    private UUID leaseId;
+    private UUID productId;
+    private int quantity;
+    private Instant expiresAt;
+
+    public StockLease() {
+    }
+
+    public StockLease(UUID leaseId, UUID productId, int quantity, Instant expiresAt) {
+        this.leaseId = leaseId;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.expiresAt = expiresAt;
+    }
+
+    public UUID getLeaseId() {
+        return leaseId;
+    }
+
+    public void setLeaseId(UUID leaseId) {
+        this.leaseId = leaseId;
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
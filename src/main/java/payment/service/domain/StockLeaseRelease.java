@@ -0,0 +1,44 @@
+package payment.service.domain;
+
+import java.util.UUID;
+
+// Returns the unused part of a lease to the inventory service
+public class StockLeaseRelease {
+
+    private UUID leaseId;
+    private UUID productId;
+    private int unusedQuantity;
+
+    public StockLeaseRelease() {
+    }
+
+    public StockLeaseRelease(UUID leaseId, UUID productId, int unusedQuantity) {
+        this.leaseId = leaseId;
+        this.productId = productId;
+        this.unusedQuantity = unusedQuantity;
+    }
+
+    public UUID getLeaseId() {
+        return leaseId;
+    }
+
+    public void setLeaseId(UUID leaseId) {
+        this.leaseId = leaseId;
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public int getUnusedQuantity() {
+        return unusedQuantity;
+    }
+
+    public void setUnusedQuantity(int unusedQuantity) {
+        this.unusedQuantity = unusedQuantity;
+    }
+}
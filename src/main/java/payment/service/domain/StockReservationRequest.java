@@ -0,0 +1,44 @@
+package payment.service.domain;
+
+import java.util.UUID;
+
+// Asks the inventory service to set aside stock for this node until the lease expires
+public class StockReservationRequest {
+
+    private UUID productId;
+    private int quantity;
+    private long ttlSeconds;
+
+    public StockReservationRequest() {
+    }
+
+    public StockReservationRequest(UUID productId, int quantity, long ttlSeconds) {
+        this.productId = productId;
+        this.quantity = quantity;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public UUID getProductId() {
+        return productId;
+    }
+
+    public void setProductId(UUID productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+}
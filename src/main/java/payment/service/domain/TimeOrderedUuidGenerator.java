@@ -0,0 +1,56 @@
+package payment.service.domain;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.uuid.UuidValueGenerator;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// UUIDv7 (RFC 9562) values: 48-bit Unix milliseconds, a 12-bit sequence for values within the same millisecond,
+// then 62 random bits. Values generated by one JVM are strictly increasing, so new rows land at the right-hand
+// edge of the primary key index instead of splitting random pages the way random v4 UUIDs do.
+public class TimeOrderedUuidGenerator implements UuidValueGenerator {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final int SEQUENCE_BITS = 12;
+
+    // Last issued (millis << SEQUENCE_BITS | sequence); a sequence overflow simply borrows the next millisecond
+    private static final AtomicLong LAST_TIMESTAMP = new AtomicLong();
+
+    @Override
+    public UUID generateUuid(SharedSessionContractImplementor session) {
+        return next();
+    }
+
+    public static UUID next() {
+        return uuid(nextTimestamp(LAST_TIMESTAMP, System.currentTimeMillis()));
+    }
+
+    static UUID uuid(long timestamp) {
+        long mostSigBits = ((timestamp >>> SEQUENCE_BITS) << 16)
+                | 0x7000L
+                | (timestamp & ((1L << SEQUENCE_BITS) - 1));
+        long leastSigBits = (RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    // Creation time embedded in a UUIDv7, or -1 for other versions
+    public static long timestampMillis(UUID uuid) {
+        return uuid.version() == 7 ? uuid.getMostSignificantBits() >>> 16 : -1;
+    }
+
+    static long nextTimestamp(AtomicLong lastTimestamp, long currentMillis) {
+        while (true) {
+            long last = lastTimestamp.get();
+            long candidate = currentMillis << SEQUENCE_BITS;
+            if (candidate <= last) {
+                candidate = last + 1;
+            }
+            if (lastTimestamp.compareAndSet(last, candidate)) {
+                return candidate;
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package payment.service.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentStatus;
+import payment.service.domain.TimeOrderedUuidGenerator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+// Plain JDBC write path. Single inserts are queued and written by one committer thread: whatever has queued up
+// while the previous commit was running goes out together, as multi-row INSERTs in one transaction, so concurrent
+// payments share a commit (and its log flush) instead of paying for one each. A group that fails is retried row by
+// row, so one bad payment does not fail the others. Every INSERT of a group reuses the same two prepared statements,
+// one of rows-per-statement rows and one single-row statement for the rest, sent as JDBC batches.
+// Status changes are narrow UPDATEs of payment_status alone, without reading the row first.
+@Repository
+@ConditionalOnProperty(name = "payment.store.engine", havingValue = "jdbc")
+public class JdbcPaymentStore implements PaymentStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(JdbcPaymentStore.class);
+
+    private static final String INSERT_SQL = "INSERT INTO payment (transaction_id, order_id, customer_id, total_amount_minor, currency, payment_status, payment_mode, timestamp) VALUES ";
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_STATUS_SQL = "UPDATE payment SET payment_status = ? WHERE transaction_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int rowsPerStatement;
+    private final int maxGroupSize;
+    private final String multiRowInsertSql;
+    private final String singleRowInsertSql;
+
+    private final BlockingQueue<PendingInsert> queue;
+    private final Thread committer;
+    private volatile boolean running = true;
+
+    private final DistributionSummary groupSizeSummary;
+    private final Timer commitTimer;
+
+    public JdbcPaymentStore(JdbcTemplate jdbcTemplate,
+                            TransactionTemplate transactionTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${payment.store.jdbc.rows-per-statement:32}") int rowsPerStatement,
+                            @Value("${payment.store.jdbc.max-group-size:512}") int maxGroupSize,
+                            @Value("${payment.store.jdbc.queue-capacity:10000}") int queueCapacity) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.rowsPerStatement = rowsPerStatement;
+        this.maxGroupSize = maxGroupSize;
+        this.multiRowInsertSql = INSERT_SQL + String.join(", ", Collections.nCopies(rowsPerStatement, ROW_PLACEHOLDERS));
+        this.singleRowInsertSql = INSERT_SQL + ROW_PLACEHOLDERS;
+        // Bounded: when the database falls behind, inserting threads block instead of piling up payments in memory
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.groupSizeSummary = DistributionSummary.builder("payment.store.group.size")
+                .description("Payments written per group commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.commitTimer = Timer.builder("payment.store.group.commit")
+                .description("Time to write and commit one group of payments")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("payment.store.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+
+        this.committer = new Thread(this::commitLoop, "payment-store-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    @Override
+    public Payment insert(Payment payment) {
+        assignIdentity(payment);
+        PendingInsert pending = new PendingInsert(payment);
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing payment " + payment.getTransactionId(), e);
+        }
+        try {
+            pending.result.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        return payment;
+    }
+
+    @Override
+    public List<Payment> insertAll(List<Payment> payments) {
+        payments.forEach(JdbcPaymentStore::assignIdentity);
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            write(connection, payments);
+            return null;
+        });
+        return payments;
+    }
+
+    @Override
+    public Payment updateStatus(Payment payment) {
+        updateStatus(payment.getTransactionId(), payment.getPaymentStatus());
+        return payment;
+    }
+
+    @Override
+    public boolean updateStatus(UUID transactionId, PaymentStatus status) {
+        return jdbcTemplate.update(UPDATE_STATUS_SQL, status == null ? null : status.name(), transactionId) > 0;
+    }
+
+    private void commitLoop() {
+        List<PendingInsert> group = new ArrayList<>(maxGroupSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingInsert first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                queue.drainTo(group, maxGroupSize - 1);
+                commit(group);
+            } catch (InterruptedException e) {
+                // Only on shutdown; the loop drains what is left
+                running = false;
+            } catch (RuntimeException e) {
+                LOGGER.error("Payment group commit failed: {}", e.getMessage());
+            } finally {
+                group.forEach(pending -> pending.result.completeExceptionally(new IllegalStateException("Payment was not written")));
+                group.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingInsert> group) {
+        groupSizeSummary.record(group.size());
+        try {
+            commitTimer.record(() -> transactionTemplate.executeWithoutResult(status -> jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                write(connection, group.stream().map(pending -> pending.payment).toList());
+                return null;
+            })));
+            group.forEach(pending -> pending.result.complete(null));
+        } catch (RuntimeException e) {
+            if (group.size() == 1) {
+                group.get(0).result.completeExceptionally(e);
+                return;
+            }
+            LOGGER.warn("Group commit of {} payments failed, retrying them one by one: {}", group.size(), e.getMessage());
+            for (PendingInsert pending : group) {
+                commit(List.of(pending));
+            }
+        }
+    }
+
+    private void write(Connection connection, List<Payment> payments) throws SQLException {
+        int multiRowRows = payments.size() / rowsPerStatement * rowsPerStatement;
+        if (multiRowRows > 0) {
+            try (PreparedStatement statement = connection.prepareStatement(multiRowInsertSql)) {
+                for (int from = 0; from < multiRowRows; from += rowsPerStatement) {
+                    int index = 1;
+                    for (Payment payment : payments.subList(from, from + rowsPerStatement)) {
+                        index = bind(statement, index, payment);
+                    }
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+        if (multiRowRows < payments.size()) {
+            try (PreparedStatement statement = connection.prepareStatement(singleRowInsertSql)) {
+                for (Payment payment : payments.subList(multiRowRows, payments.size())) {
+                    bind(statement, 1, payment);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+
+    private static int bind(PreparedStatement statement, int index, Payment payment) throws SQLException {
+        statement.setObject(index++, payment.getTransactionId());
+        statement.setObject(index++, payment.getOrderId());
+        statement.setObject(index++, payment.getCustomerId());
+        statement.setLong(index++, payment.getAmount().minorUnits());
+        statement.setString(index++, payment.getAmount().currency().getCurrencyCode());
+        statement.setString(index++, payment.getPaymentStatus() == null ? null : payment.getPaymentStatus().name());
+        statement.setString(index++, payment.getPaymentMode() == null ? null : payment.getPaymentMode().name());
+        statement.setObject(index++, payment.getTimestamp());
+        return index;
+    }
+
+    // What Hibernate would set on persist: the UUIDv7 key and Payment.prePersist's timestamp
+    private static void assignIdentity(Payment payment) {
+        if (payment.getTransactionId() == null) {
+            payment.setTransactionId(TimeOrderedUuidGenerator.next());
+        }
+        payment.setTimestamp(LocalDateTime.now());
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Writes whatever is still queued so no caller is left hanging
+        running = false;
+        committer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private static final class PendingInsert {
+
+        private final Payment payment;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        private PendingInsert(Payment payment) {
+            this.payment = payment;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package payment.service.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentStatus;
+
+import java.util.List;
+import java.util.UUID;
+
+// Every write goes through Hibernate: persist for new payments, merge (a SELECT, then an UPDATE of every column)
+// for status changes
+@Repository
+@ConditionalOnProperty(name = "payment.store.engine", havingValue = "jpa", matchIfMissing = true)
+public class JpaPaymentStore implements PaymentStore {
+
+    private final PaymentRepository paymentRepository;
+
+    public JpaPaymentStore(PaymentRepository paymentRepository) {
+        this.paymentRepository = paymentRepository;
+    }
+
+    @Override
+    public Payment insert(Payment payment) {
+        return paymentRepository.save(payment);
+    }
+
+    @Override
+    public List<Payment> insertAll(List<Payment> payments) {
+        return paymentRepository.saveAll(payments);
+    }
+
+    @Override
+    public Payment updateStatus(Payment payment) {
+        return paymentRepository.save(payment);
+    }
+
+    @Override
+    public boolean updateStatus(UUID transactionId, PaymentStatus status) {
+        return paymentRepository.findById(transactionId)
+                .map(payment -> {
+                    payment.setPaymentStatus(status);
+                    paymentRepository.save(payment);
+                    return true;
+                })
+                .orElse(false);
+    }
+}
@@ -0,0 +1,71 @@
+package payment.service.repository;
+
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import payment.service.domain.Money;
+
+import java.math.BigDecimal;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.Locale;
+
+// Moves the amounts of a payment table created before amounts were Money from the total_amount DECIMAL column to
+// total_amount_minor and currency. ddl-auto update only adds columns, so without this the old NOT NULL column would
+// fail every insert. Runs before the EntityManagerFactory, so Hibernate finds the table already migrated, and does
+// nothing on new or migrated databases. Amounts of that time were all in Money.DEFAULT_CURRENCY.
+@Component(PaymentAmountMigration.BEAN_NAME)
+public class PaymentAmountMigration {
+
+    static final String BEAN_NAME = "paymentAmountMigration";
+
+    private static final Logger LOGGER = LogManager.getLogger(PaymentAmountMigration.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PaymentAmountMigration(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Bean
+    static EntityManagerFactoryDependsOnPostProcessor paymentAmountMigrationDependency() {
+        return new EntityManagerFactoryDependsOnPostProcessor(BEAN_NAME);
+    }
+
+    // Each step can be repeated, so a migration interrupted half way is finished on the next start
+    @PostConstruct
+    public void migrate() {
+        if (!hasColumn("payment", "total_amount")) {
+            return;
+        }
+        if (!hasColumn("payment", "total_amount_minor")) {
+            jdbcTemplate.execute("ALTER TABLE payment ADD COLUMN total_amount_minor BIGINT");
+        }
+        if (!hasColumn("payment", "currency")) {
+            jdbcTemplate.execute("ALTER TABLE payment ADD COLUMN currency VARCHAR(3)");
+        }
+        long minorPerUnit = BigDecimal.TEN.pow(Money.DEFAULT_CURRENCY.getDefaultFractionDigits()).longValueExact();
+        int migrated = jdbcTemplate.update("UPDATE payment SET total_amount_minor = CAST(ROUND(total_amount * ?, 0) AS BIGINT), currency = ? "
+                + "WHERE total_amount_minor IS NULL", minorPerUnit, Money.DEFAULT_CURRENCY.getCurrencyCode());
+        jdbcTemplate.execute("ALTER TABLE payment ALTER COLUMN total_amount_minor SET NOT NULL");
+        jdbcTemplate.execute("ALTER TABLE payment ALTER COLUMN currency SET NOT NULL");
+        jdbcTemplate.execute("ALTER TABLE payment DROP COLUMN total_amount");
+        LOGGER.info("Moved the amounts of {} payments to total_amount_minor and currency", migrated);
+    }
+
+    private boolean hasColumn(String table, String column) {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            boolean upperCase = metaData.storesUpperCaseIdentifiers();
+            try (ResultSet columns = metaData.getColumns(connection.getCatalog(), connection.getSchema(),
+                    upperCase ? table.toUpperCase(Locale.ROOT) : table, upperCase ? column.toUpperCase(Locale.ROOT) : column)) {
+                return columns.next();
+            }
+        }));
+    }
+}
@@ -0,0 +1,470 @@
+package payment.service.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentQuery;
+import payment.service.domain.PaymentStatus;
+import payment.service.domain.TimeOrderedUuidGenerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Cold tier of payment storage. Closed time partitions (months or days of Payment.timestamp) are moved out of the
+// payment table by PaymentArchiver into one gzip-compressed columnar file each, rows in history order
+// (timestamp, transactionId). Lookups are pruned by time: by the UUIDv7 creation time for a transactionId, by the
+// from/to range and the keyset cursor for history queries, so only the partitions that can hold a match are read.
+// Decoded partitions are kept in memory, a few at a time.
+@Component
+public class PaymentArchive {
+
+    private static final Logger LOGGER = LogManager.getLogger(PaymentArchive.class);
+
+    private static final int MAGIC = 0x50415943;  // "PAYC"
+    private static final int VERSION = 1;
+    private static final String PREFIX = "payments-";
+    private static final String SUFFIX = ".col.gz";
+
+    // A UUIDv7 is generated just before the payment's timestamp is set, so both fall in the same partition except
+    // right at a boundary, or if the clock was adjusted in between
+    private static final Duration ID_TIME_MARGIN = Duration.ofMinutes(1);
+
+    // Unsigned, as UUIDs are ordered by the database
+    static final Comparator<UUID> UUID_ORDER = (a, b) -> {
+        int high = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return high != 0 ? high : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    };
+
+    private static final Comparator<Payment> HISTORY_ORDER = Comparator.comparing(Payment::getTimestamp)
+            .thenComparing(Payment::getTransactionId, UUID_ORDER);
+
+    private final Path directory;
+    private final ChronoUnit partitionUnit;
+
+    // Partition start -> file
+    private final NavigableMap<LocalDateTime, Path> partitions = new ConcurrentSkipListMap<>();
+    private final Cache<Path, Partition> loaded;
+
+    // Writers merge with the current file, so they take turns. A lock rather than the monitor, as they hold it over
+    // file I/O and a virtual thread blocked in a synchronized block would pin its carrier thread.
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public PaymentArchive(@Value("${payment.archive.directory:payment-archive}") Path directory,
+                          @Value("${payment.archive.partition:MONTHS}") ChronoUnit partitionUnit,
+                          @Value("${payment.archive.cached-partitions:4}") int cachedPartitions) throws IOException {
+        if (partitionUnit != ChronoUnit.MONTHS && partitionUnit != ChronoUnit.DAYS) {
+            throw new IllegalArgumentException("payment.archive.partition must be MONTHS or DAYS, not " + partitionUnit);
+        }
+        this.directory = directory;
+        this.partitionUnit = partitionUnit;
+        this.loaded = Caffeine.newBuilder().maximumSize(cachedPartitions).build();
+
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+                for (Path file : files) {
+                    partitions.put(parseStart(file.getFileName().toString()), file);
+                }
+            }
+            LOGGER.info("Payment archive {} holds {} partitions", directory.toAbsolutePath(), partitions.size());
+        }
+    }
+
+    public LocalDateTime partitionStart(LocalDateTime time) {
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        return partitionUnit == ChronoUnit.MONTHS ? day.withDayOfMonth(1) : day;
+    }
+
+    public LocalDateTime nextPartition(LocalDateTime start) {
+        return start.plus(1, partitionUnit);
+    }
+
+    // Everything before it is archived, nothing after; null while the archive is empty
+    public LocalDateTime getBoundary() {
+        Map.Entry<LocalDateTime, Path> newest = partitions.lastEntry();
+        return newest == null ? null : nextPartition(newest.getKey());
+    }
+
+    public Optional<Payment> findById(UUID transactionId) {
+        long millis = TimeOrderedUuidGenerator.timestampMillis(transactionId);
+        Collection<Path> candidates;
+        if (millis >= 0) {
+            LocalDateTime created = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+            candidates = partitions.subMap(partitionStart(created.minus(ID_TIME_MARGIN)), true,
+                    partitionStart(created.plus(ID_TIME_MARGIN)), true).values();
+        } else {
+            // No time in other UUID versions, newest first as those are looked up most
+            candidates = partitions.descendingMap().values();
+        }
+        for (Path file : candidates) {
+            Partition partition = load(file);
+            int row = partition.find(transactionId);
+            if (row >= 0) {
+                return Optional.of(partition.payment(row));
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Same contract as PaymentRepositoryCustom.findPayments
+    public List<Payment> findPayments(PaymentQuery query, LocalDateTime beforeTimestamp, UUID beforeTransactionId, int limit) {
+        List<Payment> payments = new ArrayList<>();
+        for (Path file : candidates(query, beforeTimestamp).descendingMap().values()) {
+            Partition partition = load(file);
+            for (int row = partition.size() - 1; row >= 0 && payments.size() < limit; row--) {
+                if (partition.matches(row, query) && (beforeTimestamp == null || partition.isBefore(row, beforeTimestamp, beforeTransactionId))) {
+                    payments.add(partition.payment(row));
+                }
+            }
+            if (payments.size() >= limit) {
+                break;
+            }
+        }
+        return payments;
+    }
+
+    // Same contract as PaymentRepositoryCustom.forEachPayment
+    public void forEachPayment(PaymentQuery query, Consumer<Payment> action) {
+        for (Path file : candidates(query, null).values()) {
+            Partition partition = load(file);
+            for (int row = 0; row < partition.size(); row++) {
+                if (partition.matches(row, query)) {
+                    action.accept(partition.payment(row));
+                }
+            }
+        }
+    }
+
+    // Writes the partition starting at start, merged with the payments already archived for it. The file is
+    // replaced atomically, so readers see either the old or the new one.
+    public void write(LocalDateTime start, List<Payment> payments) throws IOException {
+        if (!start.equals(partitionStart(start))) {
+            throw new IllegalArgumentException(start + " is not the start of a partition");
+        }
+        writeLock.lock();
+        try {
+            merge(start, payments);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void merge(LocalDateTime start, List<Payment> payments) throws IOException {
+        Path file = directory.resolve(fileName(start));
+        List<Payment> rows = new ArrayList<>(payments);
+        if (Files.exists(file)) {
+            Set<UUID> replaced = new HashSet<>();
+            payments.forEach(payment -> replaced.add(payment.getTransactionId()));
+            Partition existing = read(file);
+            for (int row = 0; row < existing.size(); row++) {
+                if (!replaced.contains(existing.transactionId(row))) {
+                    rows.add(existing.payment(row));
+                }
+            }
+        }
+        rows.sort(HISTORY_ORDER);
+
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, fileName(start), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp), 1 << 16), 1 << 16))) {
+                encode(out, rows);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        loaded.invalidate(file);
+        partitions.put(start, file);
+    }
+
+    // Partition pruning: only partitions overlapping [from, to) that start before the cursor
+    private NavigableMap<LocalDateTime, Path> candidates(PaymentQuery query, LocalDateTime beforeTimestamp) {
+        NavigableMap<LocalDateTime, Path> candidates = partitions;
+        if (query.getFrom() != null) {
+            candidates = candidates.tailMap(partitionStart(query.getFrom()), true);
+        }
+        if (query.getTo() != null) {
+            candidates = candidates.headMap(query.getTo(), false);
+        }
+        if (beforeTimestamp != null) {
+            candidates = candidates.headMap(beforeTimestamp, true);
+        }
+        return candidates;
+    }
+
+    private Partition load(Path file) {
+        return loaded.get(file, path -> {
+            try {
+                return read(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read payment archive " + path, e);
+            }
+        });
+    }
+
+    private String fileName(LocalDateTime start) {
+        String name = partitionUnit == ChronoUnit.MONTHS ? YearMonth.from(start).toString() : start.toLocalDate().toString();
+        return PREFIX + name + SUFFIX;
+    }
+
+    private static LocalDateTime parseStart(String fileName) {
+        String name = fileName.substring(PREFIX.length(), fileName.length() - SUFFIX.length());
+        return name.length() == 7 ? YearMonth.parse(name).atDay(1).atStartOfDay() : LocalDate.parse(name).atStartOfDay();
+    }
+
+    // Column by column, so similar values sit next to each other for the compressor: the halves of the three UUIDs,
+    // amounts, dictionary-coded currency, status and mode, and timestamps as deltas in microseconds
+    private static void encode(DataOutputStream out, List<Payment> rows) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(rows.size());
+        writeUuids(out, rows, Payment::getTransactionId);
+        writeUuids(out, rows, Payment::getOrderId);
+        writeUuids(out, rows, Payment::getCustomerId);
+        for (Payment payment : rows) {
+            writeVarLong(out, payment.getAmount().minorUnits());
+        }
+        writeDictionary(out, rows, Payment::getCurrency);
+        writeDictionary(out, rows, payment -> payment.getPaymentStatus() == null ? null : payment.getPaymentStatus().name());
+        writeDictionary(out, rows, payment -> payment.getPaymentMode() == null ? null : payment.getPaymentMode().name());
+        long previous = 0;
+        for (Payment payment : rows) {
+            long micros = toMicros(payment.getTimestamp());
+            writeVarLong(out, micros - previous);
+            previous = micros;
+        }
+    }
+
+    private static Partition read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), 1 << 16), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException(file + " is not a payment archive of version " + VERSION);
+            }
+            int size = in.readInt();
+            Partition partition = new Partition(size);
+            readLongs(in, partition.transactionIds);
+            readLongs(in, partition.orderIds);
+            readLongs(in, partition.customerIds);
+            for (int row = 0; row < size; row++) {
+                partition.amounts[row] = readVarLong(in);
+            }
+            partition.currencies = readDictionary(in, partition.currencyCodes);
+            partition.statuses = readDictionary(in, partition.statusCodes);
+            partition.modes = readDictionary(in, partition.modeCodes);
+            long micros = 0;
+            for (int row = 0; row < size; row++) {
+                micros += readVarLong(in);
+                partition.timestamps[row] = micros;
+            }
+            partition.indexById();
+            return partition;
+        }
+    }
+
+    private static void writeUuids(DataOutputStream out, List<Payment> rows, Function<Payment, UUID> column) throws IOException {
+        for (Payment payment : rows) {
+            out.writeLong(column.apply(payment).getMostSignificantBits());
+        }
+        for (Payment payment : rows) {
+            out.writeLong(column.apply(payment).getLeastSignificantBits());
+        }
+    }
+
+    private static void readLongs(DataInputStream in, long[] uuids) throws IOException {
+        int size = uuids.length / 2;
+        for (int row = 0; row < size; row++) {
+            uuids[2 * row] = in.readLong();
+        }
+        for (int row = 0; row < size; row++) {
+            uuids[2 * row + 1] = in.readLong();
+        }
+    }
+
+    // Code 0 is null, the others index the values written up front
+    private static void writeDictionary(DataOutputStream out, List<Payment> rows, Function<Payment, String> column) throws IOException {
+        Map<String, Integer> codes = new LinkedHashMap<>();
+        for (Payment payment : rows) {
+            String value = column.apply(payment);
+            if (value != null) {
+                codes.putIfAbsent(value, codes.size() + 1);
+            }
+        }
+        out.writeByte(codes.size());
+        for (String value : codes.keySet()) {
+            out.writeUTF(value);
+        }
+        for (Payment payment : rows) {
+            String value = column.apply(payment);
+            out.writeByte(value == null ? 0 : codes.get(value));
+        }
+    }
+
+    private static String[] readDictionary(DataInputStream in, byte[] codes) throws IOException {
+        String[] values = new String[in.readUnsignedByte() + 1];
+        for (int code = 1; code < values.length; code++) {
+            values[code] = in.readUTF();
+        }
+        in.readFully(codes);
+        return values;
+    }
+
+    // Zig-zag varint: small deltas and amounts take one or two bytes before compression
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.writeByte((int) zigZag);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    // One decoded file: columns in history order, plus the rows sorted by transactionId for lookups
+    private static final class Partition {
+
+        private final long[] transactionIds;
+        private final long[] orderIds;
+        private final long[] customerIds;
+        private final long[] amounts;
+        private final byte[] currencyCodes;
+        private final byte[] statusCodes;
+        private final byte[] modeCodes;
+        private final long[] timestamps;
+        private String[] currencies;
+        private String[] statuses;
+        private String[] modes;
+        private int[] byTransactionId;
+
+        private Partition(int size) {
+            transactionIds = new long[2 * size];
+            orderIds = new long[2 * size];
+            customerIds = new long[2 * size];
+            amounts = new long[size];
+            currencyCodes = new byte[size];
+            statusCodes = new byte[size];
+            modeCodes = new byte[size];
+            timestamps = new long[size];
+        }
+
+        private int size() {
+            return amounts.length;
+        }
+
+        private void indexById() {
+            byTransactionId = IntStream.range(0, size()).boxed()
+                    .sorted((a, b) -> UUID_ORDER.compare(transactionId(a), transactionId(b)))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+
+        private int find(UUID transactionId) {
+            int low = 0;
+            int high = byTransactionId.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int row = byTransactionId[middle];
+                int comparison = UUID_ORDER.compare(transactionId(row), transactionId);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return row;
+                }
+            }
+            return -1;
+        }
+
+        private UUID transactionId(int row) {
+            return new UUID(transactionIds[2 * row], transactionIds[2 * row + 1]);
+        }
+
+        private boolean matches(int row, PaymentQuery query) {
+            return (query.getCustomerId() == null || is(customerIds, row, query.getCustomerId()))
+                    && (query.getOrderId() == null || is(orderIds, row, query.getOrderId()))
+                    && (query.getPaymentStatus() == null || query.getPaymentStatus().name().equals(statuses[statusCodes[row] & 0xFF]))
+                    && (query.getFrom() == null || timestamps[row] >= toMicros(query.getFrom()))
+                    && (query.getTo() == null || timestamps[row] < toMicros(query.getTo()));
+        }
+
+        private boolean isBefore(int row, LocalDateTime timestamp, UUID transactionId) {
+            long micros = toMicros(timestamp);
+            return timestamps[row] < micros || (timestamps[row] == micros && UUID_ORDER.compare(transactionId(row), transactionId) < 0);
+        }
+
+        private Payment payment(int row) {
+            Payment payment = new Payment(new UUID(orderIds[2 * row], orderIds[2 * row + 1]),
+                    new UUID(customerIds[2 * row], customerIds[2 * row + 1]),
+                    Money.ofMinor(amounts[row], Currency.getInstance(currencies[currencyCodes[row] & 0xFF])),
+                    statusCodes[row] == 0 ? null : PaymentStatus.valueOf(statuses[statusCodes[row] & 0xFF]));
+            payment.setTransactionId(transactionId(row));
+            payment.setPaymentMode(modeCodes[row] == 0 ? null : PaymentMode.valueOf(modes[modeCodes[row] & 0xFF]));
+            payment.setTimestamp(fromMicros(timestamps[row]));
+            return payment;
+        }
+
+        private static boolean is(long[] uuids, int row, UUID value) {
+            return uuids[2 * row] == value.getMostSignificantBits() && uuids[2 * row + 1] == value.getLeastSignificantBits();
+        }
+    }
+}
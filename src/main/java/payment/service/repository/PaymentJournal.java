@@ -0,0 +1,486 @@
+package payment.service.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentStatus;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Append-only audit journal of every state change of a payment, on memory-mapped segment files of fixed-size
+// binary entries. Entries are chained with HMAC-SHA256 under payment.journal.key: each entry's MAC covers the previous
+// entry's MAC as well, so changing, removing or reordering an entry breaks the chain from there on, and without the
+// key the chain cannot be recomputed to hide that. A segment's header carries the chain value it starts from, which
+// is also logged when the segment starts, so the logs keep the heads a journal can be checked against.
+// An append is a copy into the mapping, visible to the OS (and surviving a crash of the process) as soon as it
+// returns; the sync thread forces everything appended since its last run to disk at once every sync-interval, so a
+// machine crash loses at most that much. The sync thread also creates and maps the next segment ahead of time, so an
+// append that fills a segment only swaps it for the next one, and the full segment is forced by the next sync.
+// PaymentJournalScanner reads and verifies the files.
+@Component
+public class PaymentJournal {
+
+    private static final Logger LOGGER = LogManager.getLogger(PaymentJournal.class);
+
+    public enum EntryType { CREATED, PROCESSED, STATUS_UPDATED }
+
+    static final int MAGIC = 0x5041594A; // "PAYJ"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    static final int ENTRY_SIZE = 128;
+    static final String MAC_ALGORITHM = "HmacSHA256";
+    static final int MAC_SIZE = 32;
+
+    // Header: magic, version, entry size, sequence of the first entry, chain value before the first entry
+    static final int HEADER_BASE_SEQUENCE = 16;
+    static final int HEADER_CHAIN = 24;
+
+    // Entry: the MACed part, then the MAC. Type, status and mode codes are ordinal + 1 with 0 for none (type 0 marks
+    // an unused slot), so new enum constants must be added at the end. Absent ids are zero.
+    static final int TYPE = 0;
+    static final int STATUS = 1;
+    static final int MODE = 2;
+    static final int SEQUENCE = 8;
+    static final int TIME_MICROS = 16;
+    static final int TRANSACTION_ID = 24;
+    static final int ORDER_ID = 40;
+    static final int CUSTOMER_ID = 56;
+    static final int AMOUNT_MINOR = 72;
+    static final int CURRENCY = 80;
+    static final int MAC = 96;
+
+    // Segments are created under a temporary name and renamed once they are started
+    private static final String PREPARED_SUFFIX = ".next";
+    private static final int PAGE_SIZE = 4096;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final int entriesPerSegment;
+    private final Duration syncInterval;
+    private final Timer syncTimer;
+    private final DistributionSummary syncEntriesSummary;
+
+    // Guarded by this
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+    private final Mac mac;
+    private final byte[] chain = new byte[MAC_SIZE];
+    private MappedByteBuffer segment;
+    private long segmentBase;
+    private int position;
+    private int syncedPosition;
+    private long nextSequence;
+    // The segment filled since the last sync, forced from retiredFrom to its end by the next one
+    private MappedByteBuffer retired;
+    private int retiredFrom;
+    private Prepared next;
+
+    private volatile long syncedSequence;
+    private final Thread syncer;
+    private volatile boolean running = true;
+
+    private record Prepared(Path path, MappedByteBuffer buffer, long baseSequence) {
+    }
+
+    public PaymentJournal(MeterRegistry meterRegistry,
+                          @Value("${payment.journal.enabled:true}") boolean enabled,
+                          @Value("${payment.journal.directory:payment-journal}") Path directory,
+                          @Value("${payment.journal.key:}") String key,
+                          @Value("${payment.journal.segment-size:64MB}") DataSize segmentSize,
+                          @Value("${payment.journal.sync-interval:PT0.01S}") Duration syncInterval) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.entriesPerSegment = (int) Math.max(1, (Math.min(segmentSize.toBytes(), Integer.MAX_VALUE) - HEADER_SIZE) / ENTRY_SIZE);
+        this.segmentSize = HEADER_SIZE + entriesPerSegment * ENTRY_SIZE;
+        this.syncInterval = syncInterval;
+        this.syncTimer = Timer.builder("payment.journal.sync")
+                .description("Time to force the journal entries appended since the last sync to disk")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.syncEntriesSummary = DistributionSummary.builder("payment.journal.sync.entries")
+                .description("Journal entries made durable per sync")
+                .register(meterRegistry);
+        if (!enabled) {
+            this.mac = null;
+            this.syncer = null;
+            return;
+        }
+        if (key == null || key.isEmpty()) {
+            throw new IllegalStateException("payment.journal.key (PAYMENT_JOURNAL_KEY) is required for the payment journal");
+        }
+        this.mac = newMac(key);
+        try {
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open payment journal in " + directory, e);
+        }
+        this.syncer = new Thread(this::syncLoop, "payment-journal-sync");
+        this.syncer.setDaemon(true);
+        this.syncer.start();
+    }
+
+    // Returns the entry's sequence, or -1 when the journal is disabled
+    public long append(EntryType type, Payment payment) {
+        Money amount = payment.getAmount();
+        return append(type, payment.getTransactionId(), payment.getOrderId(), payment.getCustomerId(), payment.getPaymentStatus(),
+                payment.getPaymentMode() == null ? 0 : payment.getPaymentMode().ordinal() + 1,
+                amount == null ? 0 : amount.minorUnits(), amount == null ? null : amount.currency().getCurrencyCode());
+    }
+
+    public long append(EntryType type, UUID transactionId, PaymentStatus status) {
+        return append(type, transactionId, null, null, status, 0, 0, null);
+    }
+
+    private synchronized long append(EntryType type, UUID transactionId, UUID orderId, UUID customerId, PaymentStatus status,
+                                     int mode, long amountMinor, String currency) {
+        if (!enabled) {
+            return -1;
+        }
+        if (position + ENTRY_SIZE > segmentSize) {
+            roll();
+        }
+        Instant now = Instant.now();
+        long sequence = nextSequence;
+        entry.clear();
+        entry.put(TYPE, (byte) (type.ordinal() + 1))
+                .put(STATUS, (byte) (status == null ? 0 : status.ordinal() + 1))
+                .put(MODE, (byte) mode)
+                .putLong(SEQUENCE, sequence)
+                .putLong(TIME_MICROS, now.getEpochSecond() * 1_000_000 + now.getNano() / 1000);
+        putUuid(TRANSACTION_ID, transactionId);
+        putUuid(ORDER_ID, orderId);
+        putUuid(CUSTOMER_ID, customerId);
+        entry.putLong(AMOUNT_MINOR, amountMinor);
+        for (int i = 0; i < 3; i++) {
+            entry.put(CURRENCY + i, currency == null ? 0 : (byte) currency.charAt(i));
+        }
+        mac(mac, chain, entry, 0, chain);
+        entry.put(MAC, chain);
+        segment.put(position, entry.array());
+        position += ENTRY_SIZE;
+        nextSequence++;
+        return sequence;
+    }
+
+    // Forces everything appended so far to disk; done by the sync thread every sync-interval
+    public void sync() {
+        MappedByteBuffer full;
+        int fullFrom;
+        MappedByteBuffer synced;
+        int from;
+        int to;
+        long lastSequence;
+        synchronized (this) {
+            if (!enabled || (retired == null && position == syncedPosition)) {
+                return;
+            }
+            full = retired;
+            fullFrom = retiredFrom;
+            synced = segment;
+            from = syncedPosition;
+            to = position;
+            lastSequence = nextSequence - 1;
+        }
+        long start = System.nanoTime();
+        int entries = 0;
+        if (full != null) {
+            full.force(fullFrom, segmentSize - fullFrom);
+            entries += (segmentSize - Math.max(fullFrom, HEADER_SIZE)) / ENTRY_SIZE;
+        }
+        if (to > from) {
+            synced.force(from, to - from);
+            entries += (to - Math.max(from, HEADER_SIZE)) / ENTRY_SIZE;
+        }
+        syncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        syncEntriesSummary.record(entries);
+        synchronized (this) {
+            if (retired == full) {
+                retired = null;
+            }
+            if (segment == synced) {
+                syncedPosition = Math.max(syncedPosition, to);
+            }
+            syncedSequence = Math.max(syncedSequence, lastSequence);
+        }
+    }
+
+    // Creates and maps the segment after the current one, off the append path; done by the sync thread
+    void prepareNextSegment() {
+        long baseSequence;
+        synchronized (this) {
+            if (!enabled || next != null) {
+                return;
+            }
+            baseSequence = segmentBase + entriesPerSegment;
+        }
+        Prepared prepared;
+        try {
+            prepared = prepare(baseSequence);
+        } catch (IOException e) {
+            LOGGER.error("Cannot prepare payment journal segment {}: {}", baseSequence, e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            if (next == null && segmentBase + entriesPerSegment == baseSequence) {
+                next = prepared;
+                return;
+            }
+        }
+        discard(prepared);
+    }
+
+    // Entries up to this sequence are on disk
+    public long getSyncedSequence() {
+        return syncedSequence;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (syncer == null) {
+            return;
+        }
+        running = false;
+        syncer.interrupt();
+        syncer.join();
+        sync();
+        synchronized (this) {
+            if (next != null) {
+                discard(next);
+                next = null;
+            }
+        }
+    }
+
+    private void syncLoop() {
+        while (running) {
+            try {
+                Thread.sleep(syncInterval.toMillis(), syncInterval.toNanosPart() % 1_000_000);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            try {
+                sync();
+                prepareNextSegment();
+            } catch (RuntimeException e) {
+                LOGGER.error("Payment journal sync failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void putUuid(int offset, UUID uuid) {
+        entry.putLong(offset, uuid == null ? 0 : uuid.getMostSignificantBits())
+                .putLong(offset + 8, uuid == null ? 0 : uuid.getLeastSignificantBits());
+    }
+
+    // Continues the last segment after its last valid entry. An invalid entry with nothing after it is an append
+    // that did not reach the disk before a machine crash and is cleared; one with entries after it is left alone
+    // for the scanner to report, and a new segment is started after every slot of the broken one instead, so it
+    // neither reuses the broken segment's name nor the sequences of its entries.
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> unused = Files.newDirectoryStream(directory, "journal-*" + PREPARED_SUFFIX)) {
+            for (Path path : unused) {
+                Files.delete(path);
+            }
+        }
+        List<Path> segments = PaymentJournalScanner.segments(directory);
+        if (segments.isEmpty()) {
+            startSegment(1, new byte[MAC_SIZE]);
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        MappedByteBuffer mapped = map(last, Files.size(last), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        PaymentJournalScanner.checkHeader(mapped, last);
+        byte[] chainValue = new byte[MAC_SIZE];
+        mapped.get(HEADER_CHAIN, chainValue);
+        long baseSequence = mapped.getLong(HEADER_BASE_SEQUENCE);
+        long sequence = baseSequence;
+        byte[] expected = new byte[MAC_SIZE];
+        int offset = HEADER_SIZE;
+        while (offset + ENTRY_SIZE <= mapped.capacity() && mapped.get(offset + TYPE) != 0) {
+            if (!verify(mac, chainValue, mapped, offset, expected) || mapped.getLong(offset + SEQUENCE) != sequence) {
+                break;
+            }
+            System.arraycopy(expected, 0, chainValue, 0, MAC_SIZE);
+            sequence++;
+            offset += ENTRY_SIZE;
+        }
+        if (offset + ENTRY_SIZE <= mapped.capacity() && mapped.get(offset + TYPE) != 0) {
+            if (PaymentJournalScanner.isEmptyFrom(mapped, offset + ENTRY_SIZE)) {
+                LOGGER.warn("Clearing incomplete payment journal entry {} in {}", sequence, last);
+                mapped.put(offset, new byte[ENTRY_SIZE]);
+                mapped.force();
+            } else {
+                long after = baseSequence + usedSlots(mapped);
+                LOGGER.error("Payment journal {} is broken at entry {}, continuing in a new segment at {}", last, sequence, after);
+                startSegment(after, chainValue);
+                return;
+            }
+        }
+        if (offset == HEADER_SIZE && mapped.capacity() != segmentSize) {
+            // No entries yet, but mapped with another segment-size
+            Files.delete(last);
+            startSegment(sequence, chainValue);
+            return;
+        }
+        if (mapped.capacity() != segmentSize || offset + ENTRY_SIZE > segmentSize) {
+            startSegment(sequence, chainValue);
+            return;
+        }
+        segment = mapped;
+        segmentBase = baseSequence;
+        position = offset;
+        syncedPosition = offset;
+        nextSequence = sequence;
+        System.arraycopy(chainValue, 0, chain, 0, MAC_SIZE);
+        syncedSequence = sequence - 1;
+    }
+
+    // Swaps the full segment for the prepared one, or one created here if the sync thread has not got to it yet
+    private void roll() {
+        if (retired != null) {
+            // Filled within one sync interval; the sync thread only keeps track of the last full segment
+            retired.force(retiredFrom, segmentSize - retiredFrom);
+        }
+        retired = segment;
+        retiredFrom = syncedPosition;
+        Prepared prepared = next;
+        next = null;
+        try {
+            if (prepared == null || prepared.baseSequence() != nextSequence) {
+                if (prepared != null) {
+                    discard(prepared);
+                }
+                prepared = prepare(nextSequence);
+            }
+            start(prepared, chain);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start payment journal segment " + nextSequence, e);
+        }
+    }
+
+    private void startSegment(long baseSequence, byte[] chainValue) throws IOException {
+        start(prepare(baseSequence), chainValue);
+        segment.force(0, HEADER_SIZE);
+        syncedPosition = HEADER_SIZE;
+        syncedSequence = baseSequence - 1;
+    }
+
+    // Gives the prepared segment its name and chain value. Its header is forced along with its first entries.
+    private void start(Prepared prepared, byte[] chainValue) throws IOException {
+        Path path = PaymentJournalScanner.segmentPath(directory, prepared.baseSequence());
+        if (Files.exists(path)) {
+            throw new FileAlreadyExistsException(path.toString());
+        }
+        Files.move(prepared.path(), path, StandardCopyOption.ATOMIC_MOVE);
+        prepared.buffer().put(HEADER_CHAIN, chainValue);
+        segment = prepared.buffer();
+        segmentBase = prepared.baseSequence();
+        position = HEADER_SIZE;
+        syncedPosition = 0;
+        nextSequence = prepared.baseSequence();
+        System.arraycopy(chainValue, 0, chain, 0, MAC_SIZE);
+        LOGGER.info("Started payment journal segment {} at chain {}", path, HexFormat.of().formatHex(chainValue));
+    }
+
+    // A segment under a temporary name, mapped and with its pages faulted in, header written but for the chain value
+    private Prepared prepare(long baseSequence) throws IOException {
+        Path path = Files.createTempFile(directory, "journal-", PREPARED_SUFFIX);
+        MappedByteBuffer mapped = map(path, segmentSize, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped.putInt(0, MAGIC)
+                .putInt(4, VERSION)
+                .putInt(8, ENTRY_SIZE)
+                .putLong(HEADER_BASE_SEQUENCE, baseSequence);
+        for (int offset = HEADER_SIZE; offset < segmentSize; offset += PAGE_SIZE) {
+            mapped.put(offset, (byte) 0);
+        }
+        return new Prepared(path, mapped, baseSequence);
+    }
+
+    private static void discard(Prepared prepared) {
+        try {
+            Files.deleteIfExists(prepared.path());
+        } catch (IOException e) {
+            LOGGER.warn("Cannot delete unused payment journal segment {}: {}", prepared.path(), e.getMessage());
+        }
+    }
+
+    // Slots up to the last one with anything in it
+    private static int usedSlots(ByteBuffer buffer) {
+        for (int slot = (buffer.capacity() - HEADER_SIZE) / ENTRY_SIZE - 1; slot >= 0; slot--) {
+            int offset = HEADER_SIZE + slot * ENTRY_SIZE;
+            for (int i = offset; i < offset + ENTRY_SIZE; i++) {
+                if (buffer.get(i) != 0) {
+                    return slot + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    // The mapping stays valid after the channel is closed
+    private static MappedByteBuffer map(Path path, long size, StandardOpenOption... options) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    static Mac newMac(String key) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot use " + MAC_ALGORITHM, e);
+        }
+    }
+
+    // MAC of the previous entry's MAC followed by the entry at offset, MAC field excluded, written to result
+    static void mac(Mac mac, byte[] previous, ByteBuffer buffer, int offset, byte[] result) {
+        mac.update(previous);
+        mac.update(buffer.duplicate().limit(offset + MAC).position(offset));
+        try {
+            mac.doFinal(result, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Computes the entry's MAC into result and tells whether the entry carries it
+    static boolean verify(Mac mac, byte[] previous, ByteBuffer buffer, int offset, byte[] result) {
+        mac(mac, previous, buffer, offset, result);
+        byte[] stored = new byte[MAC_SIZE];
+        buffer.get(offset + MAC, stored);
+        return MessageDigest.isEqual(stored, result);
+    }
+}
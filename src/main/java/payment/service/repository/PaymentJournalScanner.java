@@ -0,0 +1,190 @@
+package payment.service.repository;
+
+import payment.service.domain.Money;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+
+import javax.crypto.Mac;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static payment.service.repository.PaymentJournal.*;
+
+// Sequential reader of the PaymentJournal segments, verifying the MAC chain as it goes. Also the command-line tool,
+// run with the application's classpath and the journal key in PAYMENT_JOURNAL_KEY, as for the application:
+//   java -cp <classpath> payment.service.repository.PaymentJournalScanner <directory> [from-sequence] [--verify]
+// prints one tab-separated line per entry, or with --verify only checks the chain, and exits with 1 when it is broken.
+// Scanning from a sequence verifies the chain from the start of that sequence's segment on.
+public final class PaymentJournalScanner {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("journal-\\d{20}\\.seg");
+
+    public record Entry(long sequence, Instant time, EntryType type, UUID transactionId, UUID orderId, UUID customerId,
+                        PaymentStatus status, PaymentMode mode, Money amount) {
+    }
+
+    // problem is null when every entry read was intact and in sequence
+    public record Result(long entries, long lastSequence, String problem) {
+
+        public boolean isIntact() {
+            return problem == null;
+        }
+    }
+
+    private PaymentJournalScanner() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String key = System.getenv("PAYMENT_JOURNAL_KEY");
+        if (args.length == 0 || key == null || key.isEmpty()) {
+            System.err.println("Usage: PAYMENT_JOURNAL_KEY=<key> PaymentJournalScanner <directory> [from-sequence] [--verify]");
+            System.exit(2);
+        }
+        boolean verifyOnly = List.of(args).contains("--verify");
+        long fromSequence = args.length > 1 && !args[1].equals("--verify") ? Long.parseLong(args[1]) : 1;
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false, StandardCharsets.UTF_8);
+        Result result = scan(Path.of(args[0]), key, fromSequence, verifyOnly ? null : entry -> out.println(format(entry)));
+        out.flush();
+        System.err.println(result.entries() + " entries, last sequence " + result.lastSequence() + ", "
+                + (result.isIntact() ? "chain intact" : "BROKEN: " + result.problem()));
+        System.exit(result.isIntact() ? 0 : 1);
+    }
+
+    // Passes every entry from fromSequence on to action, which may be null to only verify the chain. Stops at the
+    // first broken entry or segment. An invalid last entry with nothing after it is an append still in progress (or
+    // lost in a machine crash) and ends the scan without a problem.
+    public static Result scan(Path directory, String key, long fromSequence, Consumer<Entry> action) throws IOException {
+        List<Path> segments = segments(directory);
+        int first = 0;
+        for (int i = 1; i < segments.size(); i++) {
+            if (baseSequence(segments.get(i)) <= fromSequence) {
+                first = i;
+            }
+        }
+        Mac mac = newMac(key);
+        long entries = 0;
+        long sequence = -1;
+        byte[] chain = new byte[MAC_SIZE];
+        byte[] headerChain = new byte[MAC_SIZE];
+        byte[] expected = new byte[MAC_SIZE];
+        for (int i = first; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            checkHeader(buffer, path);
+            buffer.get(HEADER_CHAIN, headerChain);
+            if (sequence != -1 && (buffer.getLong(HEADER_BASE_SEQUENCE) != sequence || !Arrays.equals(headerChain, chain))) {
+                return new Result(entries, sequence - 1, path.getFileName() + " does not continue the chain at sequence " + sequence);
+            }
+            sequence = buffer.getLong(HEADER_BASE_SEQUENCE);
+            System.arraycopy(headerChain, 0, chain, 0, MAC_SIZE);
+            boolean last = i == segments.size() - 1;
+            for (int offset = HEADER_SIZE; offset + ENTRY_SIZE <= buffer.capacity() && buffer.get(offset + TYPE) != 0; offset += ENTRY_SIZE) {
+                if (!verify(mac, chain, buffer, offset, expected) || buffer.getLong(offset + SEQUENCE) != sequence) {
+                    if (last && isEmptyFrom(buffer, offset + ENTRY_SIZE)) {
+                        break;
+                    }
+                    return new Result(entries, sequence - 1, "entry " + sequence + " in " + path.getFileName() + " fails its MAC");
+                }
+                System.arraycopy(expected, 0, chain, 0, MAC_SIZE);
+                if (sequence >= fromSequence) {
+                    entries++;
+                    if (action != null) {
+                        action.accept(decode(buffer, offset));
+                    }
+                }
+                sequence++;
+            }
+        }
+        return new Result(entries, sequence - 1, null);
+    }
+
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> SEGMENT_NAME.matcher(file.getFileName().toString()).matches()).sorted().toList();
+        }
+    }
+
+    static Path segmentPath(Path directory, long baseSequence) {
+        return directory.resolve(String.format("journal-%020d.seg", baseSequence));
+    }
+
+    static void checkHeader(ByteBuffer buffer, Path path) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != ENTRY_SIZE) {
+            throw new IllegalStateException("Not a version " + VERSION + " payment journal segment: " + path);
+        }
+    }
+
+    private static long baseSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("journal-".length(), name.length() - ".seg".length()));
+    }
+
+    static boolean isEmptyFrom(ByteBuffer buffer, int offset) {
+        for (int i = offset; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Entry decode(ByteBuffer buffer, int offset) {
+        long micros = buffer.getLong(offset + TIME_MICROS);
+        int status = buffer.get(offset + STATUS);
+        int mode = buffer.get(offset + MODE);
+        byte[] currency = new byte[3];
+        buffer.get(offset + CURRENCY, currency);
+        Money amount = currency[0] == 0 ? null
+                : Money.ofMinor(buffer.getLong(offset + AMOUNT_MINOR), Currency.getInstance(new String(currency, StandardCharsets.US_ASCII)));
+        return new Entry(buffer.getLong(offset + SEQUENCE),
+                Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1000L),
+                EntryType.values()[buffer.get(offset + TYPE) - 1],
+                uuid(buffer, offset + TRANSACTION_ID),
+                uuid(buffer, offset + ORDER_ID),
+                uuid(buffer, offset + CUSTOMER_ID),
+                status == 0 ? null : PaymentStatus.values()[status - 1],
+                mode == 0 ? null : PaymentMode.values()[mode - 1],
+                amount);
+    }
+
+    private static UUID uuid(ByteBuffer buffer, int offset) {
+        long most = buffer.getLong(offset);
+        long least = buffer.getLong(offset + 8);
+        return most == 0 && least == 0 ? null : new UUID(most, least);
+    }
+
+    private static String format(Entry entry) {
+        return entry.sequence() + "\t" + entry.time() + "\t" + entry.type() + "\t" + entry.transactionId() + "\t"
+                + orDash(entry.status()) + "\t" + orDash(entry.mode()) + "\t"
+                + (entry.amount() == null ? "-" : entry.amount().minorUnits() + " " + entry.amount().currency().getCurrencyCode()) + "\t"
+                + orDash(entry.orderId()) + "\t" + orDash(entry.customerId());
+    }
+
+    private static String orDash(Object value) {
+        return value == null ? "-" : value.toString();
+    }
+}
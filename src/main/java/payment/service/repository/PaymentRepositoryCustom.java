@@ -0,0 +1,35 @@
+package payment.service.repository;
+
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentQuery;
+import payment.service.domain.PaymentStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public interface PaymentRepositoryCustom {
+
+    // Applies many status changes with one UPDATE ... WHERE transaction_id IN (...) per target status
+    int updatePaymentStatuses(Map<UUID, PaymentStatus> statusByTransactionId);
+
+    // Newest first, starting after the given (timestamp, transactionId) position, or from the newest payment if
+    // it is null. Seeks in the index instead of skipping rows like OFFSET, so every page costs the same.
+    List<Payment> findPayments(PaymentQuery query, LocalDateTime beforeTimestamp, UUID beforeTransactionId, int limit);
+
+    // Oldest first, read through a forward-only cursor so any number of rows can be passed on in constant memory
+    void forEachPayment(PaymentQuery query, Consumer<Payment> action);
+
+    Optional<LocalDateTime> findOldestTimestamp();
+
+    // Payments with from <= timestamp < to, once PaymentArchiver has moved them to the archive
+    int deletePayments(LocalDateTime from, LocalDateTime to);
+
+    // Locks the payments' rows until the surrounding transaction ends, so a status change can be applied knowing the
+    // status it replaces; payments not in the table are left out
+    List<Payment> findForUpdate(Collection<UUID> transactionIds);
+}
@@ -0,0 +1,159 @@
+package payment.service.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentQuery;
+import payment.service.domain.PaymentStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public class PaymentRepositoryCustomImpl implements PaymentRepositoryCustom {
+
+    private static final String UPDATE_STATUS_SQL = "UPDATE payment SET payment_status = :status WHERE transaction_id IN (:ids)";
+
+    // Keeps IN lists within the limits of common databases
+    static final int MAX_IN_LIST_SIZE = 1000;
+
+    private static final String OLDEST_TIMESTAMP_SQL = "SELECT MIN(timestamp) FROM payment";
+
+    private static final String DELETE_SQL = "DELETE FROM payment WHERE timestamp >= :from AND timestamp < :to";
+
+    private static final String SELECT_PAYMENT_SQL = "SELECT transaction_id, order_id, customer_id, total_amount_minor, currency, payment_status, payment_mode, timestamp FROM payment";
+
+    private static final RowMapper<Payment> PAYMENT_ROW_MAPPER = (rs, rowNum) -> {
+        Payment payment = new Payment(rs.getObject("order_id", UUID.class), rs.getObject("customer_id", UUID.class),
+                Money.ofMinor(rs.getLong("total_amount_minor"), Currency.getInstance(rs.getString("currency"))), enumValue(PaymentStatus.class, rs.getString("payment_status")));
+        payment.setTransactionId(rs.getObject("transaction_id", UUID.class));
+        payment.setPaymentMode(enumValue(PaymentMode.class, rs.getString("payment_mode")));
+        payment.setTimestamp(rs.getObject("timestamp", LocalDateTime.class));
+        return payment;
+    };
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    // Same data source, but rows are fetched from the database in batches of fetchSize while the export is written.
+    // (MySQL Connector/J only streams with a fetch size of Integer.MIN_VALUE or useCursorFetch=true.)
+    private final NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    public PaymentRepositoryCustomImpl(NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+                                       @Value("${payment.history.export-fetch-size:1000}") int exportFetchSize) {
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        JdbcTemplate streaming = new JdbcTemplate(namedParameterJdbcTemplate.getJdbcTemplate().getDataSource());
+        streaming.setFetchSize(exportFetchSize);
+        this.streamingJdbcTemplate = new NamedParameterJdbcTemplate(streaming);
+    }
+
+    @Override
+    @Transactional
+    public int updatePaymentStatuses(Map<UUID, PaymentStatus> statusByTransactionId) {
+        Map<PaymentStatus, List<UUID>> idsByStatus = new EnumMap<>(PaymentStatus.class);
+        statusByTransactionId.forEach((transactionId, status) ->
+                idsByStatus.computeIfAbsent(status, s -> new ArrayList<>()).add(transactionId));
+
+        int updated = 0;
+        for (Map.Entry<PaymentStatus, List<UUID>> entry : idsByStatus.entrySet()) {
+            List<UUID> ids = entry.getValue();
+            for (int from = 0; from < ids.size(); from += MAX_IN_LIST_SIZE) {
+                MapSqlParameterSource params = new MapSqlParameterSource()
+                        .addValue("status", entry.getKey().name())
+                        .addValue("ids", ids.subList(from, Math.min(from + MAX_IN_LIST_SIZE, ids.size())));
+                updated += namedParameterJdbcTemplate.update(UPDATE_STATUS_SQL, params);
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Payment> findPayments(PaymentQuery query, LocalDateTime beforeTimestamp, UUID beforeTransactionId, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        StringBuilder sql = new StringBuilder(SELECT_PAYMENT_SQL).append(where(query, params));
+        if (beforeTimestamp != null) {
+            sql.append(" AND (timestamp < :beforeTimestamp OR (timestamp = :beforeTimestamp AND transaction_id < :beforeTransactionId))");
+            params.addValue("beforeTimestamp", beforeTimestamp).addValue("beforeTransactionId", beforeTransactionId);
+        }
+        sql.append(" ORDER BY timestamp DESC, transaction_id DESC FETCH FIRST :limit ROWS ONLY");
+        params.addValue("limit", limit);
+        return namedParameterJdbcTemplate.query(sql.toString(), params, PAYMENT_ROW_MAPPER);
+    }
+
+    // Read-only transaction: PostgreSQL only uses a cursor for the fetch size when auto-commit is off
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachPayment(PaymentQuery query, Consumer<Payment> action) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = SELECT_PAYMENT_SQL + where(query, params) + " ORDER BY timestamp, transaction_id";
+        RowCallbackHandler handler = rs -> action.accept(PAYMENT_ROW_MAPPER.mapRow(rs, rs.getRow()));
+        streamingJdbcTemplate.query(sql, params, handler);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<LocalDateTime> findOldestTimestamp() {
+        return Optional.ofNullable(namedParameterJdbcTemplate.getJdbcTemplate().queryForObject(OLDEST_TIMESTAMP_SQL, LocalDateTime.class));
+    }
+
+    @Override
+    @Transactional
+    public int deletePayments(LocalDateTime from, LocalDateTime to) {
+        return namedParameterJdbcTemplate.update(DELETE_SQL, new MapSqlParameterSource().addValue("from", from).addValue("to", to));
+    }
+
+    @Override
+    @Transactional
+    public List<Payment> findForUpdate(Collection<UUID> transactionIds) {
+        List<UUID> ids = List.copyOf(transactionIds);
+        List<Payment> payments = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += MAX_IN_LIST_SIZE) {
+            MapSqlParameterSource params = new MapSqlParameterSource("ids", ids.subList(from, Math.min(from + MAX_IN_LIST_SIZE, ids.size())));
+            payments.addAll(namedParameterJdbcTemplate.query(SELECT_PAYMENT_SQL + " WHERE transaction_id IN (:ids) FOR UPDATE", params, PAYMENT_ROW_MAPPER));
+        }
+        return payments;
+    }
+
+    private static String where(PaymentQuery query, MapSqlParameterSource params) {
+        StringBuilder where = new StringBuilder(" WHERE 1 = 1");
+        if (query.getCustomerId() != null) {
+            where.append(" AND customer_id = :customerId");
+            params.addValue("customerId", query.getCustomerId());
+        }
+        if (query.getOrderId() != null) {
+            where.append(" AND order_id = :orderId");
+            params.addValue("orderId", query.getOrderId());
+        }
+        if (query.getPaymentStatus() != null) {
+            where.append(" AND payment_status = :paymentStatus");
+            params.addValue("paymentStatus", query.getPaymentStatus().name());
+        }
+        if (query.getFrom() != null) {
+            where.append(" AND timestamp >= :from");
+            params.addValue("from", query.getFrom());
+        }
+        if (query.getTo() != null) {
+            where.append(" AND timestamp < :to");
+            params.addValue("to", query.getTo());
+        }
+        return where.toString();
+    }
+
+    private static <E extends Enum<E>> E enumValue(Class<E> type, String name) {
+        return name == null ? null : Enum.valueOf(type, name);
+    }
+}
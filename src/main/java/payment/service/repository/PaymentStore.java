@@ -0,0 +1,25 @@
+package payment.service.repository;
+
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentStatus;
+
+import java.util.List;
+import java.util.UUID;
+
+// Write path of Payment, selected by payment.store.engine: JpaPaymentStore (Hibernate, the default) or
+// JdbcPaymentStore. Reads and bulk status updates stay with PaymentRepository, which already works on plain SQL
+// where it matters.
+public interface PaymentStore {
+
+    // Assigns transactionId and timestamp; committed when it returns, whether or not a transaction is active
+    Payment insert(Payment payment);
+
+    // Within the caller's transaction
+    List<Payment> insertAll(List<Payment> payments);
+
+    // Writes the status of a stored payment, the only column that changes after insert; within the caller's transaction
+    Payment updateStatus(Payment payment);
+
+    // false if there is no such payment
+    boolean updateStatus(UUID transactionId, PaymentStatus status);
+}
@@ -0,0 +1,128 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// AIMD concurrency limit driven by observed latency. While calls complete within the latency target and the limit
+// is actually in use, it grows by one per limit's worth of calls; a slower call, or one that failed in a way that
+// signals overload (timeouts, 5xx), cuts it by a tenth, at most once per round trip as calls already under way
+// when it was cut say nothing new. Calls over the limit are refused right away rather than queued, and the last
+// priority-reserve share of the limit is kept for HIGH priority (ADMIN) calls.
+public class AdaptiveConcurrencyLimiter {
+
+    public enum Priority {
+        HIGH, NORMAL
+    }
+
+    private static final double BACKOFF = 0.9;
+
+    private final String name;
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final double priorityReserve;
+    private final Duration retryAfter;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+
+    // Guarded by this
+    private long lastDecreaseNanos;
+
+    private final Counter[] acceptedCounters = new Counter[Priority.values().length];
+    private final Counter[] shedCounters = new Counter[Priority.values().length];
+
+    public AdaptiveConcurrencyLimiter(String name, MeterRegistry meterRegistry, boolean enabled, int initialLimit,
+                                      int minLimit, int maxLimit, Duration latencyTarget, double priorityReserve, Duration retryAfter) {
+        this.name = name;
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTargetNanos = latencyTarget.toNanos();
+        this.priorityReserve = priorityReserve;
+        this.retryAfter = retryAfter;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.lastDecreaseNanos = System.nanoTime();
+
+        for (Priority priority : Priority.values()) {
+            String tag = priority.name().toLowerCase();
+            acceptedCounters[priority.ordinal()] = Counter.builder("concurrency.limiter.requests")
+                    .tags("limiter", name, "priority", tag, "result", "accepted").register(meterRegistry);
+            shedCounters[priority.ordinal()] = Counter.builder("concurrency.limiter.requests")
+                    .tags("limiter", name, "priority", tag, "result", "shed").register(meterRegistry);
+        }
+        Gauge.builder("concurrency.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit).tag("limiter", name).register(meterRegistry);
+        Gauge.builder("concurrency.limiter.inflight", inFlight, AtomicInteger::get).tag("limiter", name).register(meterRegistry);
+    }
+
+    // HIGH for callers with the ADMIN authority set by JwtAuthFilter, NORMAL for everyone else
+    public static Priority currentPriority() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getAuthorities().stream().anyMatch(authority -> "ADMIN".equals(authority.getAuthority()))) {
+            return Priority.HIGH;
+        }
+        return Priority.NORMAL;
+    }
+
+    // Every successful acquire must be followed by release
+    public boolean tryAcquire(Priority priority) {
+        int allowed = enabled ? allowed(priority) : Integer.MAX_VALUE;
+        for (int current = inFlight.get(); current < allowed; current = inFlight.get()) {
+            if (inFlight.compareAndSet(current, current + 1)) {
+                acceptedCounters[priority.ordinal()].increment();
+                return true;
+            }
+        }
+        shedCounters[priority.ordinal()].increment();
+        return false;
+    }
+
+    // dropped: the call failed in a way that suggests overload, such as a timeout or a 5xx answer
+    public void release(long startNanos, boolean dropped) {
+        int concurrency = inFlight.getAndDecrement();
+        if (enabled) {
+            onSample(startNanos, System.nanoTime() - startNanos, concurrency, dropped);
+        }
+    }
+
+    synchronized void onSample(long startNanos, long latencyNanos, int concurrency, boolean dropped) {
+        double current = limit;
+        if (dropped || latencyNanos > latencyTargetNanos) {
+            if (startNanos - lastDecreaseNanos > 0) {
+                limit = Math.max(minLimit, current * BACKOFF);
+                lastDecreaseNanos = startNanos + latencyNanos;
+            }
+        } else if (concurrency >= current / 2) {
+            // Calls well below the limit say nothing about whether it could be higher
+            limit = Math.min(maxLimit, current + 1 / current);
+        }
+    }
+
+    private int allowed(Priority priority) {
+        double current = limit;
+        return (int) Math.max(1, priority == Priority.HIGH ? current : current * (1 - priorityReserve));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,136 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import payment.service.config.ExecutionMode;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Accept-then-process mode: the payment is stored as PENDING on the request thread and validated and processed
+// by a bounded pool. Capacity (workers plus queue) is taken before anything is stored, so a full queue turns
+// into a 429 instead of an ever growing backlog of PENDING payments. With virtual threads every accepted payment
+// gets its own thread and waits for one of the worker permits there, rather than in the executor's queue.
+@Service
+public class AsyncPaymentService {
+
+    private static final Logger LOGGER = LogManager.getLogger(AsyncPaymentService.class);
+
+    private final PaymentService paymentService;
+    private final Duration retryAfter;
+    private final Semaphore capacity;
+    private final Semaphore workers;
+    private final ThreadPoolExecutor executor;
+
+    // Completions of payments being processed on this node, for long-polling status requests
+    private final Map<UUID, CompletableFuture<Payment>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter acceptedCounter;
+    private final Counter rejectedCounter;
+
+    public AsyncPaymentService(PaymentService paymentService,
+                               MeterRegistry meterRegistry,
+                               ExecutionMode executionMode,
+                               @Value("${payment.async.threads:8}") int threads,
+                               @Value("${payment.async.queue-capacity:1000}") int queueCapacity,
+                               @Value("${payment.async.retry-after:PT1S}") Duration retryAfter) {
+        this.paymentService = paymentService;
+        this.retryAfter = retryAfter;
+        this.capacity = new Semaphore(threads + queueCapacity);
+        this.workers = new Semaphore(threads);
+        // Virtual threads are neither pooled nor queued: each task starts a new one
+        this.executor = executionMode.isVirtual()
+                ? new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), executionMode.threadFactory("payment-async"))
+                : new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), executionMode.threadFactory("payment-async"));
+        this.acceptedCounter = Counter.builder("payment.async.requests").tag("result", "accepted").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("payment.async.requests").tag("result", "rejected").register(meterRegistry);
+        Gauge.builder("payment.async.queue.depth", this, service -> service.executor.getQueue().size() + service.workers.getQueueLength()).register(meterRegistry);
+        Gauge.builder("payment.async.in-flight", inFlight, Map::size).register(meterRegistry);
+    }
+
+    public Payment accept(UUID orderId, UUID productId, UUID customerId, int quantity, Money totalAmount, PaymentMode paymentMode) {
+        return accept(orderId, productId, customerId, quantity, totalAmount, paymentMode, payment -> {});
+    }
+
+    // accepted is called once the payment is stored as PENDING
+    public Payment accept(UUID orderId, UUID productId, UUID customerId, int quantity, Money totalAmount, PaymentMode paymentMode,
+                          Consumer<Payment> accepted) {
+        String jwtToken = paymentService.getJwtTokenFromContext();
+        if (!capacity.tryAcquire()) {
+            rejectedCounter.increment();
+            throw new PaymentQueueFullException(retryAfter);
+        }
+
+        try {
+            Payment payment = paymentService.acceptPayment(orderId, customerId, totalAmount, paymentMode);
+            accepted.accept(payment);
+            CompletableFuture<Payment> completion = new CompletableFuture<>();
+            inFlight.put(payment.getTransactionId(), completion);
+            executor.execute(() -> process(payment, productId, quantity, jwtToken, completion));
+            acceptedCounter.increment();
+            return payment;
+        } catch (RuntimeException e) {
+            capacity.release();
+            throw e;
+        }
+    }
+
+    public Optional<CompletableFuture<Payment>> getCompletion(UUID transactionId) {
+        return Optional.ofNullable(inFlight.get(transactionId));
+    }
+
+    private void process(Payment payment, UUID productId, int quantity, String jwtToken, CompletableFuture<Payment> completion) {
+        workers.acquireUninterruptibly();
+        try {
+            completion.complete(paymentService.completePayment(payment, productId, quantity, jwtToken));
+        } catch (PaymentProcessingException e) {
+            // Already FAILED, or left PENDING by a timeout
+            LOGGER.warn("Payment {} not processed: {}", payment.getTransactionId(), e.getReason());
+            completion.complete(e.getPayment());
+        } catch (Exception e) {
+            LOGGER.error("Error processing payment {}: {}", payment.getTransactionId(), e.getMessage());
+            completion.complete(failQuietly(payment));
+        } finally {
+            workers.release();
+            inFlight.remove(payment.getTransactionId());
+            capacity.release();
+        }
+    }
+
+    private Payment failQuietly(Payment payment) {
+        try {
+            return paymentService.failPayment(payment);
+        } catch (Exception e) {
+            LOGGER.error("Error marking payment {} as failed: {}", payment.getTransactionId(), e.getMessage());
+            return payment;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Payments still queued at shutdown stay PENDING
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            LOGGER.warn("{} accepted payments were not processed before shutdown", executor.shutdownNow().size());
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package payment.service.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import payment.service.domain.Money;
+import payment.service.domain.OutboxEvent;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentRequest;
+import payment.service.domain.PaymentResult;
+import payment.service.domain.PaymentStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+
+// POST /payment/batch. The body, a JSON array or NDJSON, is read incrementally in chunks of payment.batch.chunk-size
+// and every chunk is handled like a single payment, only in bulk: stock checks merged per product and issued
+// together, one transaction inserting all PENDING payments with JDBC batching, processors called through their
+// bulkheads, and one transaction for the statuses and outbox events. Results are written as NDJSON after each chunk.
+@Service
+public class BatchPaymentService {
+
+    private static final Logger LOGGER = LogManager.getLogger(BatchPaymentService.class);
+
+    private final PaymentService paymentService;
+    private final ObjectReader requestReader;
+    private final ObjectWriter resultWriter;
+    private final int chunkSize;
+    private final int maxItems;
+    private final int processorConcurrency;
+
+    private final Timer chunkTimer;
+    private final Counter acceptedCounter;
+    private final Counter rejectedCounter;
+
+    public BatchPaymentService(PaymentService paymentService,
+                               ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${payment.batch.chunk-size:500}") int chunkSize,
+                               @Value("${payment.batch.max-items:100000}") int maxItems,
+                               @Value("${payment.batch.processor-concurrency:16}") int processorConcurrency) {
+        this.paymentService = paymentService;
+        this.requestReader = objectMapper.readerFor(PaymentRequest.class);
+        this.resultWriter = objectMapper.writerFor(PaymentResult.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.chunkSize = chunkSize;
+        this.maxItems = maxItems;
+        this.processorConcurrency = processorConcurrency;
+        this.chunkTimer = Timer.builder("payment.batch.chunk.duration").register(meterRegistry);
+        this.acceptedCounter = Counter.builder("payment.batch.items").tag("result", "accepted").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("payment.batch.items").tag("result", "rejected").register(meterRegistry);
+    }
+
+    public void process(InputStream body, OutputStream out, String jwtToken) throws IOException {
+        int index = 0;
+        try (MappingIterator<PaymentRequest> requests = requestReader.readValues(body)) {
+            List<PaymentRequest> chunk = new ArrayList<>(chunkSize);
+            String malformed = null;
+            boolean more = true;
+            while (more) {
+                chunk.clear();
+                try {
+                    while (chunk.size() < chunkSize && (more = requests.hasNextValue())) {
+                        chunk.add(requests.nextValue());
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Where the next item starts is unknown after a syntax error, so the rest of the body is skipped
+                    malformed = "Malformed payment request: " + e.getMessage();
+                    more = false;
+                }
+
+                if (index + chunk.size() > maxItems) {
+                    write(out, new PaymentResult(index, null, null, null, "Batch exceeds " + maxItems + " payments"));
+                    return;
+                }
+                if (!chunk.isEmpty()) {
+                    int firstIndex = index;
+                    List<PaymentResult> results = chunkTimer.record(() -> processChunk(chunk, firstIndex, jwtToken));
+                    for (PaymentResult result : results) {
+                        write(out, result);
+                    }
+                    index += chunk.size();
+                    out.flush();
+                }
+                if (malformed != null) {
+                    write(out, new PaymentResult(index, null, null, null, malformed));
+                }
+            }
+        }
+    }
+
+    private List<PaymentResult> processChunk(List<PaymentRequest> chunk, int firstIndex, String jwtToken) {
+        PaymentResult[] results = new PaymentResult[chunk.size()];
+
+        // Requests that pass validation, grouped by product for the stock check
+        Map<UUID, List<Integer>> byProduct = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            String invalid = validate(chunk.get(i));
+            if (invalid == null) {
+                PaymentVelocityEngine.Limit exceeded = paymentService.exceededVelocityLimit(chunk.get(i).getCustomerId(), amount(chunk.get(i)));
+                invalid = exceeded == null ? null : "Velocity limit exceeded: " + exceeded;
+            }
+            if (invalid != null) {
+                results[i] = rejected(chunk, firstIndex, i, invalid);
+            } else {
+                byProduct.computeIfAbsent(chunk.get(i).getProductId(), productId -> new ArrayList<>()).add(i);
+            }
+        }
+
+        StockReservationLedger.Reservation[] reservations = new StockReservationLedger.Reservation[chunk.size()];
+        List<Integer> inStock = checkStock(chunk, byProduct, reservations, jwtToken);
+        boolean[] stocked = new boolean[chunk.size()];
+        inStock.forEach(i -> stocked[i] = true);
+        for (List<Integer> items : byProduct.values()) {
+            for (int i : items) {
+                if (!stocked[i]) {
+                    results[i] = rejected(chunk, firstIndex, i, "Insufficient Stock");
+                }
+            }
+        }
+
+        if (!inStock.isEmpty()) {
+            process(chunk, inStock, reservations, firstIndex, results);
+        }
+        return List.of(results);
+    }
+
+    // Items are first taken from the product's stock lease one by one, in order, so only admitted items hold leased
+    // units. The product's remaining items are checked with the inventory service as one total and, if the total is
+    // not in stock, as running totals, admitting items in order for as long as their running total still is. These
+    // checks are read-only, so the running totals take nothing that would have to be given back.
+    private List<Integer> checkStock(List<PaymentRequest> chunk, Map<UUID, List<Integer>> byProduct,
+                                     StockReservationLedger.Reservation[] reservations, String jwtToken) {
+        List<Integer> inStock = new ArrayList<>();
+        Map<UUID, List<Integer>> unleased = new LinkedHashMap<>();
+        Map<UUID, CompletableFuture<Boolean>> totals = new LinkedHashMap<>();
+        byProduct.forEach((productId, items) -> {
+            int leased = 0;
+            for (; leased < items.size(); leased++) {
+                int i = items.get(leased);
+                reservations[i] = paymentService.reserveStock(productId, chunk.get(i).getQuantity(), jwtToken);
+                if (reservations[i] == null) {
+                    break;
+                }
+                inStock.add(i);
+            }
+            if (leased < items.size()) {
+                List<Integer> rest = items.subList(leased, items.size());
+                unleased.put(productId, rest);
+                totals.put(productId, hasStock(productId, quantity(chunk, rest, rest.size()), jwtToken));
+            }
+        });
+
+        Map<UUID, List<CompletableFuture<Boolean>>> runningTotals = new LinkedHashMap<>();
+        unleased.forEach((productId, items) -> {
+            if (joinQuietly(totals.get(productId))) {
+                inStock.addAll(items);
+            } else if (items.size() > 1) {
+                List<CompletableFuture<Boolean>> checks = new ArrayList<>(items.size() - 1);
+                for (int n = 1; n < items.size(); n++) {
+                    checks.add(hasStock(productId, quantity(chunk, items, n), jwtToken));
+                }
+                runningTotals.put(productId, checks);
+            }
+        });
+        runningTotals.forEach((productId, checks) -> {
+            List<Integer> items = unleased.get(productId);
+            for (int n = 0; n < checks.size() && joinQuietly(checks.get(n)); n++) {
+                inStock.add(items.get(n));
+            }
+        });
+        return inStock;
+    }
+
+    private CompletableFuture<Boolean> hasStock(UUID productId, long quantity, String jwtToken) {
+        if (quantity > Integer.MAX_VALUE) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return paymentService.hasStockAsync(productId, (int) quantity, jwtToken);
+    }
+
+    // Quantity of the first count items
+    private long quantity(List<PaymentRequest> chunk, List<Integer> items, int count) {
+        long quantity = 0;
+        for (int n = 0; n < count; n++) {
+            quantity += chunk.get(items.get(n)).getQuantity();
+        }
+        return quantity;
+    }
+
+    private void process(List<PaymentRequest> chunk, List<Integer> items, StockReservationLedger.Reservation[] reservations,
+                         int firstIndex, PaymentResult[] results) {
+        List<Payment> payments = new ArrayList<>(items.size());
+        List<StockReservationLedger.Reservation> leased = new ArrayList<>(items.size());
+        for (int i : items) {
+            PaymentRequest request = chunk.get(i);
+            Payment payment = new Payment(request.getOrderId(), request.getCustomerId(), amount(request), PaymentStatus.PENDING);
+            payment.setPaymentMode(request.getPaymentMode());
+            payments.add(payment);
+            leased.add(reservations[i]);
+        }
+        payments = paymentService.acceptPayments(payments, leased);
+
+        // Bounded so a large chunk does not overrun the processors' bulkheads on its own
+        Semaphore window = new Semaphore(processorConcurrency);
+        List<CompletableFuture<Payment>> processing = new ArrayList<>(payments.size());
+        for (Payment payment : payments) {
+            window.acquireUninterruptibly();
+            CompletableFuture<Payment> result = paymentService.runProcessor(payment, chunk.get(items.get(processing.size())).getProductId());
+            result.whenComplete((processed, failure) -> window.release());
+            processing.add(result);
+        }
+
+        List<Payment> processedPayments = new ArrayList<>();
+        List<OutboxEvent> events = new ArrayList<>();
+        for (int n = 0; n < payments.size(); n++) {
+            int i = items.get(n);
+            PaymentRequest request = chunk.get(i);
+            Payment payment = payments.get(n);
+            try {
+                Payment processed = processing.get(n).join();
+                processedPayments.add(processed);
+                events.add(paymentService.paymentEvent(processed, request.getProductId(), request.getQuantity()));
+                results[i] = new PaymentResult(firstIndex + i, request.getOrderId(), processed.getTransactionId(), processed.getPaymentStatus(), null);
+                acceptedCounter.increment();
+            } catch (CompletionException e) {
+                // As for single payments: unknown outcome after a timeout stays PENDING, anything else is FAILED
+                boolean timedOut = e.getCause() instanceof TimeoutException;
+                PaymentStatus status = timedOut ? PaymentStatus.PENDING : PaymentStatus.FAILED;
+                if (!timedOut) {
+                    payment.setPaymentStatus(status);
+                    processedPayments.add(payment);
+                }
+                results[i] = new PaymentResult(firstIndex + i, request.getOrderId(), payment.getTransactionId(), status,
+                        timedOut ? "Payment processor timed out" : e.getCause().getMessage());
+                rejectedCounter.increment();
+            }
+        }
+        paymentService.recordProcessedBatch(processedPayments, events);
+    }
+
+    private String validate(PaymentRequest request) {
+        if (request.getOrderId() == null || request.getProductId() == null || request.getCustomerId() == null) {
+            return "orderId, productId and customerId are required";
+        }
+        if (request.getQuantity() <= 0) {
+            return "quantity must be positive";
+        }
+        if (request.getTotalAmount() == null || request.getTotalAmount().signum() <= 0) {
+            return "totalAmount must be positive";
+        }
+        try {
+            amount(request);
+        } catch (ArithmeticException e) {
+            return "Invalid totalAmount: " + e.getMessage();
+        }
+        if (request.getPaymentMode() == null) {
+            return "paymentMode is required";
+        }
+        return null;
+    }
+
+    private Money amount(PaymentRequest request) {
+        return Money.of(request.getTotalAmount(), request.getCurrency() == null ? Money.DEFAULT_CURRENCY : request.getCurrency());
+    }
+
+    private PaymentResult rejected(List<PaymentRequest> chunk, int firstIndex, int i, String error) {
+        rejectedCounter.increment();
+        return new PaymentResult(firstIndex + i, chunk.get(i).getOrderId(), null, null, error);
+    }
+
+    private boolean joinQuietly(CompletableFuture<Boolean> check) {
+        try {
+            return Boolean.TRUE.equals(check.join());
+        } catch (CompletionException e) {
+            LOGGER.error("Error while validating stock: {}", e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    private void write(OutputStream out, PaymentResult result) throws IOException {
+        resultWriter.writeValue(out, result);
+        out.write('\n');
+    }
+}
@@ -0,0 +1,296 @@
+package payment.service.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import payment.service.domain.IdempotencyRecord;
+import payment.service.domain.Payment;
+import payment.service.repository.PaymentRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+// Deduplicates POST /payment retries carrying the same Idempotency-Key. In-flight and completed results are kept
+// in a bounded in-memory cache so concurrent duplicates on this node wait for the first request; the
+// payment_idempotency table (primary key on the key) makes the claim hold across nodes. The transactionId is
+// recorded as soon as the payment is stored, so once a payment exists every retry replays it, even when the first
+// request failed afterwards; only failures before that release the key. A claim without a payment that is older
+// than claim-timeout was left by a node that stopped and is taken over.
+@Service
+public class IdempotencyService {
+
+    private static final Logger LOGGER = LogManager.getLogger(IdempotencyService.class);
+
+    private static final String CLAIM_SQL = "INSERT INTO payment_idempotency (idempotency_key, request_hash, created_at) VALUES (?, ?, ?)";
+    private static final String TAKE_OVER_SQL = "UPDATE payment_idempotency SET created_at = ? WHERE idempotency_key = ? AND transaction_id IS NULL AND created_at < ?";
+    private static final String ACCEPTED_SQL = "UPDATE payment_idempotency SET transaction_id = ? WHERE idempotency_key = ?";
+    private static final String COMPLETE_SQL = "UPDATE payment_idempotency SET transaction_id = ?, completed_at = ? WHERE idempotency_key = ?";
+    private static final String RELEASE_SQL = "DELETE FROM payment_idempotency WHERE idempotency_key = ? AND transaction_id IS NULL";
+    private static final String SELECT_SQL = "SELECT request_hash, transaction_id, created_at, completed_at FROM payment_idempotency WHERE idempotency_key = ?";
+    private static final String PURGE_SQL = "DELETE FROM payment_idempotency WHERE created_at < ?";
+
+    private static final long REMOTE_POLL_INTERVAL_MILLIS = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PaymentRepository paymentRepository;
+    private final Cache<String, InFlight> results;
+    private final Duration waitTimeout;
+    private final Duration retention;
+    private final Duration claimTimeout;
+
+    private final Counter processedCounter;
+    private final Counter replayedCounter;
+    private final Counter joinedCounter;
+
+    public IdempotencyService(JdbcTemplate jdbcTemplate,
+                              PaymentRepository paymentRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${payment.idempotency.max-entries:100000}") long maxEntries,
+                              @Value("${payment.idempotency.retention:PT24H}") Duration retention,
+                              @Value("${payment.idempotency.wait-timeout:PT30S}") Duration waitTimeout,
+                              @Value("${payment.idempotency.claim-timeout:PT1M}") Duration claimTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.paymentRepository = paymentRepository;
+        this.waitTimeout = waitTimeout;
+        this.retention = retention;
+        this.claimTimeout = claimTimeout;
+        this.results = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(retention)
+                .build();
+        this.processedCounter = Counter.builder("payment.idempotency.requests").tag("outcome", "processed").register(meterRegistry);
+        this.replayedCounter = Counter.builder("payment.idempotency.requests").tag("outcome", "replayed").register(meterRegistry);
+        this.joinedCounter = Counter.builder("payment.idempotency.requests").tag("outcome", "joined").register(meterRegistry);
+    }
+
+    // Runs the payment once per key; duplicates get the first request's payment back
+    public Result execute(String idempotencyKey, String requestFingerprint, Attempt payment) {
+        String requestHash = sha256(requestFingerprint);
+        InFlight mine = new InFlight(requestHash);
+        InFlight existing = results.asMap().putIfAbsent(idempotencyKey, mine);
+
+        if (existing != null) {
+            checkSameRequest(existing.requestHash, requestHash);
+            boolean completed = existing.result.isDone();
+            Payment result = await(existing.result);
+            (completed ? replayedCounter : joinedCounter).increment();
+            return new Result(result, true);
+        }
+
+        Payment replayed;
+        try {
+            replayed = claim(idempotencyKey, requestHash);
+        } catch (RuntimeException e) {
+            forget(idempotencyKey, mine, e);
+            throw e;
+        }
+        if (replayed != null) {
+            replayedCounter.increment();
+            mine.result.complete(replayed);
+            return new Result(replayed, true);
+        }
+
+        Payment result;
+        try {
+            result = payment.run(accepted -> {
+                mine.accepted = accepted;
+                record(idempotencyKey, accepted.getTransactionId(), false);
+            });
+        } catch (RuntimeException e) {
+            forget(idempotencyKey, mine, e);
+            if (mine.accepted == null) {
+                // Nothing was stored, so the client can retry with the same key
+                releaseQuietly(idempotencyKey);
+            } else {
+                // The payment exists, e.g. still PENDING after a processor timeout: retries replay it
+                record(idempotencyKey, mine.accepted.getTransactionId(), true);
+            }
+            throw e;
+        }
+
+        record(idempotencyKey, result.getTransactionId(), true);
+        processedCounter.increment();
+        mine.result.complete(result);
+        return new Result(result, false);
+    }
+
+    // If this fails the claim stays in place: other nodes answer 409 until it has been there for claim-timeout
+    private void record(String idempotencyKey, UUID transactionId, boolean completed) {
+        try {
+            if (completed) {
+                jdbcTemplate.update(COMPLETE_SQL, transactionId, Timestamp.from(Instant.now()), idempotencyKey);
+            } else {
+                jdbcTemplate.update(ACCEPTED_SQL, transactionId, idempotencyKey);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error recording payment {} for Idempotency-Key {}: {}", transactionId, idempotencyKey, e.getMessage());
+        }
+    }
+
+    private void forget(String idempotencyKey, InFlight inFlight, RuntimeException failure) {
+        results.asMap().remove(idempotencyKey, inFlight);
+        inFlight.result.completeExceptionally(failure);
+    }
+
+    // Claims the key in the shared table, or returns the payment already recorded for it by any node
+    private Payment claim(String idempotencyKey, String requestHash) {
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+        while (true) {
+            try {
+                jdbcTemplate.update(CLAIM_SQL, idempotencyKey, requestHash, Timestamp.from(Instant.now()));
+                return null;
+            } catch (DuplicateKeyException e) {
+                // Claimed elsewhere: replay once it has completed
+            }
+
+            IdempotencyRecord record = find(idempotencyKey);
+            if (record != null) {
+                checkSameRequest(record.getRequestHash(), requestHash);
+                Instant claimExpiry = Instant.now().minus(claimTimeout);
+                boolean abandoned = record.getCreatedAt().isBefore(claimExpiry);
+                // A payment left in progress by a node that stopped is replayed as it is
+                if (record.getTransactionId() != null && (record.getCompletedAt() != null || abandoned)) {
+                    return paymentRepository.findById(record.getTransactionId())
+                            .orElseThrow(() -> new ResponseStatusException(HttpStatus.CONFLICT, "Payment for Idempotency-Key no longer exists"));
+                }
+                if (record.getTransactionId() == null && abandoned
+                        && jdbcTemplate.update(TAKE_OVER_SQL, Timestamp.from(Instant.now()), idempotencyKey, Timestamp.from(claimExpiry)) == 1) {
+                    LOGGER.warn("Took over abandoned claim of Idempotency-Key {}", idempotencyKey);
+                    return null;
+                }
+            }
+            if (System.nanoTime() > deadline) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "A request with this Idempotency-Key is still in progress");
+            }
+            sleep(REMOTE_POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    private IdempotencyRecord find(String idempotencyKey) {
+        List<IdempotencyRecord> records = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> {
+            IdempotencyRecord record = new IdempotencyRecord();
+            record.setIdempotencyKey(idempotencyKey);
+            record.setRequestHash(rs.getString("request_hash"));
+            record.setTransactionId(rs.getObject("transaction_id", UUID.class));
+            record.setCreatedAt(rs.getTimestamp("created_at").toInstant());
+            Timestamp completedAt = rs.getTimestamp("completed_at");
+            record.setCompletedAt(completedAt == null ? null : completedAt.toInstant());
+            return record;
+        }, idempotencyKey);
+        return records.isEmpty() ? null : records.get(0);
+    }
+
+    private Payment await(CompletableFuture<Payment> result) {
+        try {
+            return result.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "A request with this Idempotency-Key is still in progress");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the original request", e);
+        }
+    }
+
+    private void releaseQuietly(String idempotencyKey) {
+        try {
+            jdbcTemplate.update(RELEASE_SQL, idempotencyKey);
+        } catch (Exception e) {
+            LOGGER.error("Error releasing Idempotency-Key {}: {}", idempotencyKey, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${payment.idempotency.purge-interval:PT1H}")
+    public void purgeExpired() {
+        int purged = jdbcTemplate.update(PURGE_SQL, Timestamp.from(Instant.now().minus(retention)));
+        if (purged > 0) {
+            LOGGER.info("Purged {} expired idempotency keys", purged);
+        }
+    }
+
+    private static void checkSameRequest(String expectedHash, String requestHash) {
+        if (!expectedHash.equals(requestHash)) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key was already used for a different request");
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the original request", e);
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class InFlight {
+
+        private final String requestHash;
+        private final CompletableFuture<Payment> result = new CompletableFuture<>();
+        private volatile Payment accepted;
+
+        private InFlight(String requestHash) {
+            this.requestHash = requestHash;
+        }
+    }
+
+    // A payment attempt, which calls accepted once the payment has been stored
+    @FunctionalInterface
+    public interface Attempt {
+        Payment run(Consumer<Payment> accepted);
+    }
+
+    public static final class Result {
+
+        private final Payment payment;
+        private final boolean replayed;
+
+        private Result(Payment payment, boolean replayed) {
+            this.payment = payment;
+            this.replayed = replayed;
+        }
+
+        public Payment getPayment() {
+            return payment;
+        }
+
+        public boolean isReplayed() {
+            return replayed;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package payment.service.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+
+// Answered with 503 and a Retry-After header when an AdaptiveConcurrencyLimiter refuses a call
+public class LoadSheddingException extends ResponseStatusException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Duration retryAfter;
+
+    public LoadSheddingException(AdaptiveConcurrencyLimiter limiter) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Concurrency limit of " + limiter.getName() + " reached");
+        this.retryAfter = limiter.getRetryAfter();
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())));
+        return headers;
+    }
+}
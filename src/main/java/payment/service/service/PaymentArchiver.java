@@ -0,0 +1,88 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentQuery;
+import payment.service.repository.PaymentArchive;
+import payment.service.repository.PaymentRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Moves closed time partitions from the payment table to PaymentArchive, keeping the newest hot-partitions
+// partitions (the current one included) in the database. A partition is written to its file before its rows are
+// deleted; if the delete does not happen the next run merges the same rows into the file again. From the moment the
+// file exists, queries read the partition from the archive only (see PaymentArchive.getBoundary), so nothing is
+// seen twice in between. Archived payments are final: a later status change for one finds no row to update.
+@Component
+public class PaymentArchiver {
+
+    private static final Logger LOGGER = LogManager.getLogger(PaymentArchiver.class);
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentArchive paymentArchive;
+    private final boolean enabled;
+    private final int hotPartitions;
+    private final Counter archivedCounter;
+
+    public PaymentArchiver(PaymentRepository paymentRepository,
+                           PaymentArchive paymentArchive,
+                           MeterRegistry meterRegistry,
+                           @Value("${payment.archive.enabled:false}") boolean enabled,
+                           @Value("${payment.archive.hot-partitions:3}") int hotPartitions) {
+        this.paymentRepository = paymentRepository;
+        this.paymentArchive = paymentArchive;
+        this.enabled = enabled;
+        this.hotPartitions = Math.max(1, hotPartitions);
+        this.archivedCounter = Counter.builder("payment.archive.archived").register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${payment.archive.cron:0 30 2 * * *}")
+    public void archiveClosedPartitions() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = paymentArchive.partitionStart(LocalDateTime.now());
+        for (int i = 1; i < hotPartitions; i++) {
+            cutoff = paymentArchive.partitionStart(cutoff.minusDays(1));
+        }
+        archiveBefore(cutoff);
+    }
+
+    // Archives every partition that starts before cutoff, oldest first; returns the number of payments moved
+    public int archiveBefore(LocalDateTime cutoff) {
+        Optional<LocalDateTime> oldest = paymentRepository.findOldestTimestamp();
+        if (oldest.isEmpty()) {
+            return 0;
+        }
+        int archived = 0;
+        for (LocalDateTime start = paymentArchive.partitionStart(oldest.get()); start.isBefore(cutoff); start = paymentArchive.nextPartition(start)) {
+            LocalDateTime end = paymentArchive.nextPartition(start);
+            List<Payment> payments = new ArrayList<>();
+            paymentRepository.forEachPayment(new PaymentQuery(null, null, null, start, end), payments::add);
+            if (payments.isEmpty()) {
+                continue;
+            }
+            try {
+                paymentArchive.write(start, payments);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot archive payments from " + start, e);
+            }
+            int deleted = paymentRepository.deletePayments(start, end);
+            LOGGER.info("Archived {} payments from {} to {}, deleted {} rows", payments.size(), start, end, deleted);
+            archivedCounter.increment(payments.size());
+            archived += payments.size();
+        }
+        return archived;
+    }
+}
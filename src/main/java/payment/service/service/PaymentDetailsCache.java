@@ -0,0 +1,215 @@
+package payment.service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentCacheInvalidation;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+import payment.service.domain.PaymentStatusChangedEvent;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Read-through cache of payment details for GET /payment/{transactionId}, which order tracking UIs poll.
+// Entries are immutable snapshots, evicted by size and TTL, and invalidated when a status changes: locally
+// after the change commits, and on other nodes through the payment.cache.broadcast topic.
+@Component
+public class PaymentDetailsCache {
+
+    private static final Logger LOGGER = LogManager.getLogger(PaymentDetailsCache.class);
+
+    private final boolean enabled;
+    private final Cache<UUID, Snapshot> snapshots;
+
+    // Loads racing with an invalidation must not put the value they read before it back into the cache.
+    // Invalidations are numbered, and recent ones remembered long enough to outlast any load. A load checks them
+    // and puts its value in one compute on the entry, which an invalidation of the same entry has to wait for.
+    private final AtomicLong invalidationSequence = new AtomicLong();
+    private final Cache<UUID, Long> recentInvalidations;
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectWriter invalidationWriter;
+    private final ObjectReader invalidationReader;
+    private final boolean broadcastEnabled;
+    private final String broadcastTopic;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ConcurrentLinkedQueue<PaymentStatusChangedEvent> pendingBroadcast = new ConcurrentLinkedQueue<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer entryAge;
+    private final Timer invalidationLag;
+
+    public PaymentDetailsCache(MeterRegistry meterRegistry,
+                               KafkaTemplate<String, String> kafkaTemplate,
+                               ObjectMapper objectMapper,
+                               @Value("${payment.cache.enabled:true}") boolean enabled,
+                               @Value("${payment.cache.max-size:100000}") long maxSize,
+                               @Value("${payment.cache.ttl:PT30S}") Duration ttl,
+                               @Value("${payment.cache.broadcast.enabled:true}") boolean broadcastEnabled,
+                               @Value("${payment.cache.broadcast.topic:payment-cache-invalidation}") String broadcastTopic) {
+        this.enabled = enabled;
+        this.snapshots = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.recentInvalidations = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(30))
+                .build();
+        this.kafkaTemplate = kafkaTemplate;
+        this.invalidationWriter = objectMapper.writerFor(PaymentCacheInvalidation.class);
+        this.invalidationReader = objectMapper.readerFor(PaymentCacheInvalidation.class);
+        this.broadcastEnabled = broadcastEnabled;
+        this.broadcastTopic = broadcastTopic;
+
+        this.hits = Counter.builder("payment.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("payment.cache.requests").tag("result", "miss").register(meterRegistry);
+        // How old the served details were; bounded by the TTL
+        this.entryAge = Timer.builder("payment.cache.entry.age").register(meterRegistry);
+        // Commit on another node until the invalidation arrived here, the window in which this node may serve stale details
+        this.invalidationLag = Timer.builder("payment.cache.invalidation.lag").register(meterRegistry);
+        meterRegistry.gauge("payment.cache.size", snapshots, Cache::estimatedSize);
+    }
+
+    public Optional<Payment> get(UUID transactionId, Function<UUID, Optional<Payment>> loader) {
+        if (!enabled) {
+            return loader.apply(transactionId);
+        }
+
+        Snapshot snapshot = snapshots.getIfPresent(transactionId);
+        if (snapshot != null) {
+            hits.increment();
+            entryAge.record(System.nanoTime() - snapshot.loadedAt, TimeUnit.NANOSECONDS);
+            return Optional.of(snapshot.toPayment());
+        }
+
+        // Not found is not cached, the payment may be about to be created
+        misses.increment();
+        long loadStartedAt = invalidationSequence.get();
+        Optional<Payment> payment = loader.apply(transactionId);
+        if (payment.isPresent()) {
+            snapshots.asMap().compute(transactionId, (id, cached) -> {
+                Long invalidatedAt = recentInvalidations.getIfPresent(id);
+                return invalidatedAt == null || invalidatedAt <= loadStartedAt ? new Snapshot(payment.get()) : cached;
+            });
+        }
+        return payment;
+    }
+
+    // Runs after the status change has committed, or right away when it was made outside a transaction
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStatusChanged(PaymentStatusChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        invalidate(event.getTransactionIds());
+        if (broadcastEnabled) {
+            pendingBroadcast.add(event);
+        }
+    }
+
+    // Sends the changes of one interval as a single message, off the request and listener threads
+    @Scheduled(fixedDelayString = "${payment.cache.broadcast.interval:PT0.05S}")
+    public void broadcastInvalidations() {
+        if (pendingBroadcast.isEmpty()) {
+            return;
+        }
+        List<UUID> transactionIds = new ArrayList<>();
+        long changedAt = Long.MAX_VALUE;
+        PaymentStatusChangedEvent event;
+        while ((event = pendingBroadcast.poll()) != null) {
+            transactionIds.addAll(event.getTransactionIds());
+            changedAt = Math.min(changedAt, event.getChangedAt().toEpochMilli());
+        }
+        try {
+            String message = invalidationWriter.writeValueAsString(new PaymentCacheInvalidation(nodeId, changedAt, transactionIds));
+            kafkaTemplate.send(broadcastTopic, nodeId, message);
+        } catch (Exception e) {
+            // Other nodes serve the old details until their entries expire
+            LOGGER.error("Failed to broadcast invalidation of {} cached payments: {}", transactionIds.size(), e.getMessage());
+        }
+    }
+
+    // Every node reads every message, so each instance uses a consumer group of its own
+    @KafkaListener(id = "paymentCacheInvalidationListener", idIsGroup = false,
+            topics = "${payment.cache.broadcast.topic:payment-cache-invalidation}",
+            groupId = "payment-cache-#{T(java.util.UUID).randomUUID()}",
+            autoStartup = "${payment.cache.broadcast.enabled:true}",
+            properties = "auto.offset.reset=latest")
+    public void onInvalidationMessage(String invalidationJson) {
+        try {
+            PaymentCacheInvalidation invalidation = invalidationReader.readValue(invalidationJson);
+            if (nodeId.equals(invalidation.getOrigin()) || invalidation.getTransactionIds() == null) {
+                return;
+            }
+            invalidate(invalidation.getTransactionIds());
+            invalidationLag.record(Math.max(0, System.currentTimeMillis() - invalidation.getChangedAt()), TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            LOGGER.error("Skipping malformed payment cache invalidation: {}", e.getMessage());
+        }
+    }
+
+    private void invalidate(Iterable<UUID> transactionIds) {
+        long sequence = invalidationSequence.incrementAndGet();
+        for (UUID transactionId : transactionIds) {
+            recentInvalidations.put(transactionId, sequence);
+            snapshots.invalidate(transactionId);
+        }
+    }
+
+    // Callers get a copy, so nothing they do to it changes what the next caller sees
+    private static final class Snapshot {
+
+        private final UUID transactionId;
+        private final UUID orderId;
+        private final UUID customerId;
+        private final Money totalAmount;
+        private final PaymentStatus paymentStatus;
+        private final PaymentMode paymentMode;
+        private final LocalDateTime timestamp;
+        private final long loadedAt = System.nanoTime();
+
+        private Snapshot(Payment payment) {
+            this.transactionId = payment.getTransactionId();
+            this.orderId = payment.getOrderId();
+            this.customerId = payment.getCustomerId();
+            this.totalAmount = payment.getAmount();
+            this.paymentStatus = payment.getPaymentStatus();
+            this.paymentMode = payment.getPaymentMode();
+            this.timestamp = payment.getTimestamp();
+        }
+
+        private Payment toPayment() {
+            Payment payment = new Payment(orderId, customerId, totalAmount, paymentStatus);
+            payment.setTransactionId(transactionId);
+            payment.setPaymentMode(paymentMode);
+            payment.setTimestamp(timestamp);
+            return payment;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import payment.service.domain.Money;
+import payment.service.domain.OutboxEvent;
+import payment.service.domain.PaymentEvent;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Drains the payment_outbox table to Kafka: claims rows in bulk, sends them pipelined (keyed by product
+// so events for a product stay on one partition), then deletes what the broker acknowledged in bulk. Each event is
+// sent within the trace of the request that recorded it, so its record headers continue that trace.
+@Component
+@ConditionalOnProperty(name = "payment.outbox.relay-enabled", matchIfMissing = true)
+public class PaymentEventRelay {
+
+    private static final Logger LOGGER = LogManager.getLogger(PaymentEventRelay.class);
+
+    private static final String CLAIM_SQL = "UPDATE payment_outbox SET claimed_by = ?, claimed_at = ? WHERE id IN ("
+            + "SELECT id FROM payment_outbox WHERE claimed_by IS NULL OR claimed_at < ? ORDER BY id FETCH FIRST ? ROWS ONLY)";
+    private static final String SELECT_CLAIMED_SQL = "SELECT id, topic, transaction_id, product_id, quantity, amount_minor, currency, created_at, traceparent "
+            + "FROM payment_outbox WHERE claimed_by = ? ORDER BY id";
+    private static final String DELETE_SQL = "DELETE FROM payment_outbox WHERE id IN (:ids)";
+    private static final String RELEASE_SQL = "UPDATE payment_outbox SET claimed_by = NULL, claimed_at = NULL WHERE id IN (:ids)";
+
+    private static final RowMapper<OutboxEvent> OUTBOX_EVENT_ROW_MAPPER = (rs, rowNum) -> {
+        OutboxEvent event = new OutboxEvent(rs.getString("topic"), rs.getObject("transaction_id", UUID.class),
+                rs.getObject("product_id", UUID.class), rs.getInt("quantity"));
+        event.setId(rs.getLong("id"));
+        String currency = rs.getString("currency");
+        if (currency != null) {
+            event.setAmount(Money.ofMinor(rs.getLong("amount_minor"), Currency.getInstance(currency)));
+        }
+        event.setCreatedAt(rs.getTimestamp("created_at").toInstant());
+        event.setTraceparent(rs.getString("traceparent"));
+        return event;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final KafkaTemplate<String, PaymentEvent> kafkaTemplate;
+    private final Tracer tracer;
+    private final Propagator propagator;
+
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final Duration claimTimeout;
+    private final Duration sendTimeout;
+
+    private final Counter publishedCounter;
+    private final Counter failedCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer lagTimer;
+
+    public PaymentEventRelay(JdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             KafkaTemplate<String, PaymentEvent> kafkaTemplate,
+                             MeterRegistry meterRegistry,
+                             Tracer tracer,
+                             @Nullable Propagator propagator,
+                             @Value("${payment.outbox.batch-size:500}") int batchSize,
+                             @Value("${payment.outbox.max-batches-per-run:20}") int maxBatchesPerRun,
+                             @Value("${payment.outbox.claim-timeout:PT30S}") Duration claimTimeout,
+                             @Value("${payment.outbox.send-timeout:PT10S}") Duration sendTimeout) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = transactionTemplate;
+        this.kafkaTemplate = kafkaTemplate;
+        this.tracer = tracer;
+        // None when tracing is disabled
+        this.propagator = propagator != null ? propagator : Propagator.NOOP;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.claimTimeout = claimTimeout;
+        this.sendTimeout = sendTimeout;
+        this.publishedCounter = Counter.builder("payment.outbox.published").register(meterRegistry);
+        this.failedCounter = Counter.builder("payment.outbox.failed").register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("payment.outbox.batch.size").register(meterRegistry);
+        this.lagTimer = Timer.builder("payment.outbox.lag")
+                .description("Time from outbox insert to broker acknowledgement")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.outbox.poll-interval:PT0.2S}")
+    public void relay() {
+        int batches = 0;
+        int claimed;
+        do {
+            claimed = relayBatch();
+        } while (claimed == batchSize && ++batches < maxBatchesPerRun);
+    }
+
+    // Publishes one claimed batch and returns the number of rows claimed
+    public int relayBatch() {
+        String claimToken = UUID.randomUUID().toString();
+        List<OutboxEvent> events;
+        try {
+            events = claim(claimToken);
+        } catch (Exception e) {
+            LOGGER.error("Error while claiming outbox events: {}", e.getMessage());
+            return 0;
+        }
+        if (events.isEmpty()) {
+            return 0;
+        }
+        batchSizeSummary.record(events.size());
+
+        // Send everything first so the producer can batch and pipeline, then wait for the acknowledgements
+        List<CompletableFuture<?>> futures = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            futures.add(send(event));
+        }
+
+        List<Long> published = new ArrayList<>(events.size());
+        List<Long> failed = new ArrayList<>();
+        long deadline = System.nanoTime() + sendTimeout.toNanos();
+        for (int i = 0; i < events.size(); i++) {
+            OutboxEvent event = events.get(i);
+            if (awaitAck(futures.get(i), deadline)) {
+                published.add(event.getId());
+                lagTimer.record(Duration.between(event.getCreatedAt(), Instant.now()));
+            } else {
+                failed.add(event.getId());
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            updateByIds(DELETE_SQL, published);
+            updateByIds(RELEASE_SQL, failed);
+        });
+        publishedCounter.increment(published.size());
+        failedCounter.increment(failed.size());
+        if (!failed.isEmpty()) {
+            LOGGER.warn("Failed to publish {} of {} outbox events, they will be retried", failed.size(), events.size());
+        }
+        return events.size();
+    }
+
+    private List<OutboxEvent> claim(String claimToken) {
+        return transactionTemplate.execute(status -> {
+            Timestamp now = Timestamp.from(Instant.now());
+            Timestamp expiredClaim = Timestamp.from(Instant.now().minus(claimTimeout));
+            int claimed = jdbcTemplate.update(CLAIM_SQL, claimToken, now, expiredClaim, batchSize);
+            if (claimed == 0) {
+                return List.of();
+            }
+            return jdbcTemplate.query(SELECT_CLAIMED_SQL, OUTBOX_EVENT_ROW_MAPPER, claimToken);
+        });
+    }
+
+    private CompletableFuture<?> send(OutboxEvent event) {
+        // Events recorded without a trace, e.g. off the request thread, start their own
+        Span span = event.getTraceparent() == null ? null
+                : propagator.extract(Map.of(OutboxEvent.TRACEPARENT, event.getTraceparent()), Map::get).name("payment-outbox-relay").start();
+        Tracer.SpanInScope scope = tracer.withSpan(span);
+        try {
+            PaymentEvent paymentEvent = new PaymentEvent(event.getProductId(), event.getQuantity(), event.getTransactionId());
+            paymentEvent.setAmount(event.getAmount());
+            return kafkaTemplate.send(event.getTopic(), event.getProductId().toString(), paymentEvent);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            scope.close();
+            if (span != null) {
+                span.end();
+            }
+        }
+    }
+
+    private boolean awaitAck(CompletableFuture<?> future, long deadline) {
+        try {
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void updateByIds(String sql, List<Long> ids) {
+        if (!ids.isEmpty()) {
+            namedParameterJdbcTemplate.update(sql, Map.of("ids", ids));
+        }
+    }
+}
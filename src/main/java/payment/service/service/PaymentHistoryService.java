@@ -0,0 +1,169 @@
+package payment.service.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentPage;
+import payment.service.domain.PaymentQuery;
+import payment.service.repository.PaymentArchive;
+import payment.service.repository.PaymentRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// Payment history for reconciliation: keyset-paginated queries and streamed exports
+@Service
+public class PaymentHistoryService {
+
+    public enum ExportFormat { CSV, NDJSON }
+
+    static final String CSV_HEADER = "transactionId,orderId,customerId,totalAmount,currency,paymentStatus,paymentMode,timestamp";
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentArchive paymentArchive;
+    private final ObjectWriter paymentWriter;
+    private final int maxPageSize;
+
+    public PaymentHistoryService(PaymentRepository paymentRepository,
+                                 PaymentArchive paymentArchive,
+                                 ObjectMapper objectMapper,
+                                 @Value("${payment.history.max-page-size:500}") int maxPageSize) {
+        this.paymentRepository = paymentRepository;
+        this.paymentArchive = paymentArchive;
+        this.paymentWriter = objectMapper.writerFor(Payment.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.maxPageSize = maxPageSize;
+    }
+
+    public PaymentPage findPayments(PaymentQuery query, String cursor, int limit) {
+        if (limit < 1 || limit > maxPageSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + maxPageSize);
+        }
+        LocalDateTime beforeTimestamp = null;
+        UUID beforeTransactionId = null;
+        if (cursor != null) {
+            String[] position = decodeCursor(cursor);
+            beforeTimestamp = LocalDateTime.parse(position[0]);
+            beforeTransactionId = UUID.fromString(position[1]);
+        }
+
+        // One row more than asked for tells whether there is a next page. Newest first: the payment table, then the
+        // archive, which only holds older partitions
+        LocalDateTime boundary = paymentArchive.getBoundary();
+        PaymentQuery hotQuery = hotQuery(query, boundary);
+        List<Payment> payments = new ArrayList<>();
+        if (hotQuery != null && (beforeTimestamp == null || boundary == null || !beforeTimestamp.isBefore(boundary))) {
+            payments.addAll(paymentRepository.findPayments(hotQuery, beforeTimestamp, beforeTransactionId, limit + 1));
+        }
+        if (payments.size() <= limit && boundary != null) {
+            payments.addAll(paymentArchive.findPayments(query, beforeTimestamp, beforeTransactionId, limit + 1 - payments.size()));
+        }
+        if (payments.size() <= limit) {
+            return new PaymentPage(payments, null);
+        }
+        payments = payments.subList(0, limit);
+        return new PaymentPage(payments, encodeCursor(payments.get(limit - 1)));
+    }
+
+    public void export(PaymentQuery query, ExportFormat format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        Consumer<Payment> action = payment -> {
+            try {
+                if (format == ExportFormat.CSV) {
+                    writeCsv(writer, payment);
+                } else {
+                    paymentWriter.writeValue(writer, payment);
+                }
+                writer.write('\n');
+            } catch (IOException e) {
+                // Usually the client went away; ends the query and releases the connection
+                throw new UncheckedIOException(e);
+            }
+        };
+        try {
+            // Oldest first: the archive, then the payment table
+            LocalDateTime boundary = paymentArchive.getBoundary();
+            if (boundary != null) {
+                paymentArchive.forEachPayment(query, action);
+            }
+            PaymentQuery hotQuery = hotQuery(query, boundary);
+            if (hotQuery != null) {
+                paymentRepository.forEachPayment(hotQuery, action);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    // The query restricted to payments not yet archived, null if it cannot match any. Rows of a partition that is
+    // being archived are still in the table for a moment, but are only read from the archive.
+    private static PaymentQuery hotQuery(PaymentQuery query, LocalDateTime boundary) {
+        if (boundary == null || (query.getFrom() != null && !query.getFrom().isBefore(boundary))) {
+            return query;
+        }
+        if (query.getTo() != null && !query.getTo().isAfter(boundary)) {
+            return null;
+        }
+        return new PaymentQuery(query.getCustomerId(), query.getOrderId(), query.getPaymentStatus(), boundary, query.getTo());
+    }
+
+    // All columns are UUIDs, numbers, currency codes, enum names or ISO timestamps, so none needs quoting
+    private void writeCsv(Writer writer, Payment payment) throws IOException {
+        writer.write(payment.getTransactionId().toString());
+        writer.write(',');
+        writer.write(payment.getOrderId().toString());
+        writer.write(',');
+        writer.write(payment.getCustomerId().toString());
+        writer.write(',');
+        writer.write(payment.getTotalAmount().toPlainString());
+        writer.write(',');
+        writer.write(payment.getCurrency());
+        writer.write(',');
+        writer.write(payment.getPaymentStatus() == null ? "" : payment.getPaymentStatus().name());
+        writer.write(',');
+        writer.write(payment.getPaymentMode() == null ? "" : payment.getPaymentMode().name());
+        writer.write(',');
+        writer.write(payment.getTimestamp() == null ? "" : payment.getTimestamp().toString());
+    }
+
+    // The cursor is the position of the last payment on the page, opaque to clients
+    private String encodeCursor(Payment payment) {
+        String position = payment.getTimestamp() + "|" + payment.getTransactionId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            if (position.length == 2) {
+                LocalDateTime.parse(position[0]);
+                UUID.fromString(position[1]);
+                return position;
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // Reported below
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+}
@@ -0,0 +1,23 @@
+package payment.service.service;
+
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.server.ResponseStatusException;
+import payment.service.domain.Payment;
+
+// A processor call that did not succeed, raised once the payment has been decided: FAILED, or still PENDING after a
+// timeout left the outcome unknown. Callers must not fail the payment again.
+public class PaymentProcessingException extends ResponseStatusException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Payment payment;
+
+    public PaymentProcessingException(HttpStatusCode status, String reason, Throwable cause, Payment payment) {
+        super(status, reason, cause);
+        this.payment = payment;
+    }
+
+    public Payment getPayment() {
+        return payment;
+    }
+}
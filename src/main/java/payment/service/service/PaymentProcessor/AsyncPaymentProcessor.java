@@ -0,0 +1,14 @@
+package payment.service.service.PaymentProcessor;
+
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncPaymentProcessor {
+    PaymentMode getPaymentMode();
+
+    CompletableFuture<Payment> processPayment(Payment payment, UUID orderId, UUID productId, UUID customerId, Money totalAmount);
+}
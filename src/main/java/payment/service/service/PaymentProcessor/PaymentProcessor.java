@@ -1,10 +1,13 @@
 package payment.service.service.PaymentProcessor;
 
+import payment.service.domain.Money;
 import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 
 public interface PaymentProcessor {
-    Payment processPayment(Payment payment, UUID orderId, UUID productId, UUID customerId, BigDecimal totalAmount);
-}
\ No newline at end of file
+    PaymentMode getPaymentMode();
+
+    Payment processPayment(Payment payment, UUID orderId, UUID productId, UUID customerId, Money totalAmount);
+}
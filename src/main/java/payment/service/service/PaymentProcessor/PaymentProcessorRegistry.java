@@ -0,0 +1,182 @@
+package payment.service.service.PaymentProcessor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import payment.service.config.ExecutionMode;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// One bulkhead per PaymentMode, so a slow gateway can only exhaust its own threads and queue. Each mode is
+// configured under payment.processor.<mode> (credit-card, wallet, paypal) and falls back to payment.processor.*:
+// max-concurrent processor calls, queue-capacity waiting calls beyond those, and a timeout covering queueing and
+// processing. A full bulkhead fails fast with RejectedExecutionException; on timeout the call is interrupted and
+// the future fails with TimeoutException.
+@Component
+public class PaymentProcessorRegistry {
+
+    private final Map<PaymentMode, Bulkhead> processors = new EnumMap<>(PaymentMode.class);
+
+    public PaymentProcessorRegistry(List<PaymentProcessor> paymentProcessors,
+                                    ExecutionMode executionMode,
+                                    MeterRegistry meterRegistry,
+                                    Environment environment) {
+        for (PaymentProcessor paymentProcessor : paymentProcessors) {
+            PaymentMode mode = paymentProcessor.getPaymentMode();
+            if (processors.containsKey(mode)) {
+                throw new IllegalStateException("More than one payment processor for " + mode);
+            }
+            String prefix = "payment.processor." + mode.name().toLowerCase().replace('_', '-') + ".";
+            int maxConcurrent = environment.getProperty(prefix + "max-concurrent", Integer.class,
+                    environment.getProperty("payment.processor.max-concurrent", Integer.class, 20));
+            int queueCapacity = environment.getProperty(prefix + "queue-capacity", Integer.class,
+                    environment.getProperty("payment.processor.queue-capacity", Integer.class, 100));
+            Duration timeout = DurationStyle.detectAndParse(environment.getProperty(prefix + "timeout",
+                    environment.getProperty("payment.processor.timeout", "PT5S")));
+            processors.put(mode, new Bulkhead(paymentProcessor, maxConcurrent, queueCapacity, timeout, executionMode, meterRegistry));
+        }
+    }
+
+    public AsyncPaymentProcessor get(PaymentMode paymentMode) {
+        AsyncPaymentProcessor processor = processors.get(paymentMode);
+        if (processor == null) {
+            throw new IllegalArgumentException("No payment processor for " + paymentMode);
+        }
+        return processor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        processors.values().forEach(bulkhead -> bulkhead.executor.shutdownNow());
+    }
+
+    private static final class Bulkhead implements AsyncPaymentProcessor {
+
+        private final PaymentProcessor processor;
+        private final Duration timeout;
+        private final int maxConcurrent;
+        private final int capacity;
+        // Calls running or queued, and calls running; the executor itself never rejects
+        private final Semaphore admitted;
+        private final Semaphore running;
+        private final ThreadPoolExecutor executor;
+
+        private final Timer durationTimer;
+        private final Counter rejectedCounter;
+        private final Counter timeoutCounter;
+
+        private Bulkhead(PaymentProcessor processor, int maxConcurrent, int queueCapacity, Duration timeout,
+                         ExecutionMode executionMode, MeterRegistry meterRegistry) {
+            this.processor = processor;
+            this.timeout = timeout;
+            this.maxConcurrent = maxConcurrent;
+            this.capacity = maxConcurrent + queueCapacity;
+            this.admitted = new Semaphore(capacity);
+            this.running = new Semaphore(maxConcurrent);
+            String mode = processor.getPaymentMode().name();
+            String threadName = "payment-processor-" + mode.toLowerCase();
+            // Virtual threads are neither pooled nor queued: each call starts a new one and waits for a running permit
+            this.executor = executionMode.isVirtual()
+                    ? new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), executionMode.threadFactory(threadName))
+                    : new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), executionMode.threadFactory(threadName));
+
+            this.durationTimer = Timer.builder("payment.processor.duration")
+                    .description("Time spent in the payment processor")
+                    .tag("mode", mode)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.rejectedCounter = Counter.builder("payment.processor.rejected").tag("mode", mode).register(meterRegistry);
+            this.timeoutCounter = Counter.builder("payment.processor.timeouts").tag("mode", mode).register(meterRegistry);
+            Gauge.builder("payment.processor.queue.depth", this, Bulkhead::queued).tag("mode", mode).register(meterRegistry);
+        }
+
+        @Override
+        public PaymentMode getPaymentMode() {
+            return processor.getPaymentMode();
+        }
+
+        @Override
+        public CompletableFuture<Payment> processPayment(Payment payment, UUID orderId, UUID productId, UUID customerId, Money totalAmount) {
+            if (!admitted.tryAcquire()) {
+                rejectedCounter.increment();
+                return CompletableFuture.failedFuture(new RejectedExecutionException(getPaymentMode() + " payment processor is saturated"));
+            }
+
+            CompletableFuture<Payment> result = new CompletableFuture<>();
+            FutureTask<Void> task = new FutureTask<>(() -> {
+                run(result, payment, orderId, productId, customerId, totalAmount);
+                return null;
+            }) {
+                @Override
+                protected void done() {
+                    // Also runs when the task is cancelled before it started
+                    admitted.release();
+                }
+            };
+
+            // Timed out or cancelled by the caller: stop waiting for, or interrupt, the processor call
+            result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).whenComplete((processed, failure) -> {
+                if (failure instanceof TimeoutException || failure instanceof CancellationException) {
+                    if (failure instanceof TimeoutException) {
+                        timeoutCounter.increment();
+                    }
+                    task.cancel(true);
+                }
+            });
+
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                task.cancel(false);
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+
+        private void run(CompletableFuture<Payment> result, Payment payment, UUID orderId, UUID productId, UUID customerId, Money totalAmount) {
+            try {
+                running.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                if (!result.isDone()) {
+                    result.complete(durationTimer.recordCallable(() -> processor.processPayment(payment, orderId, productId, customerId, totalAmount)));
+                }
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            } finally {
+                running.release();
+            }
+        }
+
+        // Admitted calls that are not running yet
+        private double queued() {
+            int admittedCalls = capacity - admitted.availablePermits();
+            int runningCalls = maxConcurrent - running.availablePermits();
+            return Math.max(0, admittedCalls - runningCalls);
+        }
+    }
+}
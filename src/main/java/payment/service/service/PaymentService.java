@@ -1,35 +1,55 @@
 package payment.service.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.tracing.TraceContext;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
 import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
-import jakarta.transaction.Transactional;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.server.ResponseStatusException;
 import payment.service.domain.*;
+import payment.service.repository.OutboxEventRepository;
+import payment.service.repository.PaymentArchive;
+import payment.service.repository.PaymentJournal;
+import payment.service.repository.PaymentJournal.EntryType;
 import payment.service.repository.PaymentRepository;
-import payment.service.service.PaymentProcessor.CreditCardPaymentProcessor;
-import payment.service.service.PaymentProcessor.PayPalPaymentProcessor;
-import payment.service.service.PaymentProcessor.PaymentProcessor;
-import payment.service.service.PaymentProcessor.WalletPaymentProcessor;
+import payment.service.repository.PaymentStore;
+import payment.service.service.PaymentProcessor.PaymentProcessorRegistry;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 @Service
 public class PaymentService {
@@ -41,27 +61,87 @@ public class PaymentService {
     private PaymentRepository paymentRepository;
 
     @Autowired
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private PaymentStore paymentStore;
+
+    @Autowired
+    private PaymentArchive paymentArchive;
+
+    @Autowired
+    private PaymentJournal paymentJournal;
+
+    @Autowired
+    private PaymentStatsAggregator paymentStatsAggregator;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
 
     @Autowired
     private RestTemplate restTemplate;
 
     @Autowired
-    private CreditCardPaymentProcessor creditCardPaymentProcessor;
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private StockReservationLedger stockReservationLedger;
+
+    @Autowired
+    private StockValidationBatcher stockValidationBatcher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PaymentProcessorRegistry paymentProcessorRegistry;
 
     @Autowired
-    private WalletPaymentProcessor walletPaymentProcessor;
+    private PaymentVelocityEngine paymentVelocityEngine;
 
     @Autowired
-    private PayPalPaymentProcessor payPalPaymentProcessor;
+    @Qualifier("inventoryConcurrencyLimiter")
+    private AdaptiveConcurrencyLimiter inventoryConcurrencyLimiter;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    // Neither is there when tracing is disabled
+    @Autowired(required = false)
+    private Tracer tracer;
+
+    @Autowired(required = false)
+    private Propagator propagator;
 
-    private final Map<PaymentMode, PaymentProcessor> paymentProcessorMap = new HashMap<>();
+    // Time spent inside the persistence transaction, i.e. how long a pooled connection is held per payment. With the
+    // jdbc store an insert includes the wait for its group commit.
+    private Timer transactionTimer;
+
+    // payment.stage.duration per stage; the processor call is payment.processor.duration per mode and the JWT
+    // filter its own stage, recorded by JwtAuthFilter
+    private Timer validateStockTimer;
+    private Timer createPaymentTimer;
+    private Timer sendPaymentEventTimer;
+    private Timer updatePaymentStatusTimer;
+    private Timer updatePaymentStatusesTimer;
 
     @PostConstruct
     public void init() {
-        paymentProcessorMap.put(PaymentMode.CREDIT_CARD, creditCardPaymentProcessor);
-        paymentProcessorMap.put(PaymentMode.WALLET, walletPaymentProcessor);
-        paymentProcessorMap.put(PaymentMode.PAYPAL, payPalPaymentProcessor);
+        transactionTimer = Timer.builder("payment.transaction.duration")
+                .description("Time a DB connection is held while persisting a payment")
+                .register(meterRegistry);
+        validateStockTimer = stageTimer("validate-stock");
+        createPaymentTimer = stageTimer("create-payment");
+        sendPaymentEventTimer = stageTimer("send-payment-event");
+        updatePaymentStatusTimer = stageTimer("update-payment-status");
+        updatePaymentStatusesTimer = stageTimer("update-payment-statuses");
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder("payment.stage.duration")
+                .description("Time spent in a stage of payment processing")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meterRegistry);
     }
 
 
@@ -74,44 +154,251 @@ public class PaymentService {
     @Value("${inventory.service.endpoint}")
     private String inventoryServiceEndpoint;
 
-    @Transactional
-    public Payment processPayment(UUID orderId, UUID productId, UUID customerId, int quantity, BigDecimal totalAmount, PaymentMode paymentMode) {
-        if (!validateStock(productId, quantity)) {
+    // Not transactional as a whole: the remote stock check and the processor call run without a transaction
+    // (and DB connection) open, only the writes before and after the processor are wrapped in short transactions.
+    public Payment processPayment(UUID orderId, UUID productId, UUID customerId, int quantity, Money totalAmount, PaymentMode paymentMode) {
+        return processPayment(orderId, productId, customerId, quantity, totalAmount, paymentMode, payment -> {});
+    }
+
+    // accepted is called once the payment is stored as PENDING, before it is processed
+    public Payment processPayment(UUID orderId, UUID productId, UUID customerId, int quantity, Money totalAmount, PaymentMode paymentMode,
+                                  Consumer<Payment> accepted) {
+        // Phase 0: in-memory velocity limits of the customer, before any remote call
+        checkVelocity(customerId, totalAmount);
+
+        // Phase 1: stock validation, from a local lease for hot products, otherwise by the inventory service
+        String jwtToken = getJwtTokenFromContext();
+        StockReservationLedger.Reservation reservation = stockReservationLedger.tryReserve(productId, quantity, jwtToken);
+        if (reservation == null && !validateStock(productId, quantity, jwtToken)) {
             throw new RuntimeException("Insufficient Stock");
         }
 
-        Payment payment = createPayment(orderId, customerId, totalAmount);
+        // Phase 2: record the payment as PENDING, run the processor in its mode's bulkhead, then store the result
+        // and the outbox event atomically.
+        // Phase 3, publication to Kafka, is done by PaymentEventRelay once the last transaction has committed.
+        Payment payment = acceptPayment(orderId, customerId, totalAmount, paymentMode, reservation);
+        accepted.accept(payment);
+        return processAccepted(payment, productId, quantity);
+    }
 
-        PaymentProcessor paymentProcessor = paymentProcessorMap.get(paymentMode);
-        payment = paymentProcessor.processPayment(payment, orderId, productId, customerId, totalAmount);
-        sendPaymentEvent(payment, productId, quantity);
+    // In Money.DEFAULT_CURRENCY
+    public Payment processPayment(UUID orderId, UUID productId, UUID customerId, int quantity, BigDecimal totalAmount, PaymentMode paymentMode) {
+        return processPayment(orderId, productId, customerId, quantity, Money.of(totalAmount, Money.DEFAULT_CURRENCY), paymentMode);
+    }
+
+    // Async mode, step 1: records the payment as PENDING so its transactionId can be returned right away.
+    // Not inside a transaction of its own: the store commits the insert, and JdbcPaymentStore does so together
+    // with other payments.
+    // Every change is journaled once it has committed, so PaymentJournal only holds changes that happened.
+    public Payment acceptPayment(UUID orderId, UUID customerId, Money totalAmount, PaymentMode paymentMode) {
+        Payment payment = new Payment(orderId, customerId, totalAmount, PaymentStatus.PENDING);
+        payment.setPaymentMode(paymentMode);
+        Payment saved = createPaymentTimer.record(() -> transactionTimer.record(() -> paymentStore.insert(payment)));
+        paymentJournal.append(EntryType.CREATED, saved);
+        paymentStatsAggregator.created(saved);
+        return saved;
+    }
+
+    // Units taken from a stock lease stay with the payment until its outcome is known, see stockDecided
+    public Payment acceptPayment(UUID orderId, UUID customerId, Money totalAmount, PaymentMode paymentMode,
+                                 StockReservationLedger.Reservation reservation) {
+        Payment payment;
+        try {
+            payment = acceptPayment(orderId, customerId, totalAmount, paymentMode);
+        } catch (RuntimeException e) {
+            stockReservationLedger.giveBack(reservation);
+            throw e;
+        }
+        stockReservationLedger.hold(payment.getTransactionId(), reservation);
         return payment;
     }
 
-    public Optional<Payment> getPaymentDetails(UUID transactionId) {
-        return paymentRepository.findById(transactionId);
+    // Async mode, step 2: the same stock check and processing as processPayment, for an accepted payment
+    public Payment completePayment(Payment payment, UUID productId, int quantity, String jwtToken) {
+        PaymentVelocityEngine.Limit exceeded = exceededVelocityLimit(payment.getCustomerId(), payment.getAmount());
+        if (exceeded != null) {
+            LOGGER.info("Velocity limit {} exceeded for payment {}", exceeded, payment.getTransactionId());
+            return failPayment(payment);
+        }
+        StockReservationLedger.Reservation reservation = stockReservationLedger.tryReserve(productId, quantity, jwtToken);
+        if (reservation == null && !validateStock(productId, quantity, jwtToken)) {
+            LOGGER.info("Insufficient stock for payment {}", payment.getTransactionId());
+            return failPayment(payment);
+        }
+        stockReservationLedger.hold(payment.getTransactionId(), reservation);
+        return processAccepted(payment, productId, quantity);
     }
 
-    private Payment createPayment(UUID orderId, UUID customerId, BigDecimal totalAmount) {
-        Payment payment = new Payment(orderId, customerId, totalAmount, PaymentStatus.PENDING);
-        return paymentRepository.save(payment);
+    public void checkVelocity(UUID customerId, Money totalAmount) {
+        PaymentVelocityEngine.Limit exceeded = exceededVelocityLimit(customerId, totalAmount);
+        if (exceeded != null) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Velocity limit exceeded: " + exceeded);
+        }
+    }
+
+    // Counts the payment against the customer's velocity limits; null when it is within all of them
+    PaymentVelocityEngine.Limit exceededVelocityLimit(UUID customerId, Money totalAmount) {
+        return paymentVelocityEngine.tryRecord(customerId, totalAmount);
+    }
+
+    // Batch counterparts of acceptPayment and recordProcessed: one transaction and JDBC batches per chunk.
+    // reservations are the units leased for the payments, in the same order, null where there are none
+    List<Payment> acceptPayments(List<Payment> payments, List<StockReservationLedger.Reservation> reservations) {
+        payments.forEach(payment -> payment.setPaymentStatus(PaymentStatus.PENDING));
+        List<Payment> saved;
+        try {
+            saved = transactionTimer.record(() -> transactionTemplate.execute(status -> paymentStore.insertAll(payments)));
+        } catch (RuntimeException e) {
+            reservations.forEach(stockReservationLedger::giveBack);
+            throw e;
+        }
+        for (int n = 0; n < saved.size(); n++) {
+            Payment payment = saved.get(n);
+            paymentJournal.append(EntryType.CREATED, payment);
+            paymentStatsAggregator.created(payment);
+            stockReservationLedger.hold(payment.getTransactionId(), reservations.get(n));
+        }
+        return saved;
     }
 
+    // payments are accepted payments carrying their new status
+    void recordProcessedBatch(List<Payment> payments, List<OutboxEvent> events) {
+        Map<UUID, PaymentStatus> statusByTransactionId = new LinkedHashMap<>();
+        payments.forEach(payment -> statusByTransactionId.put(payment.getTransactionId(), payment.getPaymentStatus()));
+        transactionTimer.record(() -> transactionTemplate.executeWithoutResult(status -> {
+            paymentRepository.updatePaymentStatuses(statusByTransactionId);
+            outboxEventRepository.saveAll(events);
+            statusChanged(List.copyOf(statusByTransactionId.keySet()));
+        }));
+        for (Payment payment : payments) {
+            paymentJournal.append(EntryType.PROCESSED, payment.getTransactionId(), payment.getPaymentStatus());
+            paymentStatsAggregator.statusChanged(payment, PaymentStatus.PENDING, payment.getPaymentStatus());
+            stockDecided(payment.getTransactionId(), payment.getPaymentStatus());
+        }
+    }
+
+    OutboxEvent paymentEvent(Payment payment, UUID productId, int quantity) {
+        OutboxEvent event = new OutboxEvent(PAYMENT_SUCCESS_TOPIC, payment.getTransactionId(), productId, quantity, payment.getAmount());
+        event.setTraceparent(traceparent());
+        return event;
+    }
+
+    // The current trace as a W3C traceparent, for PaymentEventRelay to continue; null outside of one
+    private String traceparent() {
+        TraceContext context = tracer == null || propagator == null ? null : tracer.currentTraceContext().context();
+        if (context == null) {
+            return null;
+        }
+        Map<String, String> headers = new HashMap<>();
+        propagator.inject(context, headers, Map::put);
+        return headers.get(OutboxEvent.TRACEPARENT);
+    }
+
+    public Payment failPayment(Payment payment) {
+        PaymentStatus previous = payment.getPaymentStatus();
+        payment.setPaymentStatus(PaymentStatus.FAILED);
+        Payment failed = transactionTimer.record(() -> transactionTemplate.execute(status -> {
+            Payment saved = paymentStore.updateStatus(payment);
+            statusChanged(List.of(saved.getTransactionId()));
+            return saved;
+        }));
+        paymentJournal.append(EntryType.PROCESSED, failed);
+        paymentStatsAggregator.statusChanged(failed, previous, PaymentStatus.FAILED);
+        stockDecided(failed.getTransactionId(), PaymentStatus.FAILED);
+        return failed;
+    }
+
+    private Payment processAccepted(Payment payment, UUID productId, int quantity) {
+        Payment processed;
+        try {
+            processed = runProcessor(payment, productId).join();
+        } catch (CompletionException e) {
+            throw processingFailure(payment, e.getCause());
+        }
+        return recordProcessed(processed, productId, quantity);
+    }
+
+    CompletableFuture<Payment> runProcessor(Payment payment, UUID productId) {
+        return paymentProcessorRegistry.get(payment.getPaymentMode())
+                .processPayment(payment, payment.getOrderId(), productId, payment.getCustomerId(), payment.getAmount());
+    }
+
+    // The payment was accepted as PENDING and carries the processor's outcome
+    Payment recordProcessed(Payment payment, UUID productId, int quantity) {
+        Payment processed = transactionTimer.record(() -> transactionTemplate.execute(status -> {
+            Payment saved = paymentStore.updateStatus(payment);
+            sendPaymentEvent(saved, productId, quantity);
+            statusChanged(List.of(saved.getTransactionId()));
+            return saved;
+        }));
+        paymentJournal.append(EntryType.PROCESSED, processed);
+        paymentStatsAggregator.statusChanged(processed, PaymentStatus.PENDING, processed.getPaymentStatus());
+        stockDecided(processed.getTransactionId(), processed.getPaymentStatus());
+        return processed;
+    }
+
+    // A rejected or failed processor call never charged the customer, so the payment is FAILED. After a timeout the
+    // outcome is unknown and the payment stays PENDING until the status is settled via payment-status events.
+    PaymentProcessingException processingFailure(Payment payment, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if (cause instanceof TimeoutException) {
+            LOGGER.warn("Payment processor timed out for payment {}", payment.getTransactionId());
+            return new PaymentProcessingException(HttpStatus.GATEWAY_TIMEOUT, "Payment processor timed out", cause, payment);
+        }
+        Payment failed = failPayment(payment);
+        if (cause instanceof RejectedExecutionException) {
+            return new PaymentProcessingException(HttpStatus.SERVICE_UNAVAILABLE, cause.getMessage(), cause, failed);
+        }
+        LOGGER.error("Payment processor failed for payment {}: {}", payment.getTransactionId(), cause.getMessage());
+        return new PaymentProcessingException(HttpStatus.INTERNAL_SERVER_ERROR, "Payment processing failed", cause, failed);
+    }
+
+    // From the payment table, or from the archive once the payment's partition has been closed
+    public Optional<Payment> getPaymentDetails(UUID transactionId) {
+        return paymentRepository.findById(transactionId).or(() -> paymentArchive.findById(transactionId));
+    }
+
+    // Records the event in the outbox within the payment transaction, so it is only published if the payment commits
     private void sendPaymentEvent(Payment payment, UUID productId, int quantity) {
-        String paymentEventJson = String.format("{\"productId\":\"%s\",\"quantity\":%d,\"transactionId\":\"%s\"}",
-                productId.toString(), quantity, payment.getTransactionId());
-        kafkaTemplate.send(PAYMENT_SUCCESS_TOPIC, paymentEventJson);
+        sendPaymentEventTimer.record(() -> outboxEventRepository.save(paymentEvent(payment, productId, quantity)));
     }
 
-    private boolean validateStock(UUID productId, int quantity) {
-        String jwtToken = getJwtTokenFromContext();
-        String url = buildInventoryServiceUrl();
+    // Takes the quantity from a stock lease; null when there is none that covers it and hasStockAsync has to ask
+    StockReservationLedger.Reservation reserveStock(UUID productId, int quantity, String jwtToken) {
+        return stockReservationLedger.tryReserve(productId, quantity, jwtToken);
+    }
 
-        HttpHeaders headers = buildHeaders(jwtToken);
-        StockValidationRequest requestBody = new StockValidationRequest(productId, quantity);
-        HttpEntity<StockValidationRequest> entity = new HttpEntity<>(requestBody, headers);
+    // Read-only check with the inventory service. Lets callers with many checks issue them together, so the batcher
+    // can send them as one bulk call
+    CompletableFuture<Boolean> hasStockAsync(UUID productId, int quantity, String jwtToken) {
+        if (stockValidationBatcher.isEnabled()) {
+            return stockValidationBatcher.submit(productId, quantity, jwtToken);
+        }
+        try {
+            return CompletableFuture.completedFuture(validateStock(productId, quantity, jwtToken));
+        } catch (LoadSheddingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private boolean validateStock(UUID productId, int quantity, String jwtToken) {
+        long start = System.nanoTime();
+        try {
+            // Coalesced with concurrent validations into a bulk call when batching is enabled
+            if (stockValidationBatcher.isEnabled()) {
+                return stockValidationBatcher.validate(productId, quantity, jwtToken);
+            }
+
+            String url = buildInventoryServiceUrl();
 
-        return sendStockValidationRequest(url, entity);
+            HttpHeaders headers = buildHeaders(jwtToken);
+            StockValidationRequest requestBody = new StockValidationRequest(productId, quantity);
+            HttpEntity<StockValidationRequest> entity = new HttpEntity<>(requestBody, headers);
+
+            return sendStockValidationRequest(url, entity);
+        } finally {
+            validateStockTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
     private String buildInventoryServiceUrl() {
@@ -125,13 +412,23 @@ public class PaymentService {
         return headers;
     }
 
+    // Within the inventory concurrency limit: when the inventory service slows down, calls over it fail fast with 503
     private boolean sendStockValidationRequest(String url, HttpEntity<StockValidationRequest> entity) {
+        if (!inventoryConcurrencyLimiter.tryAcquire(AdaptiveConcurrencyLimiter.currentPriority())) {
+            throw new LoadSheddingException(inventoryConcurrencyLimiter);
+        }
+        long start = System.nanoTime();
+        boolean dropped = false;
         try {
             ResponseEntity<Boolean> response = restTemplate.exchange(url, HttpMethod.POST, entity, Boolean.class);
             return Boolean.TRUE.equals(response.getBody());
         } catch (Exception e) {
+            // A 4xx answer is no sign of overload
+            dropped = !(e instanceof org.springframework.web.client.HttpClientErrorException);
             handleStockValidationException(e);
             return false;
+        } finally {
+            inventoryConcurrencyLimiter.release(start, dropped);
         }
     }
 
@@ -145,32 +442,100 @@ public class PaymentService {
         }
     }
 
-    @KafkaListener(topics = "payment-status", groupId = "inventory-group")
-    public void listenForPaymentStatus(String paymentEventJson) {
-        LOGGER.info("Received payment status update JSON: {}", paymentEventJson);
+    // Record-at-a-time listener, only started when payment.status-listener.mode is "record".
+    // Events arrive decoded by PaymentEventDeserializer, JSON or binary.
+    @KafkaListener(id = "paymentStatusListener", topics = "payment-status", groupId = "inventory-group",
+            containerFactory = "paymentEventKafkaListenerContainerFactory",
+            autoStartup = "#{'${payment.status-listener.mode:batch}' == 'record'}")
+    public void listenForPaymentStatus(PaymentEvent paymentEvent) {
+        LOGGER.info("Received payment status update: {}", paymentEvent);
 
         try {
-            // Deserialize the JSON string to PaymentEvent
-            ObjectMapper objectMapper = new ObjectMapper();
-            PaymentEvent paymentEvent = objectMapper.readValue(paymentEventJson, PaymentEvent.class);
-
             // Process the payment status
-            updatePaymentStatus(paymentEvent);
+            updatePaymentStatusTimer.record(() -> updatePaymentStatus(paymentEvent));
         } catch (Exception e) {
-            LOGGER.error("Error deserializing PaymentEvent from JSON: {}", e.getMessage());
+            LOGGER.error("Error processing PaymentEvent: {}", e.getMessage());
             throw new RuntimeException("Error processing payment status", e);
         }
     }
 
+    // Batch listener: one poll is applied as a single bulk update and its offsets committed together
+    @KafkaListener(id = "paymentStatusBatchListener", topics = "payment-status", groupId = "inventory-group",
+            containerFactory = "batchKafkaListenerContainerFactory",
+            autoStartup = "#{'${payment.status-listener.mode:batch}' == 'batch'}",
+            properties = "max.poll.records=${payment.status-listener.batch-size:500}")
+    public void listenForPaymentStatusBatch(List<PaymentEvent> paymentEvents) {
+        LOGGER.info("Received {} payment status updates", paymentEvents.size());
+
+        // Later events for the same transaction supersede earlier ones within the batch
+        Map<UUID, PaymentStatus> latestStatus = new LinkedHashMap<>();
+        for (PaymentEvent paymentEvent : paymentEvents) {
+            // Malformed records arrive as null and must not block the rest of the batch from being committed
+            if (paymentEvent == null) {
+                LOGGER.error("Skipping malformed PaymentEvent");
+                continue;
+            }
+            if (paymentEvent.getTransactionId() != null && paymentEvent.getPaymentStatus() != null) {
+                latestStatus.put(paymentEvent.getTransactionId(), paymentEvent.getPaymentStatus());
+            }
+        }
 
+        if (!latestStatus.isEmpty()) {
+            updatePaymentStatusesTimer.record(() -> updatePaymentStatuses(latestStatus));
+        }
+    }
+
+
+    // The rows are read and locked first, so PaymentStatsAggregator knows the status each update replaces
     public void updatePaymentStatus(PaymentEvent paymentEvent) {
         LOGGER.info("Updated payment status for Product ID: {}, Status: {}", paymentEvent.getProductId(), paymentEvent.getPaymentStatus());
-        Payment payment = paymentRepository.findById(paymentEvent.getTransactionId()).orElseThrow();
-        payment.setPaymentStatus(paymentEvent.getPaymentStatus());
-        paymentRepository.save(payment);
+        UUID transactionId = paymentEvent.getTransactionId();
+        Payment before = transactionTemplate.execute(status -> {
+            Payment current = paymentRepository.findForUpdate(List.of(transactionId)).stream().findFirst()
+                    .orElseThrow(() -> new NoSuchElementException("No payment " + transactionId));
+            paymentStore.updateStatus(transactionId, paymentEvent.getPaymentStatus());
+            statusChanged(List.of(transactionId));
+            return current;
+        });
+        paymentJournal.append(EntryType.STATUS_UPDATED, transactionId, paymentEvent.getPaymentStatus());
+        paymentStatsAggregator.statusChanged(before, before.getPaymentStatus(), paymentEvent.getPaymentStatus());
+        stockDecided(transactionId, paymentEvent.getPaymentStatus());
+    }
+
+    public void updatePaymentStatuses(Map<UUID, PaymentStatus> statusByTransactionId) {
+        List<Payment> before = transactionTemplate.execute(status -> {
+            List<Payment> current = paymentRepository.findForUpdate(statusByTransactionId.keySet());
+            paymentRepository.updatePaymentStatuses(statusByTransactionId);
+            statusChanged(List.copyOf(statusByTransactionId.keySet()));
+            return current;
+        });
+        if (before.size() < statusByTransactionId.size()) {
+            LOGGER.warn("Updated {} of {} payments, the others were not found", before.size(), statusByTransactionId.size());
+        }
+        for (Payment payment : before) {
+            PaymentStatus status = statusByTransactionId.get(payment.getTransactionId());
+            paymentJournal.append(EntryType.STATUS_UPDATED, payment.getTransactionId(), status);
+            paymentStatsAggregator.statusChanged(payment, payment.getPaymentStatus(), status);
+            stockDecided(payment.getTransactionId(), status);
+        }
+    }
+
+    // Units a payment took from a stock lease are settled by the inventory service once it has succeeded and given
+    // back once it has failed; a PENDING payment keeps them
+    private void stockDecided(UUID transactionId, PaymentStatus status) {
+        if (status == PaymentStatus.FAILED) {
+            stockReservationLedger.giveBack(transactionId);
+        } else if (status == PaymentStatus.SUCCESS) {
+            stockReservationLedger.settled(transactionId);
+        }
+    }
+
+    // Lets PaymentDetailsCache drop the old details once the change has committed
+    private void statusChanged(Collection<UUID> transactionIds) {
+        eventPublisher.publishEvent(new PaymentStatusChangedEvent(transactionIds));
     }
 
-    private String getJwtTokenFromContext() {
+    String getJwtTokenFromContext() {
         HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.getRequestAttributes()).getRequest();
         String jwtToken = request.getHeader("Authorization");
 
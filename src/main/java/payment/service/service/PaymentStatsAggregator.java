@@ -0,0 +1,255 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatsBucket;
+import payment.service.domain.PaymentStatus;
+import payment.service.repository.PaymentArchive;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Payment counts and amounts per hour of Payment.timestamp, mode, status and currency, kept up to date as payments
+// are created and change status instead of grouping the payment table for every dashboard. A change adds to striped
+// LongAdders in memory; every checkpoint-interval what has accumulated is added to the payment_stats rollup, so the
+// rollup holds the sum of what every node has seen. GET /payment/stats reads the rollup rows of the hours asked for
+// and adds what this node has not checkpointed yet, so it costs one row per bucket whatever the number of payments.
+// Changes not yet checkpointed when a node crashes are lost; POST /payment/stats/rebuild, or rebuild-on-startup when a
+// single node runs, recomputes the rollup from the payment table with one GROUP BY. Hours before the archive boundary
+// keep their rows, archived payments being final.
+@Component
+@DependsOn("entityManagerFactory") // payment_stats is created by Hibernate
+public class PaymentStatsAggregator {
+
+    private static final Logger LOGGER = LogManager.getLogger(PaymentStatsAggregator.class);
+
+    private static final String SELECT_SQL = "SELECT bucket_hour, payment_mode, payment_status, currency, payment_count, total_amount_minor "
+            + "FROM payment_stats WHERE bucket_hour >= ? AND bucket_hour < ?";
+    private static final String ADD_SQL = "MERGE INTO payment_stats s USING (SELECT CAST(? AS TIMESTAMP) bucket_hour, CAST(? AS VARCHAR(16)) payment_mode, "
+            + "CAST(? AS VARCHAR(16)) payment_status, CAST(? AS VARCHAR(3)) currency, CAST(? AS BIGINT) payment_count, CAST(? AS BIGINT) total_amount_minor) d "
+            + "ON s.bucket_hour = d.bucket_hour AND s.payment_mode = d.payment_mode AND s.payment_status = d.payment_status AND s.currency = d.currency "
+            + "WHEN MATCHED THEN UPDATE SET payment_count = s.payment_count + d.payment_count, total_amount_minor = s.total_amount_minor + d.total_amount_minor "
+            + "WHEN NOT MATCHED THEN INSERT (bucket_hour, payment_mode, payment_status, currency, payment_count, total_amount_minor) "
+            + "VALUES (d.bucket_hour, d.payment_mode, d.payment_status, d.currency, d.payment_count, d.total_amount_minor)";
+    private static final String DELETE_SQL = "DELETE FROM payment_stats WHERE bucket_hour >= ?";
+    // Payments without a mode or status have no bucket, as in the incremental updates
+    private static final String REBUILD_SQL = "INSERT INTO payment_stats (bucket_hour, payment_mode, payment_status, currency, payment_count, total_amount_minor) "
+            + "SELECT DATE_TRUNC('HOUR', timestamp), payment_mode, payment_status, currency, COUNT(*), SUM(total_amount_minor) FROM payment "
+            + "WHERE timestamp >= ? AND payment_mode IS NOT NULL AND payment_status IS NOT NULL "
+            + "GROUP BY DATE_TRUNC('HOUR', timestamp), payment_mode, payment_status, currency";
+
+    private static final Comparator<Bucket> BUCKET_ORDER = Comparator.comparing(Bucket::hour)
+            .thenComparing(Bucket::mode)
+            .thenComparing(Bucket::status)
+            .thenComparing(Bucket::currency);
+
+    private record Bucket(LocalDateTime hour, PaymentMode mode, PaymentStatus status, String currency) {
+    }
+
+    private static final class Totals {
+        final LongAdder count = new LongAdder();
+        final LongAdder amountMinor = new LongAdder();
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentArchive paymentArchive;
+    private final boolean rebuildOnStartup;
+    private final Duration maxRange;
+    private final Timer checkpointTimer;
+
+    private volatile Map<Bucket, Totals> current = new ConcurrentHashMap<>();
+    // The map replaced by the last checkpoint, drained once more by the next one for changes that raced the swap.
+    // Guarded by rollupLock: reads of the rollup share it, so none sees a checkpoint drained but not yet committed,
+    // while checkpoints and rebuilds take it exclusively.
+    private Map<Bucket, Totals> previous = Map.of();
+    private final ReadWriteLock rollupLock = new ReentrantReadWriteLock();
+
+    public PaymentStatsAggregator(JdbcTemplate jdbcTemplate,
+                                  TransactionTemplate transactionTemplate,
+                                  PaymentArchive paymentArchive,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${payment.stats.rebuild-on-startup:false}") boolean rebuildOnStartup,
+                                  @Value("${payment.stats.max-range:P31D}") Duration maxRange) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.paymentArchive = paymentArchive;
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.maxRange = maxRange;
+        this.checkpointTimer = Timer.builder("payment.stats.checkpoint")
+                .description("Time to add the accumulated payment stats to the rollup")
+                .register(meterRegistry);
+    }
+
+    // Before the Kafka listeners and the web server start, so no change of this node is made while the rollup is rebuilt
+    @PostConstruct
+    public void init() {
+        if (rebuildOnStartup) {
+            rebuild();
+        }
+    }
+
+    public void created(Payment payment) {
+        add(payment, payment.getPaymentStatus(), 1);
+    }
+
+    public void statusChanged(Payment payment, PaymentStatus from, PaymentStatus to) {
+        if (from != to) {
+            add(payment, from, -1);
+            add(payment, to, 1);
+        }
+    }
+
+    private void add(Payment payment, PaymentStatus status, int sign) {
+        if (payment.getTimestamp() == null || payment.getPaymentMode() == null || status == null || payment.getAmount() == null) {
+            return;
+        }
+        Bucket bucket = new Bucket(payment.getTimestamp().truncatedTo(ChronoUnit.HOURS), payment.getPaymentMode(), status,
+                payment.getAmount().currency().getCurrencyCode());
+        Totals totals = current.computeIfAbsent(bucket, b -> new Totals());
+        totals.count.add(sign);
+        totals.amountMinor.add(sign * payment.getAmount().minorUnits());
+    }
+
+    // Buckets of the hours from from (inclusive) to to (exclusive), oldest first; empty buckets are left out
+    public List<PaymentStatsBucket> findStats(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime start = from.truncatedTo(ChronoUnit.HOURS);
+        if (!start.isBefore(to) || Duration.between(start, to).compareTo(maxRange) > 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must be before to and at most " + maxRange + " apart");
+        }
+        Map<Bucket, long[]> totals = new TreeMap<>(BUCKET_ORDER);
+        rollupLock.readLock().lock();
+        try {
+            readRollup(start, to, totals);
+        } finally {
+            rollupLock.readLock().unlock();
+        }
+        List<PaymentStatsBucket> stats = new ArrayList<>(totals.size());
+        totals.forEach((bucket, sums) -> {
+            if (sums[0] != 0 || sums[1] != 0) {
+                stats.add(new PaymentStatsBucket(bucket.hour(), bucket.mode(), bucket.status(), bucket.currency(), sums[0], sums[1]));
+            }
+        });
+        return stats;
+    }
+
+    private void readRollup(LocalDateTime start, LocalDateTime to, Map<Bucket, long[]> totals) {
+        jdbcTemplate.query(SELECT_SQL, rs -> {
+            Bucket bucket = new Bucket(rs.getTimestamp("bucket_hour").toLocalDateTime(), PaymentMode.valueOf(rs.getString("payment_mode")),
+                    PaymentStatus.valueOf(rs.getString("payment_status")), rs.getString("currency"));
+            totals.put(bucket, new long[]{rs.getLong("payment_count"), rs.getLong("total_amount_minor")});
+        }, Timestamp.valueOf(start), Timestamp.valueOf(to));
+        for (Map<Bucket, Totals> pending : List.of(previous, current)) {
+            pending.forEach((bucket, pendingTotals) -> {
+                if (!bucket.hour().isBefore(start) && bucket.hour().isBefore(to)) {
+                    long[] sums = totals.computeIfAbsent(bucket, b -> new long[2]);
+                    sums[0] += pendingTotals.count.sum();
+                    sums[1] += pendingTotals.amountMinor.sum();
+                }
+            });
+        }
+    }
+
+    // Adds what has accumulated since the last checkpoint to the rollup. The LongAdders are drained with
+    // sumThenReset, which loses no concurrent addition; if the rollup cannot be written the amounts are put back.
+    @Scheduled(fixedDelayString = "${payment.stats.checkpoint-interval:PT1M}")
+    public void checkpoint() {
+        rollupLock.writeLock().lock();
+        try {
+            addToRollup();
+        } finally {
+            rollupLock.writeLock().unlock();
+        }
+    }
+
+    private void addToRollup() {
+        Map<Bucket, Totals> swapped = current;
+        current = new ConcurrentHashMap<>();
+        Map<Bucket, long[]> deltas = new HashMap<>();
+        drain(previous, deltas);
+        drain(swapped, deltas);
+        previous = swapped;
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(deltas.size());
+        deltas.forEach((bucket, sums) -> rows.add(new Object[]{Timestamp.valueOf(bucket.hour()), bucket.mode().name(),
+                bucket.status().name(), bucket.currency(), sums[0], sums[1]}));
+        try {
+            checkpointTimer.record(() -> transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(ADD_SQL, rows)));
+        } catch (RuntimeException e) {
+            LOGGER.error("Cannot checkpoint payment stats, keeping {} buckets for the next checkpoint: {}", deltas.size(), e.getMessage());
+            deltas.forEach((bucket, sums) -> {
+                Totals totals = current.computeIfAbsent(bucket, b -> new Totals());
+                totals.count.add(sums[0]);
+                totals.amountMinor.add(sums[1]);
+            });
+        }
+    }
+
+    // Replaces the rollup rows of every hour still in the payment table by its GROUP BY, dropping what is in memory.
+    // Changes other nodes have not checkpointed yet are counted twice once they are, so with several nodes this is an
+    // admin action for after a crash, run while the others are stopped or idle.
+    public void rebuild() {
+        LocalDateTime boundary = paymentArchive.getBoundary();
+        Timestamp from = Timestamp.valueOf(boundary == null ? LocalDateTime.of(1970, 1, 1, 0, 0) : boundary);
+        long start = System.nanoTime();
+        rollupLock.writeLock().lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update(DELETE_SQL, from);
+                jdbcTemplate.update(REBUILD_SQL, from);
+            });
+            current = new ConcurrentHashMap<>();
+            previous = Map.of();
+        } finally {
+            rollupLock.writeLock().unlock();
+        }
+        LOGGER.info("Rebuilt payment stats from {} in {} ms", from, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // The second checkpoint drains the map the first one swapped out once more
+    @PreDestroy
+    public void shutdown() {
+        checkpoint();
+        checkpoint();
+    }
+
+    private static void drain(Map<Bucket, Totals> pending, Map<Bucket, long[]> deltas) {
+        pending.forEach((bucket, totals) -> {
+            long count = totals.count.sumThenReset();
+            long amountMinor = totals.amountMinor.sumThenReset();
+            if (count != 0 || amountMinor != 0) {
+                long[] sums = deltas.computeIfAbsent(bucket, b -> new long[2]);
+                sums[0] += count;
+                sums[1] += amountMinor;
+            }
+        });
+    }
+}
@@ -0,0 +1,361 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import payment.service.domain.Money;
+
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+// Per-customer velocity limits (payments and amount per minute and per hour), checked in memory before a payment
+// reaches the stock check. A window slides by one bucket width, a sixth of its length: its ring holds the current,
+// partly elapsed bucket and the BUCKETS full ones before it, so it covers between its length and a bucket more, and
+// never lets more than the limit through in any span of its length. Customers are spread over striped
+// open-addressing tables on primitive arrays, ~140 bytes and no object per customer, and a check locks one stripe.
+// Tables grow up to max-customers, beyond that a customer among the least recently seen of the stripe is dropped;
+// customers idle for longer than the hour window covers are swept. Payments count as soon as they pass the check,
+// whatever their outcome, batch items then rejected for stock included: like a declined card, an attempt on a
+// product that is out of stock is still an attempt.
+@Component
+public class PaymentVelocityEngine {
+
+    public enum Limit {
+        COUNT_PER_MINUTE, AMOUNT_PER_MINUTE, COUNT_PER_HOUR, AMOUNT_PER_HOUR
+    }
+
+    static final int BUCKETS = 6;
+    static final int MINUTE_BUCKET_SECONDS = 60 / BUCKETS;
+    static final int HOUR_BUCKET_SECONDS = 3600 / BUCKETS;
+    // The current bucket and the BUCKETS before it
+    static final int SLOTS = BUCKETS + 1;
+
+    private static final int STRIPES = 64;
+    private static final int INITIAL_STRIPE_CAPACITY = 256;
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final boolean enabled;
+    private final Currency currency;
+    private final int maxCountPerMinute;
+    private final long maxAmountPerMinute;
+    private final int maxCountPerHour;
+    private final long maxAmountPerHour;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final Counter allowedCounter;
+    private final Counter[] exceededCounters = new Counter[Limit.values().length];
+    private final Counter idleEvictionCounter;
+    private final Counter capacityEvictionCounter;
+
+    @Autowired
+    public PaymentVelocityEngine(MeterRegistry meterRegistry,
+                                 @Value("${payment.velocity.enabled:true}") boolean enabled,
+                                 @Value("${payment.velocity.currency:USD}") Currency currency,
+                                 @Value("${payment.velocity.max-count-per-minute:10}") int maxCountPerMinute,
+                                 @Value("${payment.velocity.max-amount-per-minute:10000.00}") String maxAmountPerMinute,
+                                 @Value("${payment.velocity.max-count-per-hour:100}") int maxCountPerHour,
+                                 @Value("${payment.velocity.max-amount-per-hour:50000.00}") String maxAmountPerHour,
+                                 @Value("${payment.velocity.max-customers:1000000}") int maxCustomers) {
+        this(meterRegistry, enabled, currency, maxCountPerMinute, Money.parse(maxAmountPerMinute, currency),
+                maxCountPerHour, Money.parse(maxAmountPerHour, currency), maxCustomers, System::nanoTime);
+    }
+
+    PaymentVelocityEngine(MeterRegistry meterRegistry, boolean enabled, Currency currency,
+                          int maxCountPerMinute, Money maxAmountPerMinute, int maxCountPerHour, Money maxAmountPerHour,
+                          int maxCustomers, LongSupplier nanoClock) {
+        this.enabled = enabled;
+        this.currency = currency;
+        // 0 disables a limit
+        this.maxCountPerMinute = maxCountPerMinute > 0 ? maxCountPerMinute : Integer.MAX_VALUE;
+        this.maxAmountPerMinute = maxAmountPerMinute.isPositive() ? maxAmountPerMinute.minorUnits() : Long.MAX_VALUE;
+        this.maxCountPerHour = maxCountPerHour > 0 ? maxCountPerHour : Integer.MAX_VALUE;
+        this.maxAmountPerHour = maxAmountPerHour.isPositive() ? maxAmountPerHour.minorUnits() : Long.MAX_VALUE;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+
+        int stripeCapacity = Math.max(1, (maxCustomers + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+
+        this.allowedCounter = Counter.builder("payment.velocity.checks").tag("result", "allowed").register(meterRegistry);
+        for (Limit limit : Limit.values()) {
+            exceededCounters[limit.ordinal()] = Counter.builder("payment.velocity.checks")
+                    .tag("result", limit.name().toLowerCase()).register(meterRegistry);
+        }
+        this.idleEvictionCounter = Counter.builder("payment.velocity.evictions").tag("reason", "idle").register(meterRegistry);
+        this.capacityEvictionCounter = Counter.builder("payment.velocity.evictions").tag("reason", "capacity").register(meterRegistry);
+        Gauge.builder("payment.velocity.customers", this, PaymentVelocityEngine::size).register(meterRegistry);
+    }
+
+    // Records the payment against the customer's windows, unless that would exceed a limit, which is returned.
+    // Amounts in other currencies than the configured one only count towards the count limits.
+    public Limit tryRecord(UUID customerId, Money amount) {
+        if (!enabled || customerId == null) {
+            return null;
+        }
+        long hi = customerId.getMostSignificantBits();
+        long lo = customerId.getLeastSignificantBits();
+        long hash = hash(hi, lo);
+        long minorUnits = amount != null && amount.currency().equals(currency) ? Math.max(0, amount.minorUnits()) : 0;
+
+        Stripe stripe = stripes[(int) hash & (STRIPES - 1)];
+        Limit exceeded;
+        synchronized (stripe) {
+            exceeded = stripe.tryRecord(hi, lo, (int) (hash >>> 32), now(), minorUnits);
+        }
+        if (exceeded == null) {
+            allowedCounter.increment();
+        } else {
+            exceededCounters[exceeded.ordinal()].increment();
+        }
+        return exceeded;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.velocity.sweep-interval:PT1M}")
+    public void evictIdle() {
+        int now = now();
+        for (Stripe stripe : stripes) {
+            int evicted;
+            synchronized (stripe) {
+                evicted = stripe.evictIdle(now);
+            }
+            idleEvictionCounter.increment(evicted);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    private int now() {
+        return (int) ((nanoClock.getAsLong() - startNanos) / 1_000_000_000L);
+    }
+
+    private static long hash(long hi, long lo) {
+        long hash = (hi ^ Long.rotateLeft(lo, 32)) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    // Customers of one stripe. Each customer is a record of STRIDE longs in one array (key, last seen second, then
+    // the minute and hour buckets), kept dense in [0, size) and found through a linear-probing index of slot + 1
+    // (0 is empty) at most half full. A bucket packs the payment count above the amount in minor units, both
+    // saturating, so a check touches two or three adjacent cache lines of the record.
+    private final class Stripe {
+
+        private static final int KEY_HI = 0;
+        private static final int KEY_LO = 1;
+        private static final int LAST_SEEN = 2;
+        private static final int MINUTE_BUCKETS = 3;
+        private static final int HOUR_BUCKETS = MINUTE_BUCKETS + SLOTS;
+        private static final int STRIDE = HOUR_BUCKETS + SLOTS;
+
+        private static final int COUNT_SHIFT = 44;
+        private static final long AMOUNT_MASK = (1L << COUNT_SHIFT) - 1;
+        private static final long MAX_COUNT = (1L << (64 - COUNT_SHIFT - 1)) - 1;
+
+        private final int maxCapacity;
+
+        private int size;
+        private int capacity;
+        private int[] index;
+        private long[] records;
+
+        Stripe(int maxCapacity) {
+            this.maxCapacity = maxCapacity;
+            allocate(Math.min(INITIAL_STRIPE_CAPACITY, maxCapacity));
+        }
+
+        Limit tryRecord(long hi, long lo, int hash, int now, long minorUnits) {
+            int slot = find(hi, lo, hash);
+            if (slot < 0) {
+                slot = insert(hi, lo, hash, now);
+            }
+            int record = slot * STRIDE;
+            roll(record, now);
+
+            long minuteCount = 0;
+            long minuteAmount = 0;
+            long hourCount = 0;
+            long hourAmount = 0;
+            for (int b = 0; b < SLOTS; b++) {
+                long minute = records[record + MINUTE_BUCKETS + b];
+                long hour = records[record + HOUR_BUCKETS + b];
+                minuteCount += minute >>> COUNT_SHIFT;
+                minuteAmount += minute & AMOUNT_MASK;
+                hourCount += hour >>> COUNT_SHIFT;
+                hourAmount += hour & AMOUNT_MASK;
+            }
+            if (minuteCount >= maxCountPerMinute) {
+                return Limit.COUNT_PER_MINUTE;
+            }
+            if (minorUnits > maxAmountPerMinute - Math.min(minuteAmount, maxAmountPerMinute)) {
+                return Limit.AMOUNT_PER_MINUTE;
+            }
+            if (hourCount >= maxCountPerHour) {
+                return Limit.COUNT_PER_HOUR;
+            }
+            if (minorUnits > maxAmountPerHour - Math.min(hourAmount, maxAmountPerHour)) {
+                return Limit.AMOUNT_PER_HOUR;
+            }
+
+            add(record + MINUTE_BUCKETS + Math.floorMod(now / MINUTE_BUCKET_SECONDS, SLOTS), minorUnits);
+            add(record + HOUR_BUCKETS + Math.floorMod(now / HOUR_BUCKET_SECONDS, SLOTS), minorUnits);
+            return null;
+        }
+
+        private void add(int bucket, long minorUnits) {
+            long value = records[bucket];
+            long count = Math.min((value >>> COUNT_SHIFT) + 1, MAX_COUNT);
+            long amount = Math.min((value & AMOUNT_MASK) + Math.min(minorUnits, AMOUNT_MASK), AMOUNT_MASK);
+            records[bucket] = count << COUNT_SHIFT | amount;
+        }
+
+        // Clears the buckets whose time has passed since the customer was last seen
+        private void roll(int record, int now) {
+            int last = (int) records[record + LAST_SEEN];
+            clear(record + MINUTE_BUCKETS, last / MINUTE_BUCKET_SECONDS, now / MINUTE_BUCKET_SECONDS);
+            clear(record + HOUR_BUCKETS, last / HOUR_BUCKET_SECONDS, now / HOUR_BUCKET_SECONDS);
+            records[record + LAST_SEEN] = now;
+        }
+
+        private void clear(int buckets, int lastEpoch, int epoch) {
+            int expired = Math.min(epoch - lastEpoch, SLOTS);
+            for (int e = epoch - expired + 1; e <= epoch; e++) {
+                records[buckets + Math.floorMod(e, SLOTS)] = 0;
+            }
+        }
+
+        int evictIdle(int now) {
+            int evicted = 0;
+            for (int slot = size - 1; slot >= 0; slot--) {
+                // Every bucket of both windows has expired by then
+                if (now - (int) records[slot * STRIDE + LAST_SEEN] >= SLOTS * HOUR_BUCKET_SECONDS) {
+                    remove(slot);
+                    evicted++;
+                }
+            }
+            return evicted;
+        }
+
+        private int find(long hi, long lo, int hash) {
+            int mask = index.length - 1;
+            for (int pos = hash & mask; ; pos = (pos + 1) & mask) {
+                int entry = index[pos];
+                if (entry == 0) {
+                    return -1;
+                }
+                int record = (entry - 1) * STRIDE;
+                if (records[record + KEY_HI] == hi && records[record + KEY_LO] == lo) {
+                    return entry - 1;
+                }
+            }
+        }
+
+        private int insert(long hi, long lo, int hash, int now) {
+            if (size == capacity) {
+                if (capacity < maxCapacity) {
+                    allocate((int) Math.min((long) capacity * 2, maxCapacity));
+                } else {
+                    remove(leastRecentlySeen());
+                    capacityEvictionCounter.increment();
+                }
+            }
+            int slot = size++;
+            int record = slot * STRIDE;
+            Arrays.fill(records, record, record + STRIDE, 0);
+            records[record + KEY_HI] = hi;
+            records[record + KEY_LO] = lo;
+            records[record + LAST_SEEN] = now;
+            index[freePosition(hash)] = slot + 1;
+            return slot;
+        }
+
+        private int freePosition(int hash) {
+            int mask = index.length - 1;
+            int pos = hash & mask;
+            while (index[pos] != 0) {
+                pos = (pos + 1) & mask;
+            }
+            return pos;
+        }
+
+        private int home(int slot) {
+            int record = slot * STRIDE;
+            return (int) (hash(records[record + KEY_HI], records[record + KEY_LO]) >>> 32) & (index.length - 1);
+        }
+
+        // Approximated by the oldest of a few sampled customers, so a full stripe is not scanned on every insert
+        private int leastRecentlySeen() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int oldest = random.nextInt(size);
+            for (int i = 1; i < EVICTION_SAMPLES; i++) {
+                int slot = random.nextInt(size);
+                if ((int) records[slot * STRIDE + LAST_SEEN] - (int) records[oldest * STRIDE + LAST_SEEN] < 0) {
+                    oldest = slot;
+                }
+            }
+            return oldest;
+        }
+
+        // Removes the slot from the index, with backward-shift deletion, and moves the last slot into its place
+        private void remove(int slot) {
+            int mask = index.length - 1;
+            int gap = position(slot);
+            for (int pos = (gap + 1) & mask; index[pos] != 0; pos = (pos + 1) & mask) {
+                int home = home(index[pos] - 1);
+                if (((pos - home) & mask) >= ((pos - gap) & mask)) {
+                    index[gap] = index[pos];
+                    gap = pos;
+                }
+            }
+            index[gap] = 0;
+
+            int last = --size;
+            if (slot != last) {
+                index[position(last)] = slot + 1;
+                System.arraycopy(records, last * STRIDE, records, slot * STRIDE, STRIDE);
+            }
+        }
+
+        private int position(int slot) {
+            int mask = index.length - 1;
+            int pos = home(slot);
+            while (index[pos] != slot + 1) {
+                pos = (pos + 1) & mask;
+            }
+            return pos;
+        }
+
+        // Sizes the arrays for the capacity, keeping the current records
+        private void allocate(int capacity) {
+            long[] current = records;
+            this.capacity = capacity;
+            records = new long[capacity * STRIDE];
+            // The smallest power of two at least twice the capacity
+            index = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+            if (current != null) {
+                System.arraycopy(current, 0, records, 0, size * STRIDE);
+                for (int slot = 0; slot < size; slot++) {
+                    index[freePosition(home(slot))] = slot + 1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.StockValidationRequest;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Reactive variant of PaymentService.processPayment. The inventory call goes through the load-balanced WebClient
+// and no thread waits on it; the JPA transactions, which have to block, run on a scheduler bounded to the
+// connection pool size. Cancelling the returned Mono (client gone, timeout) before the payment is stored aborts
+// an in-flight inventory request and gives back stock taken from a lease. Once the payment is stored, work that
+// has started runs to completion regardless: a payment whose processor has not been called yet is marked FAILED
+// instead, one whose processor has been called is processed and recorded as usual.
+@Service
+public class ReactivePaymentService {
+
+    private static final Logger LOGGER = LogManager.getLogger(ReactivePaymentService.class);
+
+    private final PaymentService paymentService;
+    private final StockReservationLedger stockReservationLedger;
+    private final StockValidationBatcher stockValidationBatcher;
+    private final WebClient inventoryClient;
+    private final String inventoryServiceEndpoint;
+    private final Duration inventoryTimeout;
+    private final Duration timeout;
+    private final Scheduler persistenceScheduler;
+
+    private final Counter cancelledCounter;
+
+    public ReactivePaymentService(PaymentService paymentService,
+                                  StockReservationLedger stockReservationLedger,
+                                  StockValidationBatcher stockValidationBatcher,
+                                  @LoadBalanced WebClient.Builder webClientBuilder,
+                                  MeterRegistry meterRegistry,
+                                  @Value("http://${inventory.service.name}") String inventoryBaseUrl,
+                                  @Value("${inventory.service.endpoint}") String inventoryServiceEndpoint,
+                                  @Value("${inventory.service.read-timeout:PT2S}") Duration inventoryTimeout,
+                                  @Value("${payment.reactive.timeout:PT5S}") Duration timeout,
+                                  @Value("${payment.reactive.persistence-threads:10}") int persistenceThreads,
+                                  @Value("${payment.reactive.persistence-queue:1000}") int persistenceQueue) {
+        this.paymentService = paymentService;
+        this.stockReservationLedger = stockReservationLedger;
+        this.stockValidationBatcher = stockValidationBatcher;
+        this.inventoryClient = webClientBuilder.baseUrl(inventoryBaseUrl).build();
+        this.inventoryServiceEndpoint = inventoryServiceEndpoint;
+        this.inventoryTimeout = inventoryTimeout;
+        this.timeout = timeout;
+        // More threads than pooled connections would only queue inside Hikari
+        this.persistenceScheduler = Schedulers.newBoundedElastic(persistenceThreads, persistenceQueue, "payment-persistence");
+        this.cancelledCounter = Counter.builder("payment.reactive.cancelled").register(meterRegistry);
+    }
+
+    public Mono<Payment> processPayment(UUID orderId, UUID productId, UUID customerId, int quantity, Money totalAmount,
+                                        PaymentMode paymentMode, String jwtToken) {
+        // Whoever sets it first decides a stored payment's fate: the processor call or the cancellation
+        AtomicBoolean decided = new AtomicBoolean();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicReference<Payment> accepted = new AtomicReference<>();
+        return Mono.fromRunnable(() -> paymentService.checkVelocity(customerId, totalAmount))
+                .then(Mono.defer(() -> {
+                    StockReservationLedger.Reservation reservation = stockReservationLedger.tryReserve(productId, quantity, jwtToken);
+                    Mono<Boolean> inStock = reservation != null ? Mono.just(true) : hasStock(productId, quantity, jwtToken);
+                    return inStock.flatMap(ok -> {
+                                if (!ok) {
+                                    return Mono.error(new RuntimeException("Insufficient Stock"));
+                                }
+                                return uncancellable(() -> {
+                                    Payment payment = paymentService.acceptPayment(orderId, customerId, totalAmount, paymentMode, reservation);
+                                    accepted.set(payment);
+                                    if (cancelled.get()) {
+                                        failUnprocessed(payment, decided);
+                                    }
+                                    return payment;
+                                });
+                            })
+                            // Cancelled before the payment was stored; once it is, the units are held against it
+                            .doOnCancel(() -> stockReservationLedger.giveBack(reservation));
+                }))
+                // The processor runs in its mode's bulkhead. Publication to Kafka stays with the outbox relay, after
+                // the transaction commits.
+                .flatMap(payment -> Mono.fromFuture(() -> process(payment, productId, quantity, decided), true))
+                .doOnCancel(() -> {
+                    cancelled.set(true);
+                    Payment payment = accepted.get();
+                    if (payment != null) {
+                        persistenceScheduler.schedule(() -> failUnprocessed(payment, decided));
+                    }
+                })
+                .timeout(timeout)
+                .doOnCancel(cancelledCounter::increment);
+    }
+
+    private CompletableFuture<Payment> process(Payment payment, UUID productId, int quantity, AtomicBoolean decided) {
+        if (!decided.compareAndSet(false, true)) {
+            return CompletableFuture.failedFuture(new CancellationException("Cancelled before processing"));
+        }
+        CompletableFuture<Payment> result = new CompletableFuture<>();
+        paymentService.runProcessor(payment, productId).whenCompleteAsync((processed, failure) -> {
+            try {
+                if (failure != null) {
+                    result.completeExceptionally(paymentService.processingFailure(payment, failure));
+                } else {
+                    result.complete(paymentService.recordProcessed(processed, productId, quantity));
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }, persistenceScheduler::schedule);
+        return result;
+    }
+
+    private void failUnprocessed(Payment payment, AtomicBoolean decided) {
+        if (!decided.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            paymentService.failPayment(payment);
+            LOGGER.info("Payment {} cancelled before processing", payment.getTransactionId());
+        } catch (Exception e) {
+            LOGGER.error("Error marking cancelled payment {} as failed: {}", payment.getTransactionId(), e.getMessage());
+        }
+    }
+
+    // On the persistence scheduler, and run to completion even if the subscription is cancelled meanwhile
+    private <T> Mono<T> uncancellable(Supplier<T> work) {
+        return Mono.fromFuture(() -> CompletableFuture.supplyAsync(work, persistenceScheduler::schedule), true);
+    }
+
+    private Mono<Boolean> hasStock(UUID productId, int quantity, String jwtToken) {
+        if (stockValidationBatcher.isEnabled()) {
+            return Mono.fromFuture(() -> stockValidationBatcher.submit(productId, quantity, jwtToken));
+        }
+        return validateStock(productId, quantity, jwtToken);
+    }
+
+    private Mono<Boolean> validateStock(UUID productId, int quantity, String jwtToken) {
+        return inventoryClient.post()
+                .uri(inventoryServiceEndpoint)
+                .header(HttpHeaders.AUTHORIZATION, jwtToken)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new StockValidationRequest(productId, quantity))
+                .retrieve()
+                .bodyToMono(Boolean.class)
+                .timeout(inventoryTimeout)
+                .map(Boolean.TRUE::equals)
+                .defaultIfEmpty(false)
+                .onErrorResume(e -> {
+                    handleStockValidationException(e);
+                    return Mono.just(false);
+                });
+    }
+
+    private void handleStockValidationException(Throwable e) {
+        if (e instanceof WebClientResponseException.Forbidden) {
+            LOGGER.error("Forbidden: {}", e.getMessage());
+        } else if (e instanceof WebClientResponseException.Unauthorized) {
+            LOGGER.error("Unauthorized: {}", e.getMessage());
+        } else {
+            LOGGER.error("Error while communicating with Inventory Service: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        persistenceScheduler.dispose();
+    }
+}
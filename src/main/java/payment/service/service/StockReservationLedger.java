@@ -0,0 +1,368 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import payment.service.domain.StockLease;
+import payment.service.domain.StockLeaseRelease;
+import payment.service.domain.StockReservationRequest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Local stock leases for hot products. Once a product sees enough demand, stock is reserved from the inventory
+// service in bulk and payments draw it down with a CAS instead of a synchronous /validate call. Leases are
+// refilled in the background below the low-water mark and their unused stock is released when they expire.
+// Stock drawn from a lease is settled by the inventory service from the payment-success events, as usual. Until
+// the payment's outcome is known the units are held against its transactionId; if it fails they are given back,
+// to the lease while it is still current, otherwise to the inventory service as a release of the lease they came from.
+@Component
+public class StockReservationLedger {
+
+    private static final Logger LOGGER = LogManager.getLogger(StockReservationLedger.class);
+
+    private final RestTemplate restTemplate;
+    private final boolean enabled;
+    private final String reserveUrl;
+    private final String releaseUrl;
+    private final int leaseSize;
+    private final int lowWaterMark;
+    private final Duration leaseTtl;
+    private final Duration expiryMargin;
+    private final int hotThreshold;
+    private final Duration hotWindow;
+
+    private final Map<UUID, ProductLedger> ledgers = new ConcurrentHashMap<>();
+    private final Map<UUID, Held> held = new ConcurrentHashMap<>();
+    private final ExecutorService refillExecutor;
+
+    private final Counter leasedCounter;
+    private final Counter fallbackCounter;
+    private final Counter refillCounter;
+    private final Counter releaseCounter;
+    private final Counter givenBackCounter;
+
+    public StockReservationLedger(RestTemplate restTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${inventory.reservation.enabled:false}") boolean enabled,
+                                  @Value("http://${inventory.service.name}") String inventoryBaseUrl,
+                                  @Value("${inventory.reservation.reserve-endpoint:/inventory/reserve}") String reserveEndpoint,
+                                  @Value("${inventory.reservation.release-endpoint:/inventory/release}") String releaseEndpoint,
+                                  @Value("${inventory.reservation.lease-size:100}") int leaseSize,
+                                  @Value("${inventory.reservation.low-water-mark:20}") int lowWaterMark,
+                                  @Value("${inventory.reservation.lease-ttl:PT30S}") Duration leaseTtl,
+                                  @Value("${inventory.reservation.expiry-margin:PT2S}") Duration expiryMargin,
+                                  @Value("${inventory.reservation.hot-threshold:20}") int hotThreshold,
+                                  @Value("${inventory.reservation.hot-window:PT1S}") Duration hotWindow) {
+        this.restTemplate = restTemplate;
+        this.enabled = enabled;
+        this.reserveUrl = inventoryBaseUrl + reserveEndpoint;
+        this.releaseUrl = inventoryBaseUrl + releaseEndpoint;
+        this.leaseSize = leaseSize;
+        this.lowWaterMark = lowWaterMark;
+        this.leaseTtl = leaseTtl;
+        this.expiryMargin = expiryMargin;
+        this.hotThreshold = hotThreshold;
+        this.hotWindow = hotWindow;
+        this.refillExecutor = new ThreadPoolExecutor(1, 4, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(1000), runnable -> {
+            Thread thread = new Thread(runnable, "stock-lease-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.leasedCounter = Counter.builder("inventory.reservation.requests").tag("result", "leased").register(meterRegistry);
+        this.fallbackCounter = Counter.builder("inventory.reservation.requests").tag("result", "fallback").register(meterRegistry);
+        this.refillCounter = Counter.builder("inventory.reservation.refills").register(meterRegistry);
+        this.releaseCounter = Counter.builder("inventory.reservation.released").register(meterRegistry);
+        this.givenBackCounter = Counter.builder("inventory.reservation.given-back").register(meterRegistry);
+        meterRegistry.gaugeMapSize("inventory.reservation.products", Tags.empty(), ledgers);
+        meterRegistry.gaugeMapSize("inventory.reservation.held", Tags.empty(), held);
+    }
+
+    // Takes the quantity from a local lease; null means the caller must validate with the inventory service
+    public Reservation tryReserve(UUID productId, int quantity, String jwtToken) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive: " + quantity);
+        }
+        if (!enabled) {
+            return null;
+        }
+
+        ProductLedger ledger = ledgers.computeIfAbsent(productId, ProductLedger::new);
+        boolean hot = ledger.recordDemand(hotWindow.toNanos()) >= hotThreshold;
+        Lease lease = ledger.current.get();
+
+        if (lease != null && lease.isUsable(expiryMargin)) {
+            int remaining = lease.take(quantity);
+            if (remaining >= 0) {
+                if (remaining < lowWaterMark) {
+                    scheduleRefill(ledger, jwtToken);
+                }
+                leasedCounter.increment();
+                return new Reservation(productId, lease.leaseId, quantity, lease.jwtToken);
+            }
+        }
+
+        if (hot) {
+            scheduleRefill(ledger, jwtToken);
+        }
+        fallbackCounter.increment();
+        return null;
+    }
+
+    // Keeps the units with the payment until giveBack or settled is called for it
+    public void hold(UUID transactionId, Reservation reservation) {
+        if (reservation != null) {
+            held.put(transactionId, new Held(reservation, System.nanoTime()));
+        }
+    }
+
+    // The payment went through: its units are settled by the inventory service from the payment-success event
+    public void settled(UUID transactionId) {
+        Held payment = held.remove(transactionId);
+        if (payment != null) {
+            payment.reservation.done.set(true);
+        }
+    }
+
+    // The payment failed: its units go back
+    public void giveBack(UUID transactionId) {
+        Held payment = held.remove(transactionId);
+        if (payment != null) {
+            giveBack(payment.reservation);
+        }
+    }
+
+    // For units that never made it into a payment; a reservation is given back at most once
+    public void giveBack(Reservation reservation) {
+        if (reservation == null || !reservation.done.compareAndSet(false, true)) {
+            return;
+        }
+        givenBackCounter.increment(reservation.quantity);
+        ProductLedger ledger = ledgers.get(reservation.productId);
+        Lease lease = ledger == null ? null : ledger.current.get();
+        if (lease != null && lease.leaseId.equals(reservation.leaseId) && lease.giveBack(reservation.quantity)) {
+            return;
+        }
+        release(reservation.productId, reservation.leaseId, reservation.quantity, reservation.jwtToken);
+    }
+
+    private void scheduleRefill(ProductLedger ledger, String jwtToken) {
+        if (!ledger.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refillExecutor.execute(() -> {
+                try {
+                    refill(ledger, jwtToken);
+                } finally {
+                    ledger.refilling.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ledger.refilling.set(false);
+        }
+    }
+
+    private void refill(ProductLedger ledger, String jwtToken) {
+        StockLease granted;
+        try {
+            StockReservationRequest request = new StockReservationRequest(ledger.productId, leaseSize, leaseTtl.toSeconds());
+            granted = restTemplate.postForObject(reserveUrl, new HttpEntity<>(request, buildHeaders(jwtToken)), StockLease.class);
+        } catch (Exception e) {
+            LOGGER.error("Error reserving stock for product {}: {}", ledger.productId, e.getMessage());
+            return;
+        }
+        if (granted == null || granted.getQuantity() <= 0) {
+            return;
+        }
+
+        refillCounter.increment();
+        Instant expiresAt = granted.getExpiresAt() != null ? granted.getExpiresAt() : Instant.now().plus(leaseTtl);
+        Lease previous = ledger.current.getAndSet(new Lease(granted.getLeaseId(), granted.getQuantity(), expiresAt, jwtToken));
+        if (previous != null) {
+            release(ledger.productId, previous);
+        }
+    }
+
+    // Returns unused stock of expired leases and forgets products that have gone cold. Payments still undecided
+    // two lease lifetimes after taking their units are left to the inventory service, which has reclaimed the lease.
+    @Scheduled(fixedDelayString = "${inventory.reservation.sweep-interval:PT1S}")
+    public void expireLeases() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        held.values().removeIf(payment -> now - payment.since > 2 * leaseTtl.toNanos());
+        ledgers.values().forEach(ledger -> {
+            Lease lease = ledger.current.get();
+            if (lease != null && !lease.isUsable(expiryMargin) && ledger.current.compareAndSet(lease, null)) {
+                release(ledger.productId, lease);
+            }
+            if (ledger.current.get() == null && !ledger.refilling.get() && ledger.isIdle(now, hotWindow.toNanos())) {
+                ledgers.remove(ledger.productId, ledger);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void releaseAll() {
+        refillExecutor.shutdownNow();
+        ledgers.values().forEach(ledger -> {
+            Lease lease = ledger.current.getAndSet(null);
+            if (lease != null) {
+                release(ledger.productId, lease);
+            }
+        });
+    }
+
+    private void release(UUID productId, Lease lease) {
+        int unused = lease.drain();
+        if (unused > 0) {
+            release(productId, lease.leaseId, unused, lease.jwtToken);
+        }
+    }
+
+    private void release(UUID productId, UUID leaseId, int quantity, String jwtToken) {
+        try {
+            StockLeaseRelease release = new StockLeaseRelease(leaseId, productId, quantity);
+            restTemplate.postForObject(releaseUrl, new HttpEntity<>(release, buildHeaders(jwtToken)), Void.class);
+            releaseCounter.increment(quantity);
+        } catch (Exception e) {
+            // The inventory service reclaims the lease itself when it expires
+            LOGGER.warn("Error releasing {} units of lease {}: {}", quantity, leaseId, e.getMessage());
+        }
+    }
+
+    private HttpHeaders buildHeaders(String jwtToken) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", jwtToken);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
+    }
+
+    private static final class ProductLedger {
+
+        private final UUID productId;
+        private final AtomicReference<Lease> current = new AtomicReference<>();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+
+        // Demand is counted per fixed window to decide whether the product is hot
+        private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+        private final AtomicInteger windowDemand = new AtomicInteger();
+
+        private ProductLedger(UUID productId) {
+            this.productId = productId;
+        }
+
+        private int recordDemand(long windowNanos) {
+            long now = System.nanoTime();
+            long start = windowStart.get();
+            if (now - start > windowNanos && windowStart.compareAndSet(start, now)) {
+                windowDemand.set(0);
+            }
+            return windowDemand.incrementAndGet();
+        }
+
+        private boolean isIdle(long now, long windowNanos) {
+            return now - windowStart.get() > 2 * windowNanos;
+        }
+    }
+
+    // Units taken from one lease
+    public static final class Reservation {
+
+        private final UUID productId;
+        private final UUID leaseId;
+        private final int quantity;
+        private final String jwtToken;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Reservation(UUID productId, UUID leaseId, int quantity, String jwtToken) {
+            this.productId = productId;
+            this.leaseId = leaseId;
+            this.quantity = quantity;
+            this.jwtToken = jwtToken;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+    }
+
+    private record Held(Reservation reservation, long since) {
+    }
+
+    private static final class Lease {
+
+        // remaining once the lease has been released, so nothing is given back to it any more
+        private static final int DRAINED = Integer.MIN_VALUE;
+
+        private final UUID leaseId;
+        private final AtomicInteger remaining;
+        private final Instant expiresAt;
+        private final String jwtToken;
+
+        private Lease(UUID leaseId, int quantity, Instant expiresAt, String jwtToken) {
+            this.leaseId = leaseId;
+            this.remaining = new AtomicInteger(quantity);
+            this.expiresAt = expiresAt;
+            this.jwtToken = jwtToken;
+        }
+
+        // Stops handing out stock a little before the inventory service would expire the lease
+        private boolean isUsable(Duration expiryMargin) {
+            return Instant.now().isBefore(expiresAt.minus(expiryMargin));
+        }
+
+        // Returns what is left after taking the quantity, or -1 if the lease cannot cover it
+        private int take(int quantity) {
+            while (true) {
+                int available = remaining.get();
+                if (available < quantity) {
+                    return -1;
+                }
+                if (remaining.compareAndSet(available, available - quantity)) {
+                    return available - quantity;
+                }
+            }
+        }
+
+        private boolean giveBack(int quantity) {
+            while (true) {
+                int available = remaining.get();
+                if (available == DRAINED) {
+                    return false;
+                }
+                if (remaining.compareAndSet(available, available + quantity)) {
+                    return true;
+                }
+            }
+        }
+
+        private int drain() {
+            return Math.max(remaining.getAndSet(DRAINED), 0);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import payment.service.domain.StockValidationRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Coalesces concurrent stock validations into bulk calls to the inventory service. Requests are collected per
+// Authorization header for a short window (or until the batch is full) and sent as one list of
+// StockValidationRequests; the response is a list of booleans in the same order. Quantities for the same product
+// are summed into one item: if the total is in stock so is every part, otherwise the parts are re-checked
+// individually in a second bulk call.
+@Component
+public class StockValidationBatcher {
+
+    private static final Logger LOGGER = LogManager.getLogger(StockValidationBatcher.class);
+    private static final ParameterizedTypeReference<List<Boolean>> RESULTS_TYPE = new ParameterizedTypeReference<>() {
+    };
+
+    private final RestTemplate restTemplate;
+    private final boolean enabled;
+    private final String batchUrl;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Duration waitTimeout;
+
+    private final Map<String, PendingBatch> pending = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor windowScheduler;
+    private final ThreadPoolExecutor sendExecutor;
+
+    private final Counter requestCounter;
+    private final Counter callCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer waitTimer;
+
+    public StockValidationBatcher(RestTemplate restTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${inventory.validation.batch.enabled:false}") boolean enabled,
+                                  @Value("http://${inventory.service.name}") String inventoryBaseUrl,
+                                  @Value("${inventory.validation.batch.endpoint:/inventory/validate/batch}") String batchEndpoint,
+                                  @Value("${inventory.validation.batch.window:PT0.005S}") Duration window,
+                                  @Value("${inventory.validation.batch.max-size:100}") int maxBatchSize,
+                                  @Value("${inventory.validation.batch.wait-timeout:PT3S}") Duration waitTimeout) {
+        this.restTemplate = restTemplate;
+        this.enabled = enabled;
+        this.batchUrl = inventoryBaseUrl + batchEndpoint;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.waitTimeout = waitTimeout;
+        this.windowScheduler = new ScheduledThreadPoolExecutor(1, daemonThreads("stock-validation-window"));
+        this.windowScheduler.setRemoveOnCancelPolicy(true);
+        // Runs the send on the scheduler thread when saturated, which slows down the flushing of further windows
+        this.sendExecutor = new ThreadPoolExecutor(1, 8, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(100),
+                daemonThreads("stock-validation-send"), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.requestCounter = Counter.builder("inventory.validation.requests").register(meterRegistry);
+        this.callCounter = Counter.builder("inventory.validation.calls").register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("inventory.validation.batch.size")
+                .description("Validations sent per bulk call to the inventory service")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("inventory.validation.batch.wait")
+                .description("Time a validation waits for its batch to be sent")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean validate(UUID productId, int quantity, String jwtToken) {
+        CompletableFuture<Boolean> result = submit(productId, quantity, jwtToken);
+        try {
+            return result.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.error("Timed out waiting for stock validation of product {}", productId);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            LOGGER.error("Error while validating stock of product {}: {}", productId, e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    CompletableFuture<Boolean> submit(UUID productId, int quantity, String jwtToken) {
+        requestCounter.increment();
+        PendingValidation validation = new PendingValidation(productId, quantity);
+        PendingBatch[] opened = new PendingBatch[1];
+        PendingBatch[] full = new PendingBatch[1];
+
+        // The batch is only mutated inside compute(), and no longer once it has been removed from the map
+        pending.compute(jwtToken, (key, current) -> {
+            PendingBatch batch = current != null ? current : (opened[0] = new PendingBatch(key));
+            batch.validations.add(validation);
+            if (batch.validations.size() >= maxBatchSize) {
+                full[0] = batch;
+                return null;
+            }
+            return batch;
+        });
+
+        if (full[0] != null) {
+            sendExecutor.execute(() -> send(full[0]));
+        } else if (opened[0] != null) {
+            PendingBatch batch = opened[0];
+            windowScheduler.schedule(() -> flush(batch), window.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        return validation.result;
+    }
+
+    private void flush(PendingBatch batch) {
+        // Already sent if it filled up before the window closed
+        if (pending.remove(batch.authorization, batch)) {
+            sendExecutor.execute(() -> send(batch));
+        }
+    }
+
+    private void send(PendingBatch batch) {
+        long now = System.nanoTime();
+        batchSizeSummary.record(batch.validations.size());
+        batch.validations.forEach(validation -> waitTimer.record(now - validation.enqueuedAt, TimeUnit.NANOSECONDS));
+
+        try {
+            Map<UUID, List<PendingValidation>> byProduct = new LinkedHashMap<>();
+            for (PendingValidation validation : batch.validations) {
+                byProduct.computeIfAbsent(validation.productId, id -> new ArrayList<>()).add(validation);
+            }
+
+            List<StockValidationRequest> merged = new ArrayList<>(byProduct.size());
+            List<List<PendingValidation>> mergedParts = new ArrayList<>(byProduct.size());
+            List<PendingValidation> individual = new ArrayList<>();
+            for (Map.Entry<UUID, List<PendingValidation>> entry : byProduct.entrySet()) {
+                long total = entry.getValue().stream().mapToLong(validation -> validation.quantity).sum();
+                if (total <= Integer.MAX_VALUE) {
+                    merged.add(new StockValidationRequest(entry.getKey(), (int) total));
+                    mergedParts.add(entry.getValue());
+                } else {
+                    individual.addAll(entry.getValue());
+                }
+            }
+
+            List<Boolean> results = post(merged, batch.authorization);
+            for (int i = 0; i < mergedParts.size(); i++) {
+                List<PendingValidation> parts = mergedParts.get(i);
+                if (results.get(i)) {
+                    parts.forEach(validation -> validation.result.complete(true));
+                } else if (parts.size() == 1) {
+                    parts.get(0).result.complete(false);
+                } else {
+                    individual.addAll(parts);
+                }
+            }
+
+            if (!individual.isEmpty()) {
+                List<StockValidationRequest> requests = individual.stream()
+                        .map(validation -> new StockValidationRequest(validation.productId, validation.quantity))
+                        .toList();
+                List<Boolean> individualResults = post(requests, batch.authorization);
+                for (int i = 0; i < individual.size(); i++) {
+                    individual.get(i).result.complete(individualResults.get(i));
+                }
+            }
+        } catch (Exception e) {
+            handleStockValidationException(e);
+        } finally {
+            // Anything not answered by the inventory service counts as out of stock, like a failed single call
+            batch.validations.forEach(validation -> validation.result.complete(false));
+        }
+    }
+
+    private List<Boolean> post(List<StockValidationRequest> requests, String jwtToken) {
+        callCounter.increment();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", jwtToken);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        List<Boolean> results = restTemplate.exchange(batchUrl, HttpMethod.POST, new HttpEntity<>(requests, headers), RESULTS_TYPE).getBody();
+        if (results == null || results.size() != requests.size()) {
+            throw new IllegalStateException("Expected " + requests.size() + " validation results but got "
+                    + (results == null ? "none" : results.size()));
+        }
+        return results.stream().map(Boolean.TRUE::equals).toList();
+    }
+
+    private void handleStockValidationException(Exception e) {
+        if (e instanceof org.springframework.web.client.HttpClientErrorException.Forbidden) {
+            LOGGER.error("Forbidden: {}", e.getMessage());
+        } else if (e instanceof org.springframework.web.client.HttpClientErrorException.Unauthorized) {
+            LOGGER.error("Unauthorized: {}", e.getMessage());
+        } else {
+            LOGGER.error("Error while communicating with Inventory Service: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        windowScheduler.shutdownNow();
+        // Send whatever is still waiting for its window so no caller is left hanging
+        pending.keySet().forEach(key -> {
+            PendingBatch batch = pending.remove(key);
+            if (batch != null) {
+                send(batch);
+            }
+        });
+        sendExecutor.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class PendingBatch {
+
+        private final String authorization;
+        private final List<PendingValidation> validations = new ArrayList<>();
+
+        private PendingBatch(String authorization) {
+            this.authorization = authorization;
+        }
+    }
+
+    private static final class PendingValidation {
+
+        private final UUID productId;
+        private final int quantity;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private PendingValidation(UUID productId, int quantity) {
+            this.productId = productId;
+            this.quantity = quantity;
+        }
+    }
+}
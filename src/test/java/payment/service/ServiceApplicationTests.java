@@ -17,12 +17,15 @@ import static org.mockito.Mockito.*;
 import payment.service.domain.Payment;
 import payment.service.domain.PaymentMode;
 import payment.service.domain.PaymentStatus;
+import payment.service.repository.PaymentArchive;
+import payment.service.repository.PaymentJournal;
 import payment.service.repository.PaymentRepository;
 import payment.service.service.PaymentService;
+import payment.service.service.PaymentStatsAggregator;
 
 import static org.mockito.Mockito.when;
 
-@SpringBootTest
+@SpringBootTest(properties = {"payment.journal.directory=target/payment-journal", "payment.journal.key=test-journal-key"})
 class ServiceApplicationTests {
 
 	@Mock
@@ -31,6 +34,15 @@ class ServiceApplicationTests {
 	@Mock
 	private RestTemplate restTemplate;
 
+	@Mock
+	private PaymentArchive paymentArchive;
+
+	@Mock
+	private PaymentJournal paymentJournal;
+
+	@Mock
+	private PaymentStatsAggregator paymentStatsAggregator;
+
 	@InjectMocks
 	private PaymentService paymentService;
 
@@ -0,0 +1,64 @@
+package payment.service.config;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtPrincipalCacheTests {
+
+	private static final String SECRET = "mySecretKey1234567890123456";
+
+	private SimpleMeterRegistry meterRegistry;
+	private JwtPrincipalCache cache;
+
+	@BeforeEach
+	void setUp() {
+		JwtUtil jwtUtil = new JwtUtil();
+		ReflectionTestUtils.setField(jwtUtil, "secret", SECRET);
+		jwtUtil.init();
+		meterRegistry = new SimpleMeterRegistry();
+		cache = new JwtPrincipalCache(jwtUtil, meterRegistry, true, 100, Duration.ofMinutes(15));
+	}
+
+	@Test
+	void testAuthenticate_ParsesOnceThenHitsCache() {
+		String token = token(List.of("ADMIN"), Duration.ofMinutes(5));
+
+		JwtPrincipal first = cache.authenticate(token);
+		JwtPrincipal second = cache.authenticate(token);
+
+		assertNotNull(first);
+		assertSame(first, second);
+		assertEquals("alice", first.getUsername());
+		assertEquals("ADMIN", first.getAuthorities().get(0).getAuthority());
+		assertEquals(1.0, meterRegistry.get("jwt.cache.requests").tag("result", "miss").counter().count());
+		assertEquals(1.0, meterRegistry.get("jwt.cache.requests").tag("result", "hit").counter().count());
+	}
+
+	@Test
+	void testAuthenticate_RejectsTamperedAndExpiredTokens() {
+		String token = token(List.of("USER"), Duration.ofMinutes(5));
+
+		assertNull(cache.authenticate(token.substring(0, token.length() - 2) + "xx"));
+		assertNull(cache.authenticate(token(List.of("USER"), Duration.ofMinutes(-1))));
+	}
+
+	private static String token(List<String> roles, Duration ttl) {
+		return Jwts.builder()
+				.setSubject("alice")
+				.claim("roles", roles)
+				.setExpiration(new Date(System.currentTimeMillis() + ttl.toMillis()))
+				.signWith(Keys.hmacShaKeyFor(Base64.getEncoder().encode(SECRET.getBytes())))
+				.compact();
+	}
+}
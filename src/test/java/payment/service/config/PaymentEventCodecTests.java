@@ -0,0 +1,113 @@
+package payment.service.config;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import payment.service.domain.Money;
+import payment.service.domain.PaymentEvent;
+import payment.service.domain.PaymentStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentEventCodecTests {
+
+	private static final String TOPIC = "payment-status";
+
+	private final PaymentEventDeserializer deserializer = new PaymentEventDeserializer();
+
+	@Test
+	void testBinary_RoundTripsAllFields() {
+		PaymentEvent event = event();
+		RecordHeaders headers = new RecordHeaders();
+
+		byte[] bytes = new PaymentEventSerializer(PaymentEventSerializer.Format.BINARY).serialize(TOPIC, headers, event);
+		PaymentEvent decoded = deserializer.deserialize(TOPIC, headers, bytes);
+
+		assertEquals(39, bytes.length);
+		assertEquals(PaymentEventCodec.BINARY_CONTENT_TYPE,
+				new String(headers.lastHeader(PaymentEventCodec.CONTENT_TYPE_HEADER).value(), StandardCharsets.US_ASCII));
+		assertEquals(event.getProductId(), decoded.getProductId());
+		assertEquals(event.getQuantity(), decoded.getQuantity());
+		assertEquals(event.getTransactionId(), decoded.getTransactionId());
+		assertEquals(event.getPaymentStatus(), decoded.getPaymentStatus());
+		assertNull(decoded.getAmount());
+	}
+
+	@Test
+	void testBinary_RoundTripsAmount() {
+		PaymentEvent event = event();
+		event.setAmount(Money.ofMinor(-1234567890123L, Currency.getInstance("JPY")));
+
+		byte[] bytes = PaymentEventCodec.encode(event);
+		PaymentEvent decoded = PaymentEventCodec.decode(bytes);
+
+		assertEquals(50, bytes.length);
+		assertEquals(event.getAmount(), decoded.getAmount());
+		assertEquals(event.getPaymentStatus(), decoded.getPaymentStatus());
+	}
+
+	@Test
+	void testBinary_OmitsAbsentFieldsAndToleratesUnknownStatus() {
+		PaymentEvent event = new PaymentEvent();
+		event.setTransactionId(UUID.randomUUID());
+		event.setPaymentStatus(PaymentStatus.FAILED);
+		byte[] bytes = PaymentEventCodec.encode(event);
+		assertEquals(19, bytes.length);
+
+		// A status added by a newer producer
+		bytes[bytes.length - 1] = 42;
+		PaymentEvent decoded = PaymentEventCodec.decode(bytes);
+
+		assertNull(decoded.getProductId());
+		assertNull(decoded.getQuantity());
+		assertEquals(event.getTransactionId(), decoded.getTransactionId());
+		assertNull(decoded.getPaymentStatus());
+	}
+
+	@Test
+	void testDeserializer_ReadsJsonWithAndWithoutHeader() {
+		PaymentEvent event = event();
+		RecordHeaders headers = new RecordHeaders();
+		byte[] json = new PaymentEventSerializer(PaymentEventSerializer.Format.JSON).serialize(TOPIC, headers, event);
+
+		assertEquals(event.getTransactionId(), deserializer.deserialize(TOPIC, headers, json).getTransactionId());
+		assertEquals(event.getTransactionId(), deserializer.deserialize(TOPIC, new RecordHeaders(), json).getTransactionId());
+
+		// The amount is left out of JSON, which keeps the fields strict consumers know
+		event.setAmount(Money.ofMinor(20000, Money.DEFAULT_CURRENCY));
+		json = new PaymentEventSerializer(PaymentEventSerializer.Format.JSON).serialize(TOPIC, headers, event);
+		assertFalse(new String(json, StandardCharsets.UTF_8).contains("amount"));
+		assertNull(deserializer.deserialize(TOPIC, headers, json).getAmount());
+	}
+
+	@Test
+	void testDeserializer_IgnoresUnknownJsonFields() {
+		UUID transactionId = UUID.randomUUID();
+		byte[] json = ("{\"transactionId\":\"" + transactionId + "\",\"paymentStatus\":\"SUCCESS\",\"settledAt\":\"2026-01-01T00:00:00Z\"}")
+				.getBytes(StandardCharsets.UTF_8);
+
+		PaymentEvent decoded = deserializer.deserialize(TOPIC, new RecordHeaders(), json);
+
+		assertEquals(transactionId, decoded.getTransactionId());
+		assertEquals(PaymentStatus.SUCCESS, decoded.getPaymentStatus());
+	}
+
+	@Test
+	void testDeserializer_RejectsUnknownVersion() {
+		RecordHeaders headers = new RecordHeaders();
+		byte[] bytes = new PaymentEventSerializer(PaymentEventSerializer.Format.BINARY).serialize(TOPIC, headers, event());
+		bytes[0] = 2;
+
+		assertThrows(SerializationException.class, () -> deserializer.deserialize(TOPIC, headers, bytes));
+	}
+
+	private PaymentEvent event() {
+		PaymentEvent event = new PaymentEvent(UUID.randomUUID(), 7, UUID.randomUUID());
+		event.setPaymentStatus(PaymentStatus.PENDING);
+		return event;
+	}
+}
@@ -0,0 +1,86 @@
+package payment.service.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTests {
+
+	private static final Currency USD = Currency.getInstance("USD");
+	private static final Currency JPY = Currency.getInstance("JPY");
+	private static final Currency BHD = Currency.getInstance("BHD");
+
+	@Test
+	void testParse_ScalesToMinorUnits() {
+		assertEquals(20000, Money.parse("200", USD).minorUnits());
+		assertEquals(20050, Money.parse("200.5", USD).minorUnits());
+		assertEquals(-25, Money.parse("-0.25", USD).minorUnits());
+		assertEquals(200, Money.parse("200", JPY).minorUnits());
+		assertEquals(1234, Money.parse("1.234", BHD).minorUnits());
+		assertEquals(Long.MIN_VALUE, Money.parse("-92233720368547758.08", USD).minorUnits());
+	}
+
+	@Test
+	void testParse_RejectsInexactAndMalformedAmounts() {
+		assertThrows(ArithmeticException.class, () -> Money.parse("10.001", USD));
+		assertThrows(ArithmeticException.class, () -> Money.parse("1.5", JPY));
+		assertThrows(ArithmeticException.class, () -> Money.parse("92233720368547758.08", USD));
+		assertThrows(NumberFormatException.class, () -> Money.parse("", USD));
+		assertThrows(NumberFormatException.class, () -> Money.parse("-", USD));
+		assertThrows(NumberFormatException.class, () -> Money.parse("1e3", USD));
+		assertThrows(NumberFormatException.class, () -> Money.parse("1,000", USD));
+		assertThrows(NumberFormatException.class, () -> Money.parse("1.0.0", USD));
+	}
+
+	@Test
+	void testArithmetic_IsExact() {
+		Money max = Money.ofMinor(Long.MAX_VALUE, USD);
+
+		assertEquals(Money.ofMinor(300, USD), Money.ofMinor(100, USD).plus(Money.ofMinor(200, USD)));
+		assertThrows(ArithmeticException.class, () -> max.plus(Money.ofMinor(1, USD)));
+		assertThrows(ArithmeticException.class, () -> max.times(2));
+		assertThrows(ArithmeticException.class, () -> Money.ofMinor(Long.MIN_VALUE, USD).negate());
+		assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("1.005"), USD));
+		assertEquals(101, Money.of(new BigDecimal("1.005"), USD, RoundingMode.HALF_UP).minorUnits());
+	}
+
+	@Test
+	void testPercentage_RoundsLikeBigDecimal() {
+		long[] amounts = {1, 5, 15, 25, 35, 50, 12345, 99999, -1, -5, -15, -25, -12345};
+		long[] basisPoints = {1, 290, 5000, 2500, 3333};
+		for (RoundingMode rounding : RoundingMode.values()) {
+			if (rounding == RoundingMode.UNNECESSARY) {
+				continue;
+			}
+			for (long amount : amounts) {
+				for (long bps : basisPoints) {
+					long expected = BigDecimal.valueOf(amount * bps).divide(BigDecimal.valueOf(10_000), 0, rounding).longValueExact();
+					assertEquals(expected, Money.ofMinor(amount, USD).percentage(bps, rounding).minorUnits(),
+							amount + " * " + bps + " bps " + rounding);
+				}
+			}
+		}
+		assertThrows(ArithmeticException.class, () -> Money.ofMinor(1, USD).percentage(1, RoundingMode.UNNECESSARY));
+	}
+
+	@Test
+	void testCurrencyMismatch_IsRejected() {
+		Money dollars = Money.ofMinor(100, USD);
+		Money yen = Money.ofMinor(100, JPY);
+
+		assertThrows(IllegalArgumentException.class, () -> dollars.plus(yen));
+		assertThrows(IllegalArgumentException.class, () -> dollars.compareTo(yen));
+		assertNotEquals(dollars, yen);
+	}
+
+	@Test
+	void testToString_UsesCurrencyScale() {
+		assertEquals("200.00 USD", Money.parse("200", USD).toString());
+		assertEquals("200 JPY", Money.parse("200", JPY).toString());
+		assertEquals(new BigDecimal("-0.05"), Money.ofMinor(-5, USD).toBigDecimal());
+	}
+}
@@ -0,0 +1,81 @@
+package payment.service.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedUuidGeneratorTests {
+
+	private static final long NOW = 1_700_000_000_000L;
+
+	private final AtomicLong lastTimestamp = new AtomicLong();
+
+	@Test
+	void testNext_IncreasesWithinOneMillisecond() {
+		UUID previous = next(NOW);
+		for (int i = 1; i < 100; i++) {
+			UUID uuid = next(NOW);
+			assertTrue(uuid.getMostSignificantBits() > previous.getMostSignificantBits());
+			assertEquals(NOW, TimeOrderedUuidGenerator.timestampMillis(uuid));
+			assertEquals(i, sequence(uuid));
+			previous = uuid;
+		}
+	}
+
+	@Test
+	void testNext_SequenceOverflowBorrowsTheNextMillisecond() {
+		for (int i = 0; i < 4096; i++) {
+			next(NOW);
+		}
+
+		UUID borrowed = next(NOW);
+		assertEquals(NOW + 1, TimeOrderedUuidGenerator.timestampMillis(borrowed));
+		assertEquals(0, sequence(borrowed));
+
+		// The clock catching up continues after the borrowed value instead of repeating it
+		UUID caughtUp = next(NOW + 1);
+		assertEquals(NOW + 1, TimeOrderedUuidGenerator.timestampMillis(caughtUp));
+		assertEquals(1, sequence(caughtUp));
+
+		// Nor does a clock going backwards
+		assertTrue(next(NOW - 10).getMostSignificantBits() > caughtUp.getMostSignificantBits());
+	}
+
+	@Test
+	void testNext_VersionAndVariant() {
+		Set<UUID> uuids = new HashSet<>();
+		for (int i = 0; i < 1000; i++) {
+			UUID uuid = TimeOrderedUuidGenerator.next();
+			assertEquals(7, uuid.version());
+			assertEquals(2, uuid.variant());
+			uuids.add(uuid);
+		}
+		assertEquals(1000, uuids.size());
+	}
+
+	@Test
+	void testTimestampMillis_RoundTrips() {
+		long before = System.currentTimeMillis();
+		UUID uuid = TimeOrderedUuidGenerator.next();
+		long after = System.currentTimeMillis();
+
+		// Later when earlier values of this JVM borrowed milliseconds, but never by much
+		long millis = TimeOrderedUuidGenerator.timestampMillis(uuid);
+		assertTrue(millis >= before && millis <= after + 1000, () -> millis + " not in [" + before + ", " + after + "]");
+		assertEquals(NOW, TimeOrderedUuidGenerator.timestampMillis(next(NOW)));
+		assertEquals(-1, TimeOrderedUuidGenerator.timestampMillis(UUID.randomUUID()));
+	}
+
+	private UUID next(long currentMillis) {
+		return TimeOrderedUuidGenerator.uuid(TimeOrderedUuidGenerator.nextTimestamp(lastTimestamp, currentMillis));
+	}
+
+	private static int sequence(UUID uuid) {
+		return (int) (uuid.getMostSignificantBits() & 0xFFF);
+	}
+}
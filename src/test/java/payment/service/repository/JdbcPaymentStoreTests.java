@@ -0,0 +1,108 @@
+package payment.service.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcPaymentStoreTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private JdbcPaymentStore store;
+	private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+	@BeforeEach
+	void setUp() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE payment (transaction_id UUID PRIMARY KEY, order_id UUID NOT NULL, customer_id UUID NOT NULL, "
+				+ "total_amount_minor BIGINT NOT NULL, currency VARCHAR(3) NOT NULL, payment_status VARCHAR(16), payment_mode VARCHAR(16), timestamp TIMESTAMP(6))");
+		store = new JdbcPaymentStore(jdbcTemplate, new TransactionTemplate(new DataSourceTransactionManager(database)),
+				new SimpleMeterRegistry(), 4, 64, 1000);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		executor.shutdownNow();
+		store.shutdown();
+		database.shutdown();
+	}
+
+	@Test
+	void testInsert_ConcurrentPaymentsAreAllWritten() {
+		List<CompletableFuture<Payment>> inserts = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			inserts.add(CompletableFuture.supplyAsync(() -> store.insert(payment()), executor));
+		}
+		List<Payment> payments = inserts.stream().map(CompletableFuture::join).toList();
+
+		assertEquals(100, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payment", Integer.class));
+		Payment first = payments.get(0);
+		assertNotNull(first.getTimestamp());
+		assertEquals(1234, jdbcTemplate.queryForObject("SELECT total_amount_minor FROM payment WHERE transaction_id = ?",
+				Long.class, first.getTransactionId()));
+		assertEquals("PAYPAL", jdbcTemplate.queryForObject("SELECT payment_mode FROM payment WHERE transaction_id = ?",
+				String.class, first.getTransactionId()));
+	}
+
+	@Test
+	void testInsert_FailingPaymentDoesNotFailItsGroup() {
+		Payment existing = store.insert(payment());
+		List<CompletableFuture<Payment>> inserts = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			Payment payment = payment();
+			if (i == 10) {
+				payment.setTransactionId(existing.getTransactionId());
+			}
+			inserts.add(CompletableFuture.supplyAsync(() -> store.insert(payment), executor));
+		}
+
+		for (int i = 0; i < inserts.size(); i++) {
+			if (i == 10) {
+				CompletableFuture<Payment> duplicate = inserts.get(i);
+				Exception e = assertThrows(Exception.class, duplicate::join);
+				assertInstanceOf(DuplicateKeyException.class, e.getCause());
+			} else {
+				assertNotNull(inserts.get(i).join());
+			}
+		}
+		assertEquals(20, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payment", Integer.class));
+	}
+
+	@Test
+	void testUpdateStatus_WritesOnlyExistingPayments() {
+		Payment payment = store.insert(payment());
+
+		assertTrue(store.updateStatus(payment.getTransactionId(), PaymentStatus.SUCCESS));
+		assertFalse(store.updateStatus(UUID.randomUUID(), PaymentStatus.SUCCESS));
+		assertEquals("SUCCESS", jdbcTemplate.queryForObject("SELECT payment_status FROM payment WHERE transaction_id = ?",
+				String.class, payment.getTransactionId()));
+	}
+
+	private static Payment payment() {
+		Payment payment = new Payment(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinor(1234, Money.DEFAULT_CURRENCY), PaymentStatus.PENDING);
+		payment.setPaymentMode(PaymentMode.PAYPAL);
+		return payment;
+	}
+}
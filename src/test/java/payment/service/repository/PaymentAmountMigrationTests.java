@@ -0,0 +1,61 @@
+package payment.service.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentAmountMigrationTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void setUp() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+	}
+
+	@AfterEach
+	void tearDown() {
+		database.shutdown();
+	}
+
+	@Test
+	void testMigrate_MovesDecimalAmountsToMinorUnitsOnce() {
+		// The table as ddl-auto created it before amounts were Money
+		jdbcTemplate.execute("CREATE TABLE payment (transaction_id UUID PRIMARY KEY, order_id UUID NOT NULL, customer_id UUID NOT NULL, "
+				+ "total_amount NUMERIC(38,2) NOT NULL, payment_status VARCHAR(255), payment_mode VARCHAR(255), timestamp TIMESTAMP(6))");
+		UUID transactionId = UUID.randomUUID();
+		jdbcTemplate.update("INSERT INTO payment (transaction_id, order_id, customer_id, total_amount) VALUES (?, ?, ?, ?)",
+				transactionId, UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("123.45"));
+
+		PaymentAmountMigration migration = new PaymentAmountMigration(jdbcTemplate);
+		migration.migrate();
+		migration.migrate();
+
+		Map<String, Object> row = jdbcTemplate.queryForMap("SELECT * FROM payment WHERE transaction_id = ?", transactionId);
+		assertEquals(12345L, ((Number) row.get("TOTAL_AMOUNT_MINOR")).longValue());
+		assertEquals("USD", row.get("CURRENCY"));
+		assertFalse(row.containsKey("TOTAL_AMOUNT"));
+		// New rows need both columns
+		assertThrows(Exception.class, () -> jdbcTemplate.update("INSERT INTO payment (transaction_id, order_id, customer_id, total_amount_minor) VALUES (?, ?, ?, ?)",
+				UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), 100));
+	}
+
+	@Test
+	void testMigrate_NothingToDoOnNewDatabases() {
+		new PaymentAmountMigration(jdbcTemplate).migrate();
+
+		assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'PAYMENT'", Integer.class));
+	}
+}
@@ -0,0 +1,127 @@
+package payment.service.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentQuery;
+import payment.service.domain.PaymentStatus;
+import payment.service.domain.TimeOrderedUuidGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentArchiveTests {
+
+	private static final UUID CUSTOMER = UUID.randomUUID();
+	private static final LocalDateTime JANUARY = LocalDateTime.of(2024, 1, 1, 0, 0);
+	private static final LocalDateTime FEBRUARY = LocalDateTime.of(2024, 2, 1, 0, 0);
+
+	@TempDir
+	Path directory;
+
+	private PaymentArchive archive;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		archive = new PaymentArchive(directory, ChronoUnit.MONTHS, 2);
+	}
+
+	@Test
+	void testWrite_RoundTripsEveryColumnAndFindsByTransactionId() throws IOException {
+		Payment payment = payment(CUSTOMER, JANUARY.plusDays(3).plusNanos(123_000), PaymentStatus.SUCCESS);
+		payment.setAmount(Money.ofMinor(-1999, Currency.getInstance("EUR")));
+		Payment unknownMode = payment(CUSTOMER, JANUARY.plusDays(4), null);
+		unknownMode.setPaymentMode(null);
+		archive.write(JANUARY, List.of(payment, unknownMode));
+
+		// A fresh instance only knows the files on disk
+		archive = new PaymentArchive(directory, ChronoUnit.MONTHS, 2);
+		Payment found = archive.findById(payment.getTransactionId()).orElseThrow();
+		assertEquals(payment.getOrderId(), found.getOrderId());
+		assertEquals(CUSTOMER, found.getCustomerId());
+		assertEquals(payment.getAmount(), found.getAmount());
+		assertEquals(PaymentStatus.SUCCESS, found.getPaymentStatus());
+		assertEquals(PaymentMode.CREDIT_CARD, found.getPaymentMode());
+		assertEquals(payment.getTimestamp(), found.getTimestamp());
+		Payment foundUnknownMode = archive.findById(unknownMode.getTransactionId()).orElseThrow();
+		assertNull(foundUnknownMode.getPaymentStatus());
+		assertNull(foundUnknownMode.getPaymentMode());
+		assertTrue(archive.findById(TimeOrderedUuidGenerator.next()).isEmpty());
+		assertEquals(FEBRUARY, archive.getBoundary());
+	}
+
+	@Test
+	void testFindPayments_PagesNewestFirstAcrossPartitionsAndPrunesByTime() throws IOException {
+		List<Payment> january = new ArrayList<>();
+		List<Payment> february = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			january.add(payment(CUSTOMER, JANUARY.plusDays(i), PaymentStatus.SUCCESS));
+			february.add(payment(CUSTOMER, FEBRUARY.plusDays(i), i % 2 == 0 ? PaymentStatus.SUCCESS : PaymentStatus.FAILED));
+		}
+		january.add(payment(UUID.randomUUID(), JANUARY, PaymentStatus.SUCCESS));
+		archive.write(JANUARY, january);
+		archive.write(FEBRUARY, february);
+
+		PaymentQuery query = new PaymentQuery(CUSTOMER, null, null, null, null);
+		List<Payment> all = new ArrayList<>();
+		List<Payment> page = archive.findPayments(query, null, null, 3);
+		while (!page.isEmpty()) {
+			all.addAll(page);
+			Payment last = page.get(page.size() - 1);
+			page = archive.findPayments(query, last.getTimestamp(), last.getTransactionId(), 3);
+		}
+		assertEquals(10, all.size());
+		assertEquals(FEBRUARY.plusDays(4), all.get(0).getTimestamp());
+		assertEquals(JANUARY, all.get(9).getTimestamp());
+
+		// Only February can match, so January's file is never read
+		Files.delete(directory.resolve("payments-2024-01.col.gz"));
+		archive = new PaymentArchive(directory, ChronoUnit.MONTHS, 2);
+		PaymentQuery failedInFebruary = new PaymentQuery(CUSTOMER, null, PaymentStatus.FAILED, FEBRUARY, FEBRUARY.plusMonths(1));
+		assertEquals(2, archive.findPayments(failedInFebruary, null, null, 10).size());
+		List<Payment> exported = new ArrayList<>();
+		archive.forEachPayment(new PaymentQuery(CUSTOMER, null, null, FEBRUARY.plusDays(1), null), exported::add);
+		assertEquals(4, exported.size());
+		assertEquals(FEBRUARY.plusDays(1), exported.get(0).getTimestamp());
+	}
+
+	@Test
+	void testWrite_MergesWithWhatIsAlreadyArchived() throws IOException {
+		Payment first = payment(CUSTOMER, JANUARY.plusDays(1), PaymentStatus.PENDING);
+		Payment second = payment(CUSTOMER, JANUARY.plusDays(2), PaymentStatus.SUCCESS);
+		archive.write(JANUARY, List.of(first, second));
+
+		// The same partition archived again, e.g. after its rows were not deleted the first time
+		first.setPaymentStatus(PaymentStatus.SUCCESS);
+		archive.write(JANUARY, List.of(first));
+
+		List<Payment> payments = archive.findPayments(new PaymentQuery(), null, null, 10);
+		assertEquals(2, payments.size());
+		assertEquals(PaymentStatus.SUCCESS, archive.findById(first.getTransactionId()).orElseThrow().getPaymentStatus());
+		assertThrows(IllegalArgumentException.class, () -> archive.write(JANUARY.plusDays(1), List.of(first)));
+	}
+
+	// The transactionId is created at the payment's timestamp, as for payments stored by the service
+	private static Payment payment(UUID customerId, LocalDateTime timestamp, PaymentStatus status) {
+		long millis = timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		UUID random = UUID.randomUUID();
+		Payment payment = new Payment(UUID.randomUUID(), customerId, Money.ofMinor(1000, Money.DEFAULT_CURRENCY), status);
+		payment.setTransactionId(new UUID((millis << 16) | 0x7000L | (random.getMostSignificantBits() & 0xFFFL), random.getLeastSignificantBits()));
+		payment.setPaymentMode(PaymentMode.CREDIT_CARD);
+		payment.setTimestamp(timestamp);
+		return payment;
+	}
+}
@@ -0,0 +1,179 @@
+package payment.service.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+import payment.service.repository.PaymentJournal.EntryType;
+import payment.service.repository.PaymentJournalScanner.Entry;
+import payment.service.repository.PaymentJournalScanner.Result;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentJournalTests {
+
+	private static final String KEY = "test-journal-key";
+
+	// Four entries per segment
+	private static final DataSize SEGMENT_SIZE = DataSize.ofBytes(PaymentJournal.HEADER_SIZE + 4 * PaymentJournal.ENTRY_SIZE);
+
+	@TempDir
+	Path directory;
+
+	private PaymentJournal journal;
+
+	@BeforeEach
+	void setUp() {
+		journal = open();
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		journal.shutdown();
+	}
+
+	@Test
+	void testAppend_ContinuesSequenceAndChainAcrossSegmentsAndRestarts() throws IOException, InterruptedException {
+		Payment payment = payment();
+		assertEquals(1, journal.append(EntryType.CREATED, payment));
+		for (int i = 0; i < 5; i++) {
+			journal.append(EntryType.STATUS_UPDATED, payment.getTransactionId(), PaymentStatus.SUCCESS);
+		}
+		journal.shutdown();
+		assertEquals(6, journal.getSyncedSequence());
+
+		journal = open();
+		assertEquals(7, journal.append(EntryType.PROCESSED, payment.getTransactionId(), null));
+		journal.sync();
+
+		List<Entry> entries = new ArrayList<>();
+		Result result = PaymentJournalScanner.scan(directory, KEY, 1, entries::add);
+		assertTrue(result.isIntact(), result.problem());
+		assertEquals(7, result.entries());
+		assertEquals(2, PaymentJournalScanner.segments(directory).size());
+		Entry created = entries.get(0);
+		assertEquals(EntryType.CREATED, created.type());
+		assertEquals(payment.getTransactionId(), created.transactionId());
+		assertEquals(payment.getOrderId(), created.orderId());
+		assertEquals(payment.getCustomerId(), created.customerId());
+		assertEquals(PaymentStatus.PENDING, created.status());
+		assertEquals(PaymentMode.WALLET, created.mode());
+		assertEquals(payment.getAmount(), created.amount());
+		Entry processed = entries.get(6);
+		assertEquals(7, processed.sequence());
+		assertNull(processed.status());
+		assertNull(processed.amount());
+		assertNull(processed.orderId());
+
+		assertEquals(2, PaymentJournalScanner.scan(directory, KEY, 6, null).entries());
+	}
+
+	@Test
+	void testScan_ReportsChangedAndMissingEntries() throws IOException, InterruptedException {
+		for (int i = 0; i < 10; i++) {
+			journal.append(EntryType.CREATED, payment());
+		}
+		journal.shutdown();
+		List<Path> segments = PaymentJournalScanner.segments(directory);
+		assertTrue(PaymentJournalScanner.scan(directory, KEY, 1, null).isIntact());
+
+		// Entries 5 to 8 removed
+		Files.move(segments.get(1), directory.resolve("removed"));
+		Result missing = PaymentJournalScanner.scan(directory, KEY, 1, null);
+		assertFalse(missing.isIntact());
+		assertTrue(missing.problem().contains("does not continue the chain"), missing.problem());
+		Files.move(directory.resolve("removed"), segments.get(1));
+
+		// Without the key not even the first entry verifies
+		assertEquals(0, PaymentJournalScanner.scan(directory, "another-key", 1, null).lastSequence());
+
+		// A changed amount in entry 2, even with its own MAC recomputed with the key, breaks the chain at entry 3
+		try (RandomAccessFile file = new RandomAccessFile(segments.get(0).toFile(), "rw")) {
+			int offset = PaymentJournal.HEADER_SIZE + PaymentJournal.ENTRY_SIZE;
+			file.seek(offset + PaymentJournal.AMOUNT_MINOR);
+			file.writeLong(1);
+			byte[] bytes = new byte[PaymentJournal.ENTRY_SIZE * 2];
+			file.seek(PaymentJournal.HEADER_SIZE);
+			file.readFully(bytes);
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			byte[] previous = new byte[PaymentJournal.MAC_SIZE];
+			buffer.get(PaymentJournal.MAC, previous);
+			byte[] mac = new byte[PaymentJournal.MAC_SIZE];
+			PaymentJournal.mac(PaymentJournal.newMac(KEY), previous, buffer, PaymentJournal.ENTRY_SIZE, mac);
+			file.seek(offset + PaymentJournal.MAC);
+			file.write(mac);
+		}
+		Result changed = PaymentJournalScanner.scan(directory, KEY, 1, null);
+		assertFalse(changed.isIntact());
+		assertEquals(2, changed.lastSequence());
+	}
+
+	@Test
+	void testOpen_ClearsIncompleteLastEntry() throws IOException, InterruptedException {
+		journal.append(EntryType.CREATED, payment());
+		journal.shutdown();
+
+		// An append that did not fully reach the disk
+		try (RandomAccessFile file = new RandomAccessFile(PaymentJournalScanner.segments(directory).get(0).toFile(), "rw")) {
+			file.seek(PaymentJournal.HEADER_SIZE + PaymentJournal.ENTRY_SIZE + PaymentJournal.TYPE);
+			file.write(1);
+		}
+		assertTrue(PaymentJournalScanner.scan(directory, KEY, 1, null).isIntact());
+
+		journal = open();
+		assertEquals(2, journal.append(EntryType.CREATED, payment()));
+		journal.sync();
+		Result result = PaymentJournalScanner.scan(directory, KEY, 1, null);
+		assertTrue(result.isIntact(), result.problem());
+		assertEquals(2, result.entries());
+	}
+
+	@Test
+	void testOpen_BrokenFirstEntryOfLastSegmentStartsAfterIt() throws IOException, InterruptedException {
+		for (int i = 0; i < 6; i++) {
+			journal.append(EntryType.CREATED, payment());
+		}
+		journal.shutdown();
+
+		// Entry 5, the first of the second segment, changed with entry 6 after it
+		try (RandomAccessFile file = new RandomAccessFile(PaymentJournalScanner.segments(directory).get(1).toFile(), "rw")) {
+			file.seek(PaymentJournal.HEADER_SIZE + PaymentJournal.AMOUNT_MINOR);
+			file.writeLong(1);
+		}
+
+		journal = open();
+		assertEquals(7, journal.append(EntryType.CREATED, payment()));
+		journal.sync();
+		assertEquals(3, PaymentJournalScanner.segments(directory).size());
+		Result result = PaymentJournalScanner.scan(directory, KEY, 1, null);
+		assertFalse(result.isIntact());
+		assertEquals(4, result.lastSequence());
+	}
+
+	private PaymentJournal open() {
+		return new PaymentJournal(new SimpleMeterRegistry(), true, directory, KEY, SEGMENT_SIZE, Duration.ofMillis(1));
+	}
+
+	private static Payment payment() {
+		Payment payment = new Payment(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinor(4250, Money.DEFAULT_CURRENCY), PaymentStatus.PENDING);
+		payment.setTransactionId(UUID.randomUUID());
+		payment.setPaymentMode(PaymentMode.WALLET);
+		return payment;
+	}
+}
@@ -0,0 +1,127 @@
+package payment.service.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentQuery;
+import payment.service.domain.PaymentStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PaymentRepositoryCustomImplTests {
+
+	private static final UUID CUSTOMER = UUID.randomUUID();
+	private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+	private EmbeddedDatabase database;
+	private NamedParameterJdbcTemplate jdbcTemplate;
+	private PaymentRepositoryCustomImpl repository;
+
+	@BeforeEach
+	void setUp() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = spy(new NamedParameterJdbcTemplate(database));
+		jdbcTemplate.getJdbcTemplate().execute("CREATE TABLE payment (transaction_id UUID PRIMARY KEY, order_id UUID NOT NULL, customer_id UUID NOT NULL, "
+				+ "total_amount_minor BIGINT NOT NULL, currency VARCHAR(3) NOT NULL, payment_status VARCHAR(16), payment_mode VARCHAR(16), timestamp TIMESTAMP(6))");
+		repository = new PaymentRepositoryCustomImpl(jdbcTemplate, 2);
+
+		// Five payments of the customer, two of them at the same instant, and one of someone else
+		insert(CUSTOMER, START, PaymentStatus.SUCCESS);
+		insert(CUSTOMER, START.plusMinutes(1), PaymentStatus.FAILED);
+		insert(CUSTOMER, START.plusMinutes(1), PaymentStatus.SUCCESS);
+		insert(CUSTOMER, START.plusMinutes(2), PaymentStatus.SUCCESS);
+		insert(CUSTOMER, START.plusMinutes(3), PaymentStatus.SUCCESS);
+		insert(UUID.randomUUID(), START.plusMinutes(1), PaymentStatus.SUCCESS);
+	}
+
+	@AfterEach
+	void tearDown() {
+		database.shutdown();
+	}
+
+	@Test
+	void testFindPayments_PagesThroughAllRowsNewestFirst() {
+		PaymentQuery query = new PaymentQuery(CUSTOMER, null, null, null, null);
+		List<Payment> all = new ArrayList<>();
+		List<Payment> page = repository.findPayments(query, null, null, 2);
+		while (!page.isEmpty()) {
+			all.addAll(page);
+			Payment last = page.get(page.size() - 1);
+			page = repository.findPayments(query, last.getTimestamp(), last.getTransactionId(), 2);
+		}
+
+		assertEquals(5, all.size());
+		assertEquals(5, all.stream().map(Payment::getTransactionId).distinct().count());
+		for (int i = 1; i < all.size(); i++) {
+			assertFalse(all.get(i).getTimestamp().isAfter(all.get(i - 1).getTimestamp()));
+		}
+	}
+
+	@Test
+	void testFindPayments_FiltersOnStatusAndTimeRange() {
+		PaymentQuery query = new PaymentQuery(CUSTOMER, null, PaymentStatus.SUCCESS, START.plusMinutes(1), START.plusMinutes(3));
+
+		List<Payment> payments = repository.findPayments(query, null, null, 10);
+
+		assertEquals(2, payments.size());
+		assertEquals(START.plusMinutes(2), payments.get(0).getTimestamp());
+		assertEquals(START.plusMinutes(1), payments.get(1).getTimestamp());
+	}
+
+	@Test
+	void testForEachPayment_StreamsOldestFirst() {
+		List<Payment> payments = new ArrayList<>();
+		repository.forEachPayment(new PaymentQuery(CUSTOMER, null, null, null, null), payments::add);
+
+		assertEquals(5, payments.size());
+		assertEquals(START, payments.get(0).getTimestamp());
+		assertEquals(START.plusMinutes(3), payments.get(4).getTimestamp());
+	}
+
+	@Test
+	void testUpdatePaymentStatuses_OneStatementPerStatusAndChunk() {
+		Map<UUID, PaymentStatus> statuses = new HashMap<>();
+		for (int i = 0; i < PaymentRepositoryCustomImpl.MAX_IN_LIST_SIZE + 1; i++) {
+			statuses.put(insert(UUID.randomUUID(), START, PaymentStatus.PENDING), PaymentStatus.SUCCESS);
+		}
+		UUID failed = insert(UUID.randomUUID(), START, PaymentStatus.PENDING);
+		statuses.put(failed, PaymentStatus.FAILED);
+		// Not in the table
+		statuses.put(UUID.randomUUID(), PaymentStatus.FAILED);
+
+		int updated = repository.updatePaymentStatuses(statuses);
+
+		assertEquals(PaymentRepositoryCustomImpl.MAX_IN_LIST_SIZE + 2, updated);
+		// Two chunks of SUCCESS ids, one list of FAILED ids
+		verify(jdbcTemplate, times(3)).update(contains("UPDATE payment"), any(SqlParameterSource.class));
+		assertEquals(0, count(PaymentStatus.PENDING));
+		assertEquals(PaymentRepositoryCustomImpl.MAX_IN_LIST_SIZE + 1 + 5, count(PaymentStatus.SUCCESS));
+		assertEquals("FAILED", jdbcTemplate.getJdbcTemplate().queryForObject(
+				"SELECT payment_status FROM payment WHERE transaction_id = ?", String.class, failed));
+	}
+
+	private long count(PaymentStatus status) {
+		return jdbcTemplate.getJdbcTemplate().queryForObject("SELECT COUNT(*) FROM payment WHERE payment_status = ?", Long.class, status.name());
+	}
+
+	private UUID insert(UUID customerId, LocalDateTime timestamp, PaymentStatus status) {
+		UUID transactionId = UUID.randomUUID();
+		jdbcTemplate.getJdbcTemplate().update("INSERT INTO payment VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+				transactionId, UUID.randomUUID(), customerId, 1000L, "USD", status.name(), "WALLET", timestamp);
+		return transactionId;
+	}
+}
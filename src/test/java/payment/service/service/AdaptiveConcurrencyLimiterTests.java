@@ -0,0 +1,84 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTests {
+
+	private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void testTryAcquire_KeepsReserveForHighPriority() {
+		AdaptiveConcurrencyLimiter limiter = limiter(10);
+
+		for (int i = 0; i < 8; i++) {
+			assertTrue(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Priority.NORMAL));
+		}
+		assertFalse(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Priority.NORMAL));
+		assertTrue(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Priority.HIGH));
+		assertTrue(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Priority.HIGH));
+		assertFalse(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Priority.HIGH));
+
+		limiter.release(System.nanoTime(), false);
+		assertEquals(9, limiter.getInFlight());
+		assertTrue(limiter.tryAcquire(AdaptiveConcurrencyLimiter.Priority.HIGH));
+		assertEquals(2, meterRegistry.get("concurrency.limiter.requests").tag("result", "shed").counters().stream()
+				.mapToDouble(counter -> counter.count()).sum());
+	}
+
+	@Test
+	void testLimit_FollowsLatency() {
+		AdaptiveConcurrencyLimiter limiter = limiter(20);
+		long now = System.nanoTime();
+
+		// Saturated within the latency target: one more per limit's worth of calls
+		for (int i = 0; i < 1000; i++) {
+			limiter.onSample(now += MILLIS, 10 * MILLIS, (int) limiter.getLimit(), false);
+		}
+		double grown = limiter.getLimit();
+		assertTrue(grown > 40, "limit " + grown);
+
+		// Slow calls cut it once per round trip, not once per call
+		limiter.onSample(now += MILLIS, 150 * MILLIS, (int) grown, false);
+		assertEquals(grown * 0.9, limiter.getLimit(), 1e-9);
+		limiter.onSample(now += MILLIS, 150 * MILLIS, (int) grown, false);
+		assertEquals(grown * 0.9, limiter.getLimit(), 1e-9);
+		for (int i = 0; i < 10; i++) {
+			limiter.onSample(now += 200 * MILLIS, 150 * MILLIS, (int) limiter.getLimit(), false);
+		}
+		assertTrue(limiter.getLimit() < grown / 2, "limit " + limiter.getLimit());
+
+		// Lightly used, no evidence either way
+		double before = limiter.getLimit();
+		limiter.onSample(now += MILLIS, MILLIS, 0, false);
+		assertEquals(before, limiter.getLimit());
+	}
+
+	@Test
+	void testLimit_BacksOffOnOverloadAndStaysInBounds() {
+		AdaptiveConcurrencyLimiter limiter = limiter(20);
+		long now = System.nanoTime();
+
+		limiter.onSample(now += MILLIS, MILLIS, 20, true);
+		assertEquals(18, limiter.getLimit(), 1e-9);
+		for (int i = 0; i < 100; i++) {
+			limiter.onSample(now += 2 * MILLIS, MILLIS, 20, true);
+		}
+		assertEquals(4, limiter.getLimit());
+		for (int i = 0; i < 10000; i++) {
+			limiter.onSample(now += MILLIS, MILLIS, (int) limiter.getLimit(), false);
+		}
+		assertEquals(100, limiter.getLimit());
+	}
+
+	private AdaptiveConcurrencyLimiter limiter(int initialLimit) {
+		return new AdaptiveConcurrencyLimiter("test", meterRegistry, true, initialLimit, 4, 100, Duration.ofMillis(100), 0.2, Duration.ofSeconds(1));
+	}
+}
@@ -0,0 +1,100 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import payment.service.config.ExecutionMode;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AsyncPaymentServiceTests {
+
+	private static final String TOKEN = "Bearer test-token";
+
+	private final PaymentService paymentService = mock(PaymentService.class);
+	private final CountDownLatch processing = new CountDownLatch(1);
+	private AsyncPaymentService asyncPaymentService;
+
+	@BeforeEach
+	void setUp() {
+		when(paymentService.getJwtTokenFromContext()).thenReturn(TOKEN);
+		when(paymentService.acceptPayment(any(), any(), any(), any())).thenAnswer(invocation -> {
+			Payment payment = new Payment(invocation.getArgument(0), invocation.getArgument(1), invocation.<Money>getArgument(2), PaymentStatus.PENDING);
+			payment.setTransactionId(UUID.randomUUID());
+			return payment;
+		});
+		// Processing blocks until the test lets it go
+		when(paymentService.completePayment(any(), any(), anyInt(), eq(TOKEN))).thenAnswer(invocation -> {
+			processing.await(5, TimeUnit.SECONDS);
+			Payment payment = invocation.getArgument(0);
+			payment.setPaymentStatus(PaymentStatus.SUCCESS);
+			return payment;
+		});
+		// One worker and one queued payment
+		asyncPaymentService = new AsyncPaymentService(paymentService, new SimpleMeterRegistry(), ExecutionMode.platform(), 1, 1, Duration.ofSeconds(2));
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		processing.countDown();
+		asyncPaymentService.shutdown();
+	}
+
+	@Test
+	void testAccept_ReturnsPendingPaymentAndCompletesInBackground() throws Exception {
+		Payment accepted = accept();
+
+		assertEquals(PaymentStatus.PENDING, accepted.getPaymentStatus());
+		var completion = asyncPaymentService.getCompletion(accepted.getTransactionId()).orElseThrow();
+		assertFalse(completion.isDone());
+
+		processing.countDown();
+		assertEquals(PaymentStatus.SUCCESS, completion.get(2, TimeUnit.SECONDS).getPaymentStatus());
+	}
+
+	@Test
+	void testAccept_RejectsWhenQueueIsFull() {
+		accept();
+		accept();
+
+		PaymentQueueFullException exception = assertThrows(PaymentQueueFullException.class, this::accept);
+		assertEquals(429, exception.getStatusCode().value());
+		assertEquals("2", exception.getHeaders().getFirst("Retry-After"));
+		verify(paymentService, times(2)).acceptPayment(any(), any(), any(), any());
+	}
+
+	@Test
+	void testAccept_ProcessorTimeoutLeavesPaymentPending() throws Exception {
+		when(paymentService.processingFailure(any(), any())).thenCallRealMethod();
+		doAnswer(invocation -> {
+			processing.await(5, TimeUnit.SECONDS);
+			throw paymentService.processingFailure(invocation.getArgument(0), new CompletionException(new TimeoutException()));
+		}).when(paymentService).completePayment(any(), any(), anyInt(), eq(TOKEN));
+
+		Payment accepted = accept();
+		var completion = asyncPaymentService.getCompletion(accepted.getTransactionId()).orElseThrow();
+		processing.countDown();
+
+		Payment completed = completion.get(2, TimeUnit.SECONDS);
+		assertEquals(PaymentStatus.PENDING, completed.getPaymentStatus());
+		verify(paymentService, never()).failPayment(any());
+	}
+
+	private Payment accept() {
+		return asyncPaymentService.accept(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), 1, Money.ofMinor(1000, Money.DEFAULT_CURRENCY), PaymentMode.CREDIT_CARD);
+	}
+}
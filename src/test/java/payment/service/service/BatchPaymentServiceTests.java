@@ -0,0 +1,175 @@
+package payment.service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentResult;
+import payment.service.domain.PaymentStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BatchPaymentServiceTests {
+
+	private static final String TOKEN = "Bearer test-token";
+	private static final UUID PRODUCT = UUID.randomUUID();
+	private static final UUID SCARCE_PRODUCT = UUID.randomUUID();
+	private static final UUID LEASED_PRODUCT = UUID.randomUUID();
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final PaymentService paymentService = mock(PaymentService.class);
+	private BatchPaymentService batchPaymentService;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		when(paymentService.hasStockAsync(eq(PRODUCT), anyInt(), eq(TOKEN))).thenReturn(CompletableFuture.completedFuture(true));
+		// Only one unit of the scarce product is left
+		when(paymentService.hasStockAsync(eq(SCARCE_PRODUCT), anyInt(), eq(TOKEN)))
+				.thenAnswer(invocation -> CompletableFuture.completedFuture((int) invocation.getArgument(1) <= 1));
+		when(paymentService.acceptPayments(anyList(), anyList())).thenAnswer(invocation -> {
+			List<Payment> payments = invocation.getArgument(0);
+			payments.forEach(payment -> payment.setTransactionId(UUID.randomUUID()));
+			return payments;
+		});
+		when(paymentService.runProcessor(any(), any())).thenAnswer(invocation -> {
+			Payment payment = invocation.getArgument(0);
+			payment.setPaymentStatus(PaymentStatus.SUCCESS);
+			return CompletableFuture.completedFuture(payment);
+		});
+		// Two items per chunk
+		batchPaymentService = new BatchPaymentService(paymentService, objectMapper, new SimpleMeterRegistry(), 2, 10, 4);
+	}
+
+	@Test
+	void testProcess_JsonArray() throws Exception {
+		String body = "[" + item(PRODUCT, 1) + "," + item(PRODUCT, 2) + "," + item(PRODUCT, 3) + "]";
+
+		List<PaymentResult> results = process(body);
+
+		assertEquals(3, results.size());
+		for (int i = 0; i < results.size(); i++) {
+			assertEquals(i, results.get(i).getIndex());
+			assertEquals(PaymentStatus.SUCCESS, results.get(i).getPaymentStatus());
+			assertNotNull(results.get(i).getTransactionId());
+		}
+		// Stock is checked once per product and chunk
+		verify(paymentService, times(2)).hasStockAsync(PRODUCT, 3, TOKEN);
+		verify(paymentService, times(2)).acceptPayments(anyList(), anyList());
+		verify(paymentService, times(2)).recordProcessedBatch(anyList(), anyList());
+	}
+
+	@Test
+	void testProcess_NdjsonWithInvalidAndOutOfStockItems() throws Exception {
+		String body = item(SCARCE_PRODUCT, 1) + "\n" + item(SCARCE_PRODUCT, 1) + "\n" + item(PRODUCT, 0) + "\n";
+
+		List<PaymentResult> results = process(body);
+
+		assertEquals(3, results.size());
+		assertEquals(PaymentStatus.SUCCESS, results.get(0).getPaymentStatus());
+		assertEquals("Insufficient Stock", results.get(1).getError());
+		assertNull(results.get(1).getTransactionId());
+		assertEquals("quantity must be positive", results.get(2).getError());
+		verify(paymentService).recordProcessedBatch(argThat(payments -> payments.size() == 1), argThat(events -> events.size() == 1));
+	}
+
+	@Test
+	void testProcess_TakesOnlyAdmittedItemsFromTheLease() throws Exception {
+		HttpServer inventory = inventoryGranting(10);
+		try {
+			StockReservationLedger ledger = new StockReservationLedger(new RestTemplate(), new SimpleMeterRegistry(), true,
+					"http://localhost:" + inventory.getAddress().getPort(), "/inventory/reserve", "/inventory/release",
+					10, 0, Duration.ofSeconds(30), Duration.ofSeconds(2), 1, Duration.ofSeconds(10));
+			when(paymentService.reserveStock(any(), anyInt(), any()))
+					.thenAnswer(invocation -> ledger.tryReserve(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+			when(paymentService.hasStockAsync(eq(LEASED_PRODUCT), anyInt(), eq(TOKEN))).thenReturn(CompletableFuture.completedFuture(false));
+			awaitLease(ledger);
+
+			// The lease of 10 covers the first two items of each chunk but not the third
+			batchPaymentService = new BatchPaymentService(paymentService, objectMapper, new SimpleMeterRegistry(), 3, 10, 4);
+			List<PaymentResult> results = process(item(LEASED_PRODUCT, 4) + "\n" + item(LEASED_PRODUCT, 4) + "\n" + item(LEASED_PRODUCT, 4) + "\n");
+
+			assertEquals(PaymentStatus.SUCCESS, results.get(0).getPaymentStatus());
+			assertEquals(PaymentStatus.SUCCESS, results.get(1).getPaymentStatus());
+			assertEquals("Insufficient Stock", results.get(2).getError());
+			verify(paymentService).acceptPayments(argThat(payments -> payments.size() == 2),
+					argThat(reservations -> reservations.size() == 2 && reservations.stream().allMatch(reservation -> reservation != null)));
+			// The rejected item took nothing: exactly 2 units are left
+			assertNotNull(ledger.tryReserve(LEASED_PRODUCT, 2, TOKEN));
+			assertNull(ledger.tryReserve(LEASED_PRODUCT, 1, TOKEN));
+		} finally {
+			inventory.stop(0);
+		}
+	}
+
+	@Test
+	void testProcess_MalformedBodyStopsWithError() throws Exception {
+		List<PaymentResult> results = process("[" + item(PRODUCT, 1) + ", {\"orderId\": ");
+
+		assertEquals(2, results.size());
+		assertEquals(PaymentStatus.SUCCESS, results.get(0).getPaymentStatus());
+		assertEquals(1, results.get(1).getIndex());
+		assertTrue(results.get(1).getError().startsWith("Malformed payment request"));
+	}
+
+	private String item(UUID productId, int quantity) {
+		return String.format("{\"orderId\":\"%s\",\"productId\":\"%s\",\"customerId\":\"%s\",\"quantity\":%d,\"totalAmount\":10.00,\"paymentMode\":\"CREDIT_CARD\"}",
+				UUID.randomUUID(), productId, UUID.randomUUID(), quantity);
+	}
+
+	// Stub inventory service granting one lease of the given quantity for LEASED_PRODUCT, and nothing after that
+	private static HttpServer inventoryGranting(int quantity) throws IOException {
+		AtomicBoolean granted = new AtomicBoolean();
+		HttpServer inventory = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		inventory.createContext("/inventory/reserve", exchange -> {
+			byte[] body = String.format("{\"leaseId\":\"%s\",\"productId\":\"%s\",\"quantity\":%d,\"expiresAt\":\"%s\"}",
+					UUID.randomUUID(), LEASED_PRODUCT, granted.getAndSet(true) ? 0 : quantity, Instant.now().plusSeconds(30)).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		inventory.start();
+		return inventory;
+	}
+
+	private static void awaitLease(StockReservationLedger ledger) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			StockReservationLedger.Reservation probe = ledger.tryReserve(LEASED_PRODUCT, 1, TOKEN);
+			if (probe != null) {
+				ledger.giveBack(probe);
+				return;
+			}
+			Thread.sleep(20);
+		}
+		fail("No lease was granted");
+	}
+
+	private List<PaymentResult> process(String body) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		batchPaymentService.process(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), out, TOKEN);
+		List<PaymentResult> results = new ArrayList<>();
+		for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+			results.add(objectMapper.readValue(line, PaymentResult.class));
+		}
+		return results;
+	}
+}
@@ -0,0 +1,180 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.web.server.ResponseStatusException;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentStatus;
+import payment.service.repository.PaymentRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class IdempotencyServiceTests {
+
+	private static final String KEY = "key-1";
+	private static final String FINGERPRINT = "order|product|customer|1|10.00 USD|WALLET";
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private final PaymentRepository paymentRepository = mock(PaymentRepository.class);
+	private final AtomicInteger attempts = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE payment_idempotency (idempotency_key VARCHAR(255) PRIMARY KEY, request_hash VARCHAR(64) NOT NULL, "
+				+ "transaction_id UUID, created_at TIMESTAMP(6) NOT NULL, completed_at TIMESTAMP(6))");
+	}
+
+	@AfterEach
+	void tearDown() {
+		database.shutdown();
+	}
+
+	@Test
+	void testExecute_ReplaysOnThisAndOtherNodes() {
+		IdempotencyService node = service();
+		IdempotencyService.Result first = node.execute(KEY, FINGERPRINT, this::pay);
+		when(paymentRepository.findById(first.getPayment().getTransactionId())).thenReturn(Optional.of(first.getPayment()));
+
+		IdempotencyService.Result again = node.execute(KEY, FINGERPRINT, this::pay);
+		IdempotencyService.Result otherNode = service().execute(KEY, FINGERPRINT, this::pay);
+
+		assertFalse(first.isReplayed());
+		assertTrue(again.isReplayed());
+		assertTrue(otherNode.isReplayed());
+		assertSame(first.getPayment(), again.getPayment());
+		assertEquals(first.getPayment().getTransactionId(), otherNode.getPayment().getTransactionId());
+		assertEquals(1, attempts.get());
+	}
+
+	@Test
+	void testExecute_RejectsKeyReusedForAnotherRequest() {
+		service().execute(KEY, FINGERPRINT, this::pay);
+
+		ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> service().execute(KEY, FINGERPRINT + "2", this::pay));
+		assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, e.getStatusCode());
+	}
+
+	@Test
+	void testExecute_ConcurrentDuplicateJoinsTheFirstRequest() throws Exception {
+		IdempotencyService service = service();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<IdempotencyService.Result> first = CompletableFuture.supplyAsync(() -> service.execute(KEY, FINGERPRINT, accepted -> {
+			started.countDown();
+			await(release);
+			return pay(accepted);
+		}));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		CompletableFuture<IdempotencyService.Result> duplicate = CompletableFuture.supplyAsync(() -> service.execute(KEY, FINGERPRINT, this::pay));
+		release.countDown();
+
+		assertFalse(first.get(5, TimeUnit.SECONDS).isReplayed());
+		assertTrue(duplicate.get(5, TimeUnit.SECONDS).isReplayed());
+		assertSame(first.get().getPayment(), duplicate.get().getPayment());
+		assertEquals(1, attempts.get());
+	}
+
+	@Test
+	void testExecute_ReleasesKeyWhenNothingWasStored() {
+		IdempotencyService service = service();
+		assertThrows(ResponseStatusException.class, () -> service.execute(KEY, FINGERPRINT, accepted -> {
+			throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Velocity limit exceeded");
+		}));
+
+		IdempotencyService.Result retry = service.execute(KEY, FINGERPRINT, this::pay);
+
+		assertFalse(retry.isReplayed());
+		assertEquals(1, attempts.get());
+	}
+
+	@Test
+	void testExecute_ReplaysStoredPaymentAfterFailure() {
+		IdempotencyService service = service();
+		Payment pending = payment();
+		when(paymentRepository.findById(pending.getTransactionId())).thenReturn(Optional.of(pending));
+		assertThrows(ResponseStatusException.class, () -> service.execute(KEY, FINGERPRINT, accepted -> {
+			accepted.accept(pending);
+			throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Payment processor timed out");
+		}));
+
+		IdempotencyService.Result retry = service.execute(KEY, FINGERPRINT, this::pay);
+
+		assertTrue(retry.isReplayed());
+		assertSame(pending, retry.getPayment());
+		assertEquals(0, attempts.get());
+	}
+
+	@Test
+	void testExecute_TakesOverAbandonedClaims() throws Exception {
+		// Claimed by a node that stopped before storing a payment, and by one still working on it
+		insertClaim(KEY, Instant.now().minus(Duration.ofMinutes(2)));
+		insertClaim("key-2", Instant.now());
+
+		assertFalse(service().execute(KEY, FINGERPRINT, this::pay).isReplayed());
+		ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> service().execute("key-2", FINGERPRINT, this::pay));
+		assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+		assertEquals(1, attempts.get());
+	}
+
+	private IdempotencyService service() {
+		return new IdempotencyService(jdbcTemplate, paymentRepository, new SimpleMeterRegistry(), 100, Duration.ofHours(24),
+				Duration.ofMillis(200), Duration.ofMinutes(1));
+	}
+
+	private void insertClaim(String key, Instant createdAt) throws NoSuchAlgorithmException {
+		String requestHash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(FINGERPRINT.getBytes(StandardCharsets.UTF_8)));
+		jdbcTemplate.update("INSERT INTO payment_idempotency (idempotency_key, request_hash, created_at) VALUES (?, ?, ?)",
+				key, requestHash, Timestamp.from(createdAt));
+	}
+
+	private Payment pay(Consumer<Payment> accepted) {
+		attempts.incrementAndGet();
+		Payment payment = payment();
+		accepted.accept(payment);
+		payment.setPaymentStatus(PaymentStatus.SUCCESS);
+		return payment;
+	}
+
+	private static Payment payment() {
+		Payment payment = new Payment(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinor(1000, Money.DEFAULT_CURRENCY), PaymentStatus.PENDING);
+		payment.setTransactionId(UUID.randomUUID());
+		return payment;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package payment.service.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointsSupplier;
+import org.springframework.boot.actuate.metrics.export.prometheus.PrometheusOutputFormat;
+import org.springframework.boot.actuate.metrics.export.prometheus.PrometheusScrapeEndpoint;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentEvent;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+import payment.service.repository.OutboxEventRepository;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Stage timers, the Prometheus endpoint and trace propagation as wired by the application context, with a stub
+// inventory service and a mock Kafka producer. Tests turn off metrics export and tracing unless asked not to.
+@AutoConfigureObservability
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:mem:observability",
+		"payment.journal.directory=target/observability-journal",
+		"payment.journal.key=test-journal-key",
+		"payment.outbox.relay-enabled=false",
+		"eureka.client.enabled=false",
+		"management.tracing.sampling.probability=1.0"})
+class ObservabilityTests {
+
+	private static final String TOKEN = "Bearer test-token";
+	private static final List<String> INVENTORY_TRACEPARENTS = new CopyOnWriteArrayList<>();
+
+	private static HttpServer inventory;
+
+	@Autowired
+	private PaymentService paymentService;
+
+	@Autowired
+	private OutboxEventRepository outboxEventRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private ObservationRegistry observationRegistry;
+
+	@Autowired
+	private Tracer tracer;
+
+	@Autowired
+	private Propagator propagator;
+
+	@Autowired
+	private WebEndpointsSupplier webEndpointsSupplier;
+
+	@Autowired
+	private PrometheusScrapeEndpoint prometheusScrapeEndpoint;
+
+	@DynamicPropertySource
+	static void inventoryService(DynamicPropertyRegistry registry) throws IOException {
+		// Every product is in stock
+		inventory = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		inventory.createContext("/inventory/validate", exchange -> {
+			INVENTORY_TRACEPARENTS.add(String.valueOf(exchange.getRequestHeaders().getFirst("traceparent")));
+			byte[] body = "true".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		inventory.start();
+		registry.add("spring.cloud.discovery.client.simple.instances.INVENTORY-SERVICE[0].uri",
+				() -> "http://localhost:" + inventory.getAddress().getPort());
+	}
+
+	@AfterAll
+	static void tearDown() {
+		inventory.stop(0);
+	}
+
+	@Test
+	void testStageTimersAreScrapedByPrometheus() {
+		paymentService.acceptPayment(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinor(1000, Money.DEFAULT_CURRENCY), PaymentMode.WALLET);
+		assertTrue(paymentService.hasStockAsync(UUID.randomUUID(), 1, TOKEN).join());
+
+		assertTrue(meterRegistry.get("payment.stage.duration").tag("stage", "create-payment").timer().count() > 0);
+		assertTrue(meterRegistry.get("payment.stage.duration").tag("stage", "validate-stock").timer().count() > 0);
+		assertTrue(webEndpointsSupplier.getEndpoints().stream().anyMatch(endpoint -> endpoint.getEndpointId().toString().equals("prometheus")));
+		String scrape = new String(prometheusScrapeEndpoint.scrape(PrometheusOutputFormat.CONTENT_TYPE_004, null).getBody(), StandardCharsets.UTF_8);
+		assertTrue(scrape.contains("payment_stage_duration_seconds_bucket{"));
+		assertTrue(scrape.contains("stage=\"create-payment\""));
+	}
+
+	@Test
+	void testInventoryCallsContinueTheTrace() {
+		String traceId = observed(() -> assertTrue(paymentService.hasStockAsync(UUID.randomUUID(), 1, TOKEN).join()));
+
+		assertTrue(INVENTORY_TRACEPARENTS.stream().anyMatch(traceparent -> traceparent.contains(traceId)), INVENTORY_TRACEPARENTS::toString);
+	}
+
+	@Test
+	void testOutboxRecordsContinueTheTraceThatRecordedThem() {
+		Payment payment = new Payment(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinor(1000, Money.DEFAULT_CURRENCY), PaymentStatus.SUCCESS);
+		payment.setTransactionId(UUID.randomUUID());
+		String traceId = observed(() -> outboxEventRepository.save(paymentService.paymentEvent(payment, UUID.randomUUID(), 1)));
+
+		// Relayed later, outside of that trace
+		MockProducer<String, PaymentEvent> producer = new MockProducer<>(true, new StringSerializer(), (topic, event) -> new byte[0]);
+		KafkaTemplate<String, PaymentEvent> kafkaTemplate = new KafkaTemplate<>(() -> producer);
+		kafkaTemplate.setObservationEnabled(true);
+		kafkaTemplate.setObservationRegistry(observationRegistry);
+		PaymentEventRelay relay = new PaymentEventRelay(jdbcTemplate, transactionTemplate, kafkaTemplate, meterRegistry, tracer, propagator,
+				500, 1, Duration.ofSeconds(30), Duration.ofSeconds(5));
+		relay.relayBatch();
+
+		ProducerRecord<String, PaymentEvent> record = producer.history().stream()
+				.filter(sent -> sent.value().getTransactionId().equals(payment.getTransactionId()))
+				.findFirst().orElseThrow();
+		Header traceparent = record.headers().lastHeader("traceparent");
+		assertNotNull(traceparent);
+		assertTrue(new String(traceparent.value(), StandardCharsets.UTF_8).contains(traceId));
+	}
+
+	// Runs the action within a new trace, like a request, and returns the trace id
+	private String observed(Runnable action) {
+		AtomicReference<String> traceId = new AtomicReference<>();
+		Observation.createNotStarted("test", observationRegistry).observe(() -> {
+			traceId.set(tracer.currentSpan().context().traceId());
+			action.run();
+		});
+		return traceId.get();
+	}
+}
@@ -0,0 +1,110 @@
+package payment.service.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentCacheInvalidation;
+import payment.service.domain.PaymentStatus;
+import payment.service.domain.PaymentStatusChangedEvent;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PaymentDetailsCacheTests {
+
+	private static final String TOPIC = "payment-cache-invalidation";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	@SuppressWarnings("unchecked")
+	private final KafkaTemplate<String, String> kafkaTemplate = mock(KafkaTemplate.class);
+	private final AtomicInteger loads = new AtomicInteger();
+	private PaymentDetailsCache cache;
+	private Payment stored;
+
+	@BeforeEach
+	void setUp() {
+		stored = new Payment(UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("10.00"), PaymentStatus.PENDING);
+		stored.setTransactionId(UUID.randomUUID());
+		cache = new PaymentDetailsCache(new SimpleMeterRegistry(), kafkaTemplate, objectMapper, true, 100, Duration.ofMinutes(1), true, TOPIC);
+	}
+
+	@Test
+	void testGet_LoadsOnceAndServesCopies() {
+		Payment first = get().orElseThrow();
+		first.setPaymentStatus(PaymentStatus.FAILED);
+		Payment second = get().orElseThrow();
+
+		assertEquals(1, loads.get());
+		assertEquals(PaymentStatus.PENDING, second.getPaymentStatus());
+		assertEquals(stored.getTransactionId(), second.getTransactionId());
+	}
+
+	@Test
+	void testStatusChange_InvalidatesAndIsBroadcast() throws Exception {
+		get();
+		stored.setPaymentStatus(PaymentStatus.SUCCESS);
+		cache.onStatusChanged(new PaymentStatusChangedEvent(List.of(stored.getTransactionId())));
+
+		assertEquals(PaymentStatus.SUCCESS, get().orElseThrow().getPaymentStatus());
+		assertEquals(2, loads.get());
+
+		cache.broadcastInvalidations();
+		ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+		verify(kafkaTemplate).send(eq(TOPIC), anyString(), message.capture());
+		PaymentCacheInvalidation invalidation = objectMapper.readValue(message.getValue(), PaymentCacheInvalidation.class);
+		assertEquals(List.of(stored.getTransactionId()), invalidation.getTransactionIds());
+
+		// The node that sent it ignores its own message
+		cache.onInvalidationMessage(message.getValue());
+		get();
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void testInvalidationMessageFromOtherNode_Invalidates() throws Exception {
+		get();
+		String message = objectMapper.writeValueAsString(
+				new PaymentCacheInvalidation("other-node", System.currentTimeMillis(), List.of(stored.getTransactionId())));
+
+		cache.onInvalidationMessage(message);
+		get();
+
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void testGet_DoesNotCacheValueReadBeforeConcurrentInvalidation() {
+		// The status changes while the old details are being read
+		cache.get(stored.getTransactionId(), transactionId -> {
+			Optional<Payment> old = load(transactionId);
+			cache.onStatusChanged(new PaymentStatusChangedEvent(List.of(transactionId)));
+			return old;
+		});
+		get();
+
+		assertEquals(2, loads.get());
+	}
+
+	private Optional<Payment> get() {
+		return cache.get(stored.getTransactionId(), this::load);
+	}
+
+	private Optional<Payment> load(UUID transactionId) {
+		loads.incrementAndGet();
+		Payment copy = new Payment(stored.getOrderId(), stored.getCustomerId(), stored.getTotalAmount(), stored.getPaymentStatus());
+		copy.setTransactionId(transactionId);
+		return Optional.of(copy);
+	}
+}
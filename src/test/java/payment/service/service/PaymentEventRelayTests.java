@@ -0,0 +1,93 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.propagation.Propagator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import payment.service.domain.PaymentEvent;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PaymentEventRelayTests {
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private KafkaTemplate<String, PaymentEvent> kafkaTemplate;
+	private PaymentEventRelay relay;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE payment_outbox (id BIGINT PRIMARY KEY, topic VARCHAR(255) NOT NULL, "
+				+ "transaction_id UUID NOT NULL, product_id UUID NOT NULL, quantity INT NOT NULL, amount_minor BIGINT, currency VARCHAR(3), "
+				+ "created_at TIMESTAMP(6) WITH TIME ZONE NOT NULL, traceparent VARCHAR(55), claimed_by VARCHAR(255), claimed_at TIMESTAMP(6) WITH TIME ZONE)");
+
+		kafkaTemplate = mock(KafkaTemplate.class);
+		when(kafkaTemplate.send(anyString(), anyString(), any(PaymentEvent.class))).thenReturn(CompletableFuture.completedFuture(null));
+		relay = new PaymentEventRelay(jdbcTemplate, new TransactionTemplate(new DataSourceTransactionManager(database)),
+				kafkaTemplate, new SimpleMeterRegistry(), Tracer.NOOP, Propagator.NOOP, 2, 10, Duration.ofSeconds(30), Duration.ofSeconds(1));
+	}
+
+	@AfterEach
+	void tearDown() {
+		database.shutdown();
+	}
+
+	@Test
+	void testRelay_PublishesKeyedByProductAndDeletesInBatches() {
+		UUID productId = UUID.randomUUID();
+		insert(1, productId);
+		insert(2, productId);
+		insert(3, productId);
+
+		relay.relay();
+
+		verify(kafkaTemplate, times(3)).send(eq("payment-success"), eq(productId.toString()), any(PaymentEvent.class));
+		assertEquals(0, count());
+	}
+
+	@Test
+	void testRelay_ReleasesFailedSendsForRetry() {
+		UUID failingProduct = UUID.randomUUID();
+		when(kafkaTemplate.send(anyString(), eq(failingProduct.toString()), any(PaymentEvent.class)))
+				.thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+		insert(1, UUID.randomUUID());
+		insert(2, failingProduct);
+
+		assertEquals(2, relay.relayBatch());
+
+		List<Long> remaining = jdbcTemplate.queryForList("SELECT id FROM payment_outbox WHERE claimed_by IS NULL", Long.class);
+		assertEquals(List.of(2L), remaining);
+	}
+
+	private void insert(long id, UUID productId) {
+		jdbcTemplate.update("INSERT INTO payment_outbox (id, topic, transaction_id, product_id, quantity, created_at) VALUES (?, ?, ?, ?, ?, ?)",
+				id, "payment-success", UUID.randomUUID(), productId, 1, Timestamp.from(Instant.now()));
+	}
+
+	private int count() {
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payment_outbox", Integer.class);
+	}
+}
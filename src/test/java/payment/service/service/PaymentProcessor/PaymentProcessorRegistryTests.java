@@ -0,0 +1,104 @@
+package payment.service.service.PaymentProcessor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import payment.service.config.ExecutionMode;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentProcessorRegistryTests {
+
+	private final CountDownLatch gatewayReleased = new CountDownLatch(1);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private PaymentProcessorRegistry registry;
+
+	@BeforeEach
+	void setUp() {
+		// PayPal: one call at a time, one waiting, 500ms to answer
+		MockEnvironment environment = new MockEnvironment()
+				.withProperty("payment.processor.paypal.max-concurrent", "1")
+				.withProperty("payment.processor.paypal.queue-capacity", "1")
+				.withProperty("payment.processor.paypal.timeout", "500ms");
+		registry = new PaymentProcessorRegistry(List.of(new CreditCardPaymentProcessor(), new SlowPayPalPaymentProcessor()),
+				ExecutionMode.platform(), meterRegistry, environment);
+	}
+
+	@AfterEach
+	void tearDown() {
+		gatewayReleased.countDown();
+		registry.shutdown();
+	}
+
+	@Test
+	void testProcessPayment_SlowModeDoesNotStarveOtherModes() throws Exception {
+		CompletableFuture<Payment> running = process(PaymentMode.PAYPAL);
+		CompletableFuture<Payment> queued = process(PaymentMode.PAYPAL);
+		CompletableFuture<Payment> rejected = process(PaymentMode.PAYPAL);
+
+		// The PayPal bulkhead is full, card payments still go through right away
+		assertEquals(PaymentStatus.SUCCESS, process(PaymentMode.CREDIT_CARD).get(200, TimeUnit.MILLISECONDS).getPaymentStatus());
+
+		ExecutionException rejection = assertThrows(ExecutionException.class, rejected::get);
+		assertInstanceOf(RejectedExecutionException.class, rejection.getCause());
+		ExecutionException timeout = assertThrows(ExecutionException.class, () -> running.get(2, TimeUnit.SECONDS));
+		assertInstanceOf(TimeoutException.class, timeout.getCause());
+		assertThrows(ExecutionException.class, () -> queued.get(2, TimeUnit.SECONDS));
+
+		assertEquals(1, meterRegistry.get("payment.processor.rejected").tag("mode", "PAYPAL").counter().count());
+		assertEquals(2, meterRegistry.get("payment.processor.timeouts").tag("mode", "PAYPAL").counter().count());
+		assertEquals(0, meterRegistry.get("payment.processor.rejected").tag("mode", "CREDIT_CARD").counter().count());
+	}
+
+	@Test
+	void testProcessPayment_CapacityIsReturnedAfterTimeout() throws Exception {
+		CompletableFuture<Payment> first = process(PaymentMode.PAYPAL);
+		CompletableFuture<Payment> second = process(PaymentMode.PAYPAL);
+		assertThrows(ExecutionException.class, () -> first.get(2, TimeUnit.SECONDS));
+		assertThrows(ExecutionException.class, () -> second.get(2, TimeUnit.SECONDS));
+
+		gatewayReleased.countDown();
+		assertEquals(PaymentStatus.SUCCESS, process(PaymentMode.PAYPAL).get(2, TimeUnit.SECONDS).getPaymentStatus());
+	}
+
+	@Test
+	void testGet_UnknownMode() {
+		assertThrows(IllegalArgumentException.class, () -> registry.get(PaymentMode.WALLET));
+	}
+
+	private CompletableFuture<Payment> process(PaymentMode mode) {
+		Payment payment = new Payment(UUID.randomUUID(), UUID.randomUUID(), BigDecimal.TEN, PaymentStatus.PENDING);
+		return registry.get(mode).processPayment(payment, payment.getOrderId(), UUID.randomUUID(), payment.getCustomerId(), payment.getAmount());
+	}
+
+	// Simulated gateway that hangs until the test releases it
+	private class SlowPayPalPaymentProcessor extends PayPalPaymentProcessor {
+
+		@Override
+		public Payment processPayment(Payment payment, UUID orderId, UUID productId, UUID customerId, Money totalAmount) {
+			try {
+				gatewayReleased.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Gateway call interrupted", e);
+			}
+			return super.processPayment(payment, orderId, productId, customerId, totalAmount);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentEvent;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+import payment.service.repository.OutboxEventRepository;
+import payment.service.repository.PaymentJournal;
+import payment.service.repository.PaymentJournal.EntryType;
+import payment.service.repository.PaymentRepository;
+import payment.service.repository.PaymentStore;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PaymentServiceTests {
+
+	@Mock
+	private PaymentRepository paymentRepository;
+
+	@Mock
+	private PaymentStore paymentStore;
+
+	@Mock
+	private PaymentJournal paymentJournal;
+
+	@Mock
+	private PaymentStatsAggregator paymentStatsAggregator;
+
+	@Mock
+	private OutboxEventRepository outboxEventRepository;
+
+	@Mock
+	private StockReservationLedger stockReservationLedger;
+
+	@Mock
+	private TransactionTemplate transactionTemplate;
+
+	@Mock
+	private ApplicationEventPublisher eventPublisher;
+
+	@Spy
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@InjectMocks
+	private PaymentService paymentService;
+
+	private final List<Payment> stored = new ArrayList<>();
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	void setUp() {
+		MockitoAnnotations.openMocks(this);
+		paymentService.init();
+		when(transactionTemplate.execute(any())).thenAnswer(invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+		// The payments in the table, locked as they are
+		when(paymentRepository.findForUpdate(anyCollection())).thenAnswer(invocation -> {
+			Collection<UUID> ids = invocation.getArgument(0);
+			return stored.stream().filter(payment -> ids.contains(payment.getTransactionId())).toList();
+		});
+		when(paymentStore.updateStatus(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+	}
+
+	@Test
+	void testProcessingFailure_GivesBackLeasedStockOnlyOnceThePaymentFailed() {
+		Payment timedOut = store(PaymentStatus.PENDING);
+		Payment failed = store(PaymentStatus.PENDING);
+		Payment succeeded = store(PaymentStatus.PENDING);
+
+		paymentService.processingFailure(timedOut, new TimeoutException());
+		paymentService.processingFailure(failed, new IllegalStateException("Declined"));
+		succeeded.setPaymentStatus(PaymentStatus.SUCCESS);
+		paymentService.recordProcessed(succeeded, UUID.randomUUID(), 1);
+
+		verify(stockReservationLedger).giveBack(failed.getTransactionId());
+		verify(stockReservationLedger).settled(succeeded.getTransactionId());
+		verify(stockReservationLedger, never()).giveBack(timedOut.getTransactionId());
+		verify(stockReservationLedger, never()).settled(timedOut.getTransactionId());
+		assertEquals(PaymentStatus.PENDING, timedOut.getPaymentStatus());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void testListenForPaymentStatusBatch_LastEventWinsAndMalformedRecordsAreSkipped() {
+		Payment first = store(PaymentStatus.PENDING);
+		Payment second = store(PaymentStatus.PENDING);
+		UUID unknown = UUID.randomUUID();
+
+		paymentService.listenForPaymentStatusBatch(Arrays.asList(
+				event(first.getTransactionId(), PaymentStatus.SUCCESS),
+				null,
+				event(second.getTransactionId(), PaymentStatus.SUCCESS),
+				event(unknown, PaymentStatus.FAILED),
+				event(first.getTransactionId(), PaymentStatus.FAILED)));
+
+		ArgumentCaptor<Map<UUID, PaymentStatus>> statuses = ArgumentCaptor.forClass(Map.class);
+		verify(paymentRepository).updatePaymentStatuses(statuses.capture());
+		assertEquals(Map.of(first.getTransactionId(), PaymentStatus.FAILED, second.getTransactionId(), PaymentStatus.SUCCESS,
+				unknown, PaymentStatus.FAILED), statuses.getValue());
+
+		// Only payments that were found are journaled and counted
+		verify(paymentJournal).append(EntryType.STATUS_UPDATED, first.getTransactionId(), PaymentStatus.FAILED);
+		verify(paymentJournal).append(EntryType.STATUS_UPDATED, second.getTransactionId(), PaymentStatus.SUCCESS);
+		verify(paymentJournal, never()).append(any(EntryType.class), eq(unknown), any(PaymentStatus.class));
+		verify(paymentStatsAggregator).statusChanged(any(Payment.class), eq(PaymentStatus.PENDING), eq(PaymentStatus.FAILED));
+		verify(paymentStatsAggregator).statusChanged(any(Payment.class), eq(PaymentStatus.PENDING), eq(PaymentStatus.SUCCESS));
+	}
+
+	@Test
+	void testListenForPaymentStatusBatch_NothingToUpdate() {
+		PaymentEvent withoutStatus = event(UUID.randomUUID(), null);
+
+		paymentService.listenForPaymentStatusBatch(Arrays.asList(null, withoutStatus));
+
+		verifyNoInteractions(paymentRepository, paymentJournal, paymentStatsAggregator);
+	}
+
+	private Payment store(PaymentStatus status) {
+		Payment payment = new Payment(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinor(1000, Money.DEFAULT_CURRENCY), status);
+		payment.setTransactionId(UUID.randomUUID());
+		payment.setPaymentMode(PaymentMode.WALLET);
+		payment.setTimestamp(LocalDateTime.now());
+		stored.add(payment);
+		return payment;
+	}
+
+	private static PaymentEvent event(UUID transactionId, PaymentStatus status) {
+		PaymentEvent event = new PaymentEvent(UUID.randomUUID(), 1, transactionId);
+		event.setPaymentStatus(status);
+		return event;
+	}
+}
@@ -0,0 +1,142 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatsBucket;
+import payment.service.domain.PaymentStatus;
+import payment.service.repository.PaymentArchive;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PaymentStatsAggregatorTests {
+
+	private static final LocalDateTime NINE = LocalDateTime.of(2024, 3, 1, 9, 0);
+	private static final LocalDateTime TEN = NINE.plusHours(1);
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private final PaymentArchive paymentArchive = mock(PaymentArchive.class);
+
+	@BeforeEach
+	void setUp() {
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE payment (transaction_id UUID PRIMARY KEY, order_id UUID NOT NULL, customer_id UUID NOT NULL, "
+				+ "total_amount_minor BIGINT NOT NULL, currency VARCHAR(3) NOT NULL, payment_status VARCHAR(16), payment_mode VARCHAR(16), timestamp TIMESTAMP(6))");
+		jdbcTemplate.execute("CREATE TABLE payment_stats (bucket_hour TIMESTAMP(6), payment_mode VARCHAR(16), payment_status VARCHAR(16), currency VARCHAR(3), "
+				+ "payment_count BIGINT NOT NULL, total_amount_minor BIGINT NOT NULL, PRIMARY KEY (bucket_hour, payment_mode, payment_status, currency))");
+	}
+
+	@AfterEach
+	void tearDown() {
+		database.shutdown();
+	}
+
+	@Test
+	void testFindStats_AddsCheckpointsOfEveryNodeAndWhatIsPending() {
+		PaymentStatsAggregator node = aggregator();
+		PaymentStatsAggregator otherNode = aggregator();
+		Payment first = payment(NINE.plusMinutes(5), 1000);
+		Payment second = payment(NINE.plusMinutes(50), 250);
+		node.created(first);
+		node.created(second);
+		node.statusChanged(first, PaymentStatus.PENDING, PaymentStatus.SUCCESS);
+		otherNode.created(payment(TEN, 99));
+		node.checkpoint();
+		otherNode.checkpoint();
+
+		// Not checkpointed yet
+		node.statusChanged(second, PaymentStatus.PENDING, PaymentStatus.FAILED);
+
+		List<PaymentStatsBucket> stats = node.findStats(NINE, TEN.plusHours(1));
+		assertEquals(3, stats.size());
+		assertBucket(stats.get(0), NINE, PaymentStatus.SUCCESS, 1, "10.00");
+		assertBucket(stats.get(1), NINE, PaymentStatus.FAILED, 1, "2.50");
+		assertBucket(stats.get(2), TEN, PaymentStatus.PENDING, 1, "0.99");
+		assertEquals(2, otherNode.findStats(NINE, TEN).size());
+
+		node.checkpoint();
+		assertEquals(0, jdbcTemplate.queryForObject("SELECT payment_count FROM payment_stats WHERE payment_status = 'PENDING' AND bucket_hour = ?",
+				Long.class, NINE));
+		assertEquals(3, node.findStats(NINE, TEN.plusHours(1)).size());
+	}
+
+	@Test
+	void testRebuild_RecomputesHoursStillInThePaymentTable() {
+		PaymentStatsAggregator aggregator = aggregator();
+		aggregator.created(payment(NINE, 500));
+		aggregator.checkpoint();
+		insert(payment(NINE.plusMinutes(1), 300), PaymentStatus.SUCCESS);
+		insert(payment(NINE.plusMinutes(2), 200), PaymentStatus.SUCCESS);
+		insert(payment(TEN.plusMinutes(59), 100), PaymentStatus.FAILED);
+		aggregator.created(payment(TEN, 1));
+
+		aggregator.rebuild();
+
+		List<PaymentStatsBucket> stats = aggregator.findStats(NINE, TEN.plusHours(1));
+		assertEquals(2, stats.size());
+		assertBucket(stats.get(0), NINE, PaymentStatus.SUCCESS, 2, "5.00");
+		assertBucket(stats.get(1), TEN, PaymentStatus.FAILED, 1, "1.00");
+
+		// Hours before the archive boundary are no longer in the payment table and keep their rows
+		when(paymentArchive.getBoundary()).thenReturn(TEN);
+		jdbcTemplate.update("DELETE FROM payment WHERE timestamp < ?", TEN);
+		aggregator.rebuild();
+		assertEquals(2, aggregator.findStats(NINE, TEN.plusHours(1)).size());
+	}
+
+	@Test
+	void testFindStats_RejectsTooLongRanges() {
+		PaymentStatsAggregator aggregator = aggregator();
+		assertThrows(ResponseStatusException.class, () -> aggregator.findStats(NINE, NINE.plusDays(2)));
+		assertThrows(ResponseStatusException.class, () -> aggregator.findStats(TEN, NINE));
+	}
+
+	private PaymentStatsAggregator aggregator() {
+		return new PaymentStatsAggregator(jdbcTemplate, new TransactionTemplate(new DataSourceTransactionManager(database)),
+				paymentArchive, new SimpleMeterRegistry(), false, Duration.ofDays(1));
+	}
+
+	private void insert(Payment payment, PaymentStatus status) {
+		jdbcTemplate.update("INSERT INTO payment VALUES (?, ?, ?, ?, ?, ?, ?, ?)", payment.getTransactionId(), payment.getOrderId(),
+				payment.getCustomerId(), payment.getAmount().minorUnits(), payment.getCurrency(), status.name(), payment.getPaymentMode().name(),
+				payment.getTimestamp());
+	}
+
+	private static void assertBucket(PaymentStatsBucket bucket, LocalDateTime hour, PaymentStatus status, long count, String total) {
+		assertEquals(hour, bucket.getHour());
+		assertEquals(PaymentMode.CREDIT_CARD, bucket.getPaymentMode());
+		assertEquals(status, bucket.getPaymentStatus());
+		assertEquals("USD", bucket.getCurrency());
+		assertEquals(count, bucket.getPaymentCount());
+		assertEquals(new BigDecimal(total), bucket.getTotalAmount());
+	}
+
+	private static Payment payment(LocalDateTime timestamp, long amountMinor) {
+		Payment payment = new Payment(UUID.randomUUID(), UUID.randomUUID(), Money.ofMinor(amountMinor, Money.DEFAULT_CURRENCY), PaymentStatus.PENDING);
+		payment.setTransactionId(UUID.randomUUID());
+		payment.setPaymentMode(PaymentMode.CREDIT_CARD);
+		payment.setTimestamp(timestamp);
+		return payment;
+	}
+}
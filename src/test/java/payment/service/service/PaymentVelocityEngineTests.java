@@ -0,0 +1,116 @@
+package payment.service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import payment.service.domain.Money;
+
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentVelocityEngineTests {
+
+	private static final Currency USD = Money.DEFAULT_CURRENCY;
+
+	private final AtomicLong nanos = new AtomicLong();
+
+	@Test
+	void testCountPerMinute_SlidesWithBuckets() {
+		PaymentVelocityEngine engine = engine(3, 0, 0, 0, 1000);
+		UUID customer = UUID.randomUUID();
+
+		for (int i = 0; i < 3; i++) {
+			assertNull(engine.tryRecord(customer, usd(100)));
+			advanceSeconds(10);
+		}
+		assertEquals(PaymentVelocityEngine.Limit.COUNT_PER_MINUTE, engine.tryRecord(customer, usd(100)));
+		// Other customers are not affected
+		assertNull(engine.tryRecord(UUID.randomUUID(), usd(100)));
+
+		// A minute after the first payment it still counts, until its bucket leaves the window
+		advanceSeconds(30);
+		assertEquals(PaymentVelocityEngine.Limit.COUNT_PER_MINUTE, engine.tryRecord(customer, usd(100)));
+		advanceSeconds(10);
+		assertNull(engine.tryRecord(customer, usd(100)));
+		assertEquals(PaymentVelocityEngine.Limit.COUNT_PER_MINUTE, engine.tryRecord(customer, usd(100)));
+	}
+
+	@Test
+	void testAmountLimits_CountOnlyTheConfiguredCurrency() {
+		PaymentVelocityEngine engine = engine(0, 500, 0, 800, 1000);
+		UUID customer = UUID.randomUUID();
+
+		assertNull(engine.tryRecord(customer, usd(300)));
+		assertEquals(PaymentVelocityEngine.Limit.AMOUNT_PER_MINUTE, engine.tryRecord(customer, usd(201)));
+		assertNull(engine.tryRecord(customer, usd(200)));
+		assertNull(engine.tryRecord(customer, Money.ofMinor(1_000_000, Currency.getInstance("EUR"))));
+
+		advanceSeconds(70);
+		assertNull(engine.tryRecord(customer, usd(300)));
+		assertEquals(PaymentVelocityEngine.Limit.AMOUNT_PER_HOUR, engine.tryRecord(customer, usd(1)));
+
+		advanceSeconds(4200);
+		assertNull(engine.tryRecord(customer, usd(500)));
+	}
+
+	@Test
+	void testCapacity_DropsLeastRecentlySeenAndIdleCustomers() {
+		PaymentVelocityEngine engine = engine(1, 0, 0, 0, 64);
+		List<UUID> customers = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			UUID customer = UUID.randomUUID();
+			customers.add(customer);
+			assertNull(engine.tryRecord(customer, usd(1)));
+			assertTrue(engine.size() <= 64);
+		}
+		// Only the most recent customers of each stripe are still limited
+		UUID recent = customers.get(customers.size() - 1);
+		assertEquals(PaymentVelocityEngine.Limit.COUNT_PER_MINUTE, engine.tryRecord(recent, usd(1)));
+
+		advanceSeconds(4200);
+		engine.evictIdle();
+		assertEquals(0, engine.size());
+	}
+
+	@Test
+	void testGrowthAndRemoval_KeepEveryCustomer() {
+		PaymentVelocityEngine engine = engine(0, 0, 1, 0, 100_000);
+		List<UUID> customers = new ArrayList<>();
+		for (int i = 0; i < 20_000; i++) {
+			if (i == 10_000) {
+				advanceSeconds(1800);
+			}
+			customers.add(UUID.randomUUID());
+			assertNull(engine.tryRecord(customers.get(i), usd(1)));
+		}
+		assertEquals(20_000, engine.size());
+
+		// Evicts the first half, idle for 70 minutes by then, leaving the index consistent for the rest
+		advanceSeconds(2400);
+		engine.evictIdle();
+		assertEquals(10_000, engine.size());
+		for (UUID customer : customers.subList(10_000, 20_000)) {
+			assertEquals(PaymentVelocityEngine.Limit.COUNT_PER_HOUR, engine.tryRecord(customer, usd(1)));
+		}
+		assertNull(engine.tryRecord(customers.get(0), usd(1)));
+		assertEquals(10_001, engine.size());
+	}
+
+	private PaymentVelocityEngine engine(int countPerMinute, long amountPerMinute, int countPerHour, long amountPerHour, int maxCustomers) {
+		return new PaymentVelocityEngine(new SimpleMeterRegistry(), true, USD, countPerMinute, usd(amountPerMinute),
+				countPerHour, usd(amountPerHour), maxCustomers, nanos::get);
+	}
+
+	private void advanceSeconds(long seconds) {
+		nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+	}
+
+	private static Money usd(long minorUnits) {
+		return Money.ofMinor(minorUnits, USD);
+	}
+}
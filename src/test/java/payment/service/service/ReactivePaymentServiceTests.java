@@ -0,0 +1,168 @@
+package payment.service.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import payment.service.domain.Money;
+import payment.service.domain.Payment;
+import payment.service.domain.PaymentMode;
+import payment.service.domain.PaymentStatus;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReactivePaymentServiceTests {
+
+	private static final String TOKEN = "Bearer test-token";
+
+	private final PaymentService paymentService = mock(PaymentService.class);
+	private final CountDownLatch inventoryCalled = new CountDownLatch(1);
+
+	private HttpServer inventory;
+	private volatile String stockAnswer = "true";
+	private volatile long inventoryDelayMs;
+	private ReactivePaymentService reactivePaymentService;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		inventory = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		inventory.setExecutor(Executors.newCachedThreadPool());
+		inventory.createContext("/inventory/validate", exchange -> {
+			inventoryCalled.countDown();
+			try {
+				Thread.sleep(inventoryDelayMs);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] body = stockAnswer.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		inventory.start();
+
+		when(paymentService.acceptPayment(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+			Payment payment = new Payment(invocation.getArgument(0), invocation.getArgument(1), invocation.<Money>getArgument(2), PaymentStatus.PENDING);
+			payment.setPaymentMode(invocation.getArgument(3));
+			return payment;
+		});
+		when(paymentService.runProcessor(any(), any())).thenAnswer(invocation -> {
+			Payment payment = invocation.getArgument(0);
+			payment.setPaymentStatus(PaymentStatus.SUCCESS);
+			return CompletableFuture.completedFuture(payment);
+		});
+		when(paymentService.recordProcessed(any(), any(), anyInt())).thenAnswer(invocation -> invocation.getArgument(0));
+		when(paymentService.failPayment(any())).thenAnswer(invocation -> {
+			Payment payment = invocation.getArgument(0);
+			payment.setPaymentStatus(PaymentStatus.FAILED);
+			return payment;
+		});
+		reactivePaymentService = service(Duration.ofSeconds(5));
+	}
+
+	@AfterEach
+	void tearDown() {
+		reactivePaymentService.shutdown();
+		inventory.stop(0);
+	}
+
+	@Test
+	void testProcessPayment_Success() {
+		Payment payment = process().block(Duration.ofSeconds(5));
+
+		assertNotNull(payment);
+		assertEquals(PaymentStatus.SUCCESS, payment.getPaymentStatus());
+		assertEquals(PaymentMode.WALLET, payment.getPaymentMode());
+		verify(paymentService).recordProcessed(any(), any(), eq(1));
+	}
+
+	@Test
+	void testProcessPayment_InsufficientStock() {
+		stockAnswer = "false";
+
+		RuntimeException exception = assertThrows(RuntimeException.class, () -> process().block(Duration.ofSeconds(5)));
+
+		assertEquals("Insufficient Stock", exception.getMessage());
+		verify(paymentService, never()).acceptPayment(any(), any(), any(), any(), any());
+	}
+
+	@Test
+	void testProcessPayment_CancelledBeforePersisting() throws InterruptedException {
+		inventoryDelayMs = 1000;
+
+		Disposable subscription = process().subscribe();
+		assertTrue(inventoryCalled.await(2, TimeUnit.SECONDS));
+		subscription.dispose();
+
+		// The inventory answer arrives after the cancellation and must not lead to a payment
+		Thread.sleep(1500);
+		verify(paymentService, never()).acceptPayment(any(), any(), any(), any(), any());
+	}
+
+	@Test
+	void testProcessPayment_CancelledAfterPersistingFailsThePayment() throws InterruptedException {
+		CountDownLatch accepting = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			accepting.countDown();
+			release.await(5, TimeUnit.SECONDS);
+			Payment payment = new Payment(invocation.getArgument(0), invocation.getArgument(1), invocation.<Money>getArgument(2), PaymentStatus.PENDING);
+			payment.setTransactionId(UUID.randomUUID());
+			return payment;
+		}).when(paymentService).acceptPayment(any(), any(), any(), any(), any());
+
+		Disposable subscription = process().subscribe();
+		assertTrue(accepting.await(2, TimeUnit.SECONDS));
+		subscription.dispose();
+		release.countDown();
+
+		// Stored after the cancellation, never sent to the processor
+		verify(paymentService, timeout(2000)).failPayment(any());
+		verify(paymentService, never()).runProcessor(any(), any());
+	}
+
+	@Test
+	void testProcessPayment_TimeoutLetsStartedProcessorFinish() {
+		reactivePaymentService.shutdown();
+		reactivePaymentService = service(Duration.ofMillis(200));
+		doAnswer(invocation -> {
+			Payment payment = invocation.getArgument(0);
+			payment.setPaymentStatus(PaymentStatus.SUCCESS);
+			return CompletableFuture.supplyAsync(() -> payment, CompletableFuture.delayedExecutor(500, TimeUnit.MILLISECONDS));
+		}).when(paymentService).runProcessor(any(), any());
+
+		assertThrows(RuntimeException.class, () -> process().block(Duration.ofSeconds(5)));
+
+		// The processor was called, so its outcome is recorded rather than the payment failed
+		verify(paymentService, timeout(2000)).recordProcessed(any(), any(), eq(1));
+		verify(paymentService, never()).failPayment(any());
+	}
+
+	private ReactivePaymentService service(Duration timeout) {
+		return new ReactivePaymentService(paymentService, mock(StockReservationLedger.class), mock(StockValidationBatcher.class),
+				WebClient.builder(), new SimpleMeterRegistry(), "http://localhost:" + inventory.getAddress().getPort(), "/inventory/validate",
+				Duration.ofSeconds(2), timeout, 2, 10);
+	}
+
+	private Mono<Payment> process() {
+		return reactivePaymentService.processPayment(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), 1,
+				Money.ofMinor(1000, Money.DEFAULT_CURRENCY), PaymentMode.WALLET, TOKEN);
+	}
+}
@@ -0,0 +1,160 @@
+package payment.service.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockReservationLedgerTests {
+
+	private static final String TOKEN = "Bearer test-token";
+
+	private final UUID productId = UUID.randomUUID();
+	private final AtomicInteger reserveCalls = new AtomicInteger();
+	private final List<String> releases = new CopyOnWriteArrayList<>();
+
+	private HttpServer inventory;
+	private volatile Duration grantedTtl = Duration.ofSeconds(30);
+
+	@BeforeEach
+	void setUp() throws IOException {
+		// Stub inventory service granting 10 units per reservation
+		inventory = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		inventory.createContext("/inventory/reserve", exchange -> {
+			reserveCalls.incrementAndGet();
+			respond(exchange, String.format("{\"leaseId\":\"%s\",\"productId\":\"%s\",\"quantity\":10,\"expiresAt\":\"%s\"}",
+					UUID.randomUUID(), productId, Instant.now().plus(grantedTtl)));
+		});
+		inventory.createContext("/inventory/release", exchange -> {
+			releases.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+			respond(exchange, "");
+		});
+		inventory.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		inventory.stop(0);
+	}
+
+	@Test
+	void testTryReserve_LeasesHotProductAndRefillsBelowLowWaterMark() throws InterruptedException {
+		StockReservationLedger ledger = ledger();
+
+		// Cold product: the caller falls back to synchronous validation, the second request makes it hot
+		assertNull(ledger.tryReserve(productId, 1, TOKEN));
+		assertNull(ledger.tryReserve(productId, 1, TOKEN));
+		awaitReserveCalls(1);
+		awaitLease(ledger, 4);
+
+		// 10 - 4 - 4 leaves 2 units, below the low-water mark of 3
+		assertNotNull(ledger.tryReserve(productId, 4, TOKEN));
+		awaitReserveCalls(2);
+		awaitReleases(1);
+		assertTrue(releases.get(0).contains("\"unusedQuantity\":2"));
+
+		// A negative quantity would add units to the lease
+		assertThrows(IllegalArgumentException.class, () -> ledger.tryReserve(productId, -4, TOKEN));
+		assertThrows(IllegalArgumentException.class, () -> ledger.tryReserve(productId, 0, TOKEN));
+	}
+
+	@Test
+	void testExpireLeases_ReleasesUnusedStock() throws InterruptedException {
+		grantedTtl = Duration.ofMillis(2500);
+		StockReservationLedger ledger = ledger();
+		ledger.tryReserve(productId, 1, TOKEN);
+		ledger.tryReserve(productId, 1, TOKEN);
+		awaitLease(ledger, 3);
+
+		Thread.sleep(600);
+		ledger.expireLeases();
+
+		assertEquals(1, releases.size());
+		assertTrue(releases.get(0).contains("\"unusedQuantity\":7"));
+		assertNull(ledger.tryReserve(productId, 1, TOKEN));
+	}
+
+	@Test
+	void testGiveBack_ReturnsUnitsOfFailedPayments() throws InterruptedException {
+		StockReservationLedger ledger = ledger();
+		ledger.tryReserve(productId, 1, TOKEN);
+		ledger.tryReserve(productId, 1, TOKEN);
+		awaitLease(ledger, 1);
+
+		// 9 units left: a failed payment's 5 go back to the lease, once; a settled payment's stay taken
+		UUID failed = UUID.randomUUID();
+		ledger.hold(failed, ledger.tryReserve(productId, 5, TOKEN));
+		ledger.giveBack(failed);
+		ledger.giveBack(failed);
+		UUID succeeded = UUID.randomUUID();
+		ledger.hold(succeeded, ledger.tryReserve(productId, 2, TOKEN));
+		ledger.settled(succeeded);
+		ledger.giveBack(succeeded);
+
+		// Taking the last 7 units replaces the lease before the payment fails
+		UUID late = UUID.randomUUID();
+		ledger.hold(late, ledger.tryReserve(productId, 7, TOKEN));
+		awaitReserveCalls(2);
+		awaitLease(ledger, 1);
+		ledger.giveBack(late);
+
+		// Released to the inventory service as part of the lease they came from
+		awaitReleases(1);
+		assertTrue(releases.get(0).contains("\"unusedQuantity\":7"));
+	}
+
+	private StockReservationLedger ledger() {
+		return new StockReservationLedger(new RestTemplate(), new SimpleMeterRegistry(), true,
+				"http://localhost:" + inventory.getAddress().getPort(), "/inventory/reserve", "/inventory/release",
+				10, 3, Duration.ofSeconds(30), Duration.ofSeconds(2), 2, Duration.ofSeconds(10));
+	}
+
+	private void awaitLease(StockReservationLedger ledger, int quantity) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			if (ledger.tryReserve(productId, quantity, TOKEN) != null) {
+				return;
+			}
+			Thread.sleep(20);
+		}
+		fail("No lease was granted");
+	}
+
+	private void awaitReserveCalls(int expected) throws InterruptedException {
+		for (int i = 0; i < 100 && reserveCalls.get() < expected; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(expected, reserveCalls.get());
+	}
+
+	private void awaitReleases(int expected) throws InterruptedException {
+		for (int i = 0; i < 100 && releases.size() < expected; i++) {
+			Thread.sleep(20);
+		}
+		assertEquals(expected, releases.size());
+	}
+
+	private static void respond(HttpExchange exchange, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+		if (bytes.length > 0) {
+			exchange.getResponseBody().write(bytes);
+		}
+		exchange.close();
+	}
+}
@@ -0,0 +1,97 @@
+package payment.service.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockValidationBatcherTests {
+
+	private static final String TOKEN = "Bearer test-token";
+	private static final int STOCK = 5;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final List<JsonNode> calls = new CopyOnWriteArrayList<>();
+
+	private HttpServer inventory;
+	private StockValidationBatcher batcher;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		// Stub bulk endpoint: every product has 5 units in stock
+		inventory = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		inventory.createContext("/inventory/validate/batch", exchange -> {
+			JsonNode requests = objectMapper.readTree(exchange.getRequestBody());
+			calls.add(requests);
+			List<Boolean> results = new ArrayList<>();
+			requests.forEach(request -> results.add(request.get("quantity").asInt() <= STOCK));
+			byte[] body = objectMapper.writeValueAsBytes(results);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		inventory.start();
+		batcher = new StockValidationBatcher(new RestTemplate(), new SimpleMeterRegistry(), true,
+				"http://localhost:" + inventory.getAddress().getPort(), "/inventory/validate/batch",
+				Duration.ofMillis(200), 100, Duration.ofSeconds(3));
+	}
+
+	@AfterEach
+	void tearDown() {
+		batcher.shutdown();
+		inventory.stop(0);
+	}
+
+	@Test
+	void testSubmit_CoalescesWindowIntoOneMergedCall() throws Exception {
+		UUID first = UUID.randomUUID();
+		UUID second = UUID.randomUUID();
+
+		List<CompletableFuture<Boolean>> results = List.of(
+				batcher.submit(first, 1, TOKEN),
+				batcher.submit(first, 2, TOKEN),
+				batcher.submit(second, 5, TOKEN),
+				batcher.submit(second, 6, TOKEN));
+
+		assertTrue(results.get(0).get(2, TimeUnit.SECONDS));
+		assertTrue(results.get(1).get(2, TimeUnit.SECONDS));
+		assertTrue(results.get(2).get(2, TimeUnit.SECONDS));
+		assertFalse(results.get(3).get(2, TimeUnit.SECONDS));
+
+		// One merged item per product, then the parts of the product whose total was out of stock
+		assertEquals(2, calls.size());
+		assertEquals(2, calls.get(0).size());
+		assertEquals(3, calls.get(0).get(0).get("quantity").asInt());
+		assertEquals(11, calls.get(0).get(1).get("quantity").asInt());
+		assertEquals(2, calls.get(1).size());
+	}
+
+	@Test
+	void testSubmit_KeepsCallersWithDifferentTokensApart() throws Exception {
+		UUID productId = UUID.randomUUID();
+
+		CompletableFuture<Boolean> first = batcher.submit(productId, 1, TOKEN);
+		CompletableFuture<Boolean> second = batcher.submit(productId, 1, "Bearer other-token");
+
+		assertTrue(first.get(2, TimeUnit.SECONDS));
+		assertTrue(second.get(2, TimeUnit.SECONDS));
+		assertEquals(2, calls.size());
+	}
+}